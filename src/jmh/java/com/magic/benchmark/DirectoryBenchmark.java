@@ -0,0 +1,94 @@
+package com.magic.benchmark;
+
+import com.magic.factory.RemoteFileClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 目录相关操作的耗时：按目录深度创建多层目录，按目录中的文件数流式列出文件
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname DirectoryBenchmark
+ * @date 2021/6/21 : 14:20
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DirectoryBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class CreateState extends FtpBenchmarkState {
+
+        @Param({"1", "4", "8"})
+        public int depth;
+
+        RemoteFileClient ftpClient;
+
+        long sequence;
+
+        @Override
+        protected void prepare() throws Exception {
+            ftpClient = pool.borrowObject();
+        }
+
+        @Override
+        protected void release() {
+            pool.returnObject(ftpClient);
+        }
+
+        /**
+         * 每次调用使用新的目录，保证每一级都需要创建
+         */
+        String nextDirectory() {
+            StringBuilder directory = new StringBuilder("/create/").append(sequence++);
+            for (int i = 1; i < depth; i++) {
+                directory.append("/level").append(i);
+            }
+            return directory.toString();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ListState extends FtpBenchmarkState {
+
+        @Param({"100", "1000", "10000"})
+        public int entries;
+
+        /**
+         * 直接在服务器根目录下生成文件，不经过ftp上传
+         */
+        @Override
+        protected void prepare() throws IOException {
+            Path directory = Files.createDirectories(server.getHome().resolve("list"));
+            for (int i = 0; i < entries; i++) {
+                Files.write(directory.resolve("file-" + i + ".txt"), new byte[]{'x'});
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean createDirectory(CreateState state) throws IOException {
+        return state.processor.createDirectory(state.nextDirectory(), state.ftpClient);
+    }
+
+    @Benchmark
+    public long listFiles(ListState state) throws IOException {
+        return state.processor.listFiles("/list").count();
+    }
+}
@@ -0,0 +1,97 @@
+package com.magic.benchmark;
+
+import com.magic.embedded.EmbeddedFtpServer;
+import com.magic.factory.FtpClientPooledObjectFactory;
+import com.magic.factory.RemoteFileClient;
+import com.magic.properties.FtpProperties;
+import com.magic.service.impl.DefaultFtpProcessor;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * 基准测试的公共状态，每轮测试启动一个进程内ftp服务器，并按与FtpConfig相同的方式创建连接池和处理器
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname FtpBenchmarkState
+ * @date 2021/6/21 : 10:05
+ */
+@State(Scope.Benchmark)
+public class FtpBenchmarkState {
+
+    protected EmbeddedFtpServer server;
+
+    protected FtpProperties ftpProperties;
+
+    protected GenericObjectPool<RemoteFileClient> pool;
+
+    protected DefaultFtpProcessor processor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new EmbeddedFtpServer();
+        server.start();
+        ftpProperties = new FtpProperties();
+        ftpProperties.setIp("127.0.0.1");
+        ftpProperties.setPort(String.valueOf(server.getPort()));
+        ftpProperties.setUsername(EmbeddedFtpServer.USERNAME);
+        ftpProperties.setPassword(EmbeddedFtpServer.PASSWORD);
+        ftpProperties.setBufferSize(64 * 1024);
+        configure(ftpProperties);
+        pool = new GenericObjectPool<>(new FtpClientPooledObjectFactory(ftpProperties), poolConfig(ftpProperties));
+        processor = new DefaultFtpProcessor(ftpProperties);
+        processor.setFtpClientPool(pool);
+        processor.setHasInit(true);
+        prepare();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        release();
+        pool.close();
+        server.stop();
+    }
+
+    /**
+     * 创建连接池之前调整配置
+     *
+     * @param ftpProperties ftp配置
+     */
+    protected void configure(FtpProperties ftpProperties) {
+    }
+
+    /**
+     * 创建处理器之后准备测试数据
+     */
+    protected void prepare() throws Exception {
+    }
+
+    /**
+     * 关闭连接池之前归还测试中占用的连接
+     */
+    protected void release() {
+    }
+
+    /**
+     * 与FtpConfig中的连接池配置保持一致，不启动空闲检测，避免干扰测量
+     */
+    static <T> GenericObjectPoolConfig<T> poolConfig(FtpProperties ftpProperties) {
+        FtpProperties.Pool properties = ftpProperties.getPool();
+        GenericObjectPoolConfig<T> poolConfig = new GenericObjectPoolConfig<>();
+        poolConfig.setMaxTotal(properties.getMaxTotal());
+        poolConfig.setMaxIdle(properties.getMaxIdle());
+        poolConfig.setMinIdle(properties.getMinIdle());
+        poolConfig.setMaxWaitMillis(properties.getMaxWaitMillis());
+        poolConfig.setLifo(properties.getLifo());
+        poolConfig.setFairness(properties.getFairness());
+        poolConfig.setTestOnBorrow(!ftpProperties.getValidation().getIdleOnly());
+        poolConfig.setTestOnReturn(false);
+        poolConfig.setTimeBetweenEvictionRunsMillis(-1);
+        return poolConfig;
+    }
+}
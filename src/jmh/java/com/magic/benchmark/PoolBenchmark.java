@@ -0,0 +1,73 @@
+package com.magic.benchmark;
+
+import com.magic.factory.RemoteFileClient;
+import com.magic.properties.FtpProperties;
+import com.magic.support.ValidationStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 连接池借用和归还的开销，线程数多于最大连接数以模拟竞争，并比较不同验证策略的单次操作延迟
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname PoolBenchmark
+ * @date 2021/6/21 : 10:40
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class PoolBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class PoolState extends FtpBenchmarkState {
+
+        @Param({"4"})
+        public int maxTotal;
+
+        @Param({"NOOP", "CWD"})
+        public ValidationStrategy strategy;
+
+        //为0时每次借用都验证
+        @Param({"0", "5000"})
+        public long skipIfUsedWithinMillis;
+
+        @Override
+        protected void configure(FtpProperties ftpProperties) {
+            ftpProperties.getPool().setMaxTotal(maxTotal);
+            ftpProperties.getPool().setMaxIdle(maxTotal);
+            ftpProperties.getValidation().setStrategy(strategy);
+            ftpProperties.getValidation().setSkipIfUsedWithinMillis(skipIfUsedWithinMillis);
+        }
+    }
+
+    @Benchmark
+    public void borrowAndReturn(PoolState state) throws Exception {
+        RemoteFileClient ftpClient = state.pool.borrowObject();
+        state.pool.returnObject(ftpClient);
+    }
+
+    @Benchmark
+    public boolean borrowNoopAndReturn(PoolState state) throws Exception {
+        RemoteFileClient ftpClient = state.pool.borrowObject();
+        try {
+            return ftpClient.sendNoOp();
+        } finally {
+            state.pool.returnObject(ftpClient);
+        }
+    }
+}
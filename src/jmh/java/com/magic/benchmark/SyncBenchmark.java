@@ -0,0 +1,91 @@
+package com.magic.benchmark;
+
+import com.magic.benchmark.TransferBenchmark.NullOutputStream;
+import com.magic.factory.RemoteFileClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.StreamUtils;
+
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 目录同步中每个文件单独借用连接的开销：同一目录下的小文件逐个通过处理器下载（每个文件借用、归还一次，
+ * 借用后重新切换目录），与整批文件共用一个借出的连接比较，两者之差即每个文件多出的借用和CWD开销
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname SyncBenchmark
+ * @date 2021/7/15 : 11:00
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SyncBenchmark {
+
+    private static final String DIRECTORY = "/sync";
+
+    private static final int FILES = 50;
+
+    @State(Scope.Benchmark)
+    public static class SyncState extends FtpBenchmarkState {
+
+        @Param({"1024"})
+        public int size;
+
+        @Override
+        protected void prepare() throws Exception {
+            Path directory = server.getHome().resolve("sync");
+            Files.createDirectories(directory);
+            byte[] data = TransferBenchmark.payload(size);
+            for (int i = 0; i < FILES; i++) {
+                Files.write(directory.resolve(i + ".bin"), data);
+            }
+        }
+    }
+
+    /**
+     * 与同步器相同，每个文件通过处理器下载，单独借用连接
+     */
+    @Benchmark
+    @OperationsPerInvocation(FILES)
+    public void borrowPerFile(SyncState state) {
+        for (int i = 0; i < FILES; i++) {
+            state.processor.downloadFile(DIRECTORY, i + ".bin", Channels.newChannel(NullOutputStream.INSTANCE));
+        }
+    }
+
+    /**
+     * 整批文件共用一个连接，只切换一次目录
+     */
+    @Benchmark
+    @OperationsPerInvocation(FILES)
+    public void heldClient(SyncState state) throws Exception {
+        RemoteFileClient ftpClient = state.pool.borrowObject();
+        try {
+            ftpClient.changeWorkingDirectory(DIRECTORY);
+            for (int i = 0; i < FILES; i++) {
+                try (InputStream inputStream = ftpClient.openRead(i + ".bin", 0)) {
+                    StreamUtils.copy(inputStream, NullOutputStream.INSTANCE);
+                }
+                ftpClient.completeTransfer();
+            }
+        } finally {
+            state.pool.returnObject(ftpClient);
+        }
+    }
+}
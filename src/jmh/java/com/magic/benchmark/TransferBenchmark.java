@@ -0,0 +1,161 @@
+package com.magic.benchmark;
+
+import com.magic.support.TransferCompression;
+import com.magic.support.TransferResult;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 传输吞吐量：小文件上传的每秒操作数，大文件上传和下载的每秒字节数，并比较不同压缩方式的有效吞吐量
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname TransferBenchmark
+ * @date 2021/6/21 : 11:15
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class TransferBenchmark {
+
+    private static final String DIRECTORY = "/transfer";
+
+    @State(Scope.Benchmark)
+    public static class SmallFileState extends FtpBenchmarkState {
+
+        @Param({"1024", "65536"})
+        public int size;
+
+        byte[] data;
+
+        @Override
+        protected void prepare() {
+            data = payload(size);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class LargeFileState extends FtpBenchmarkState {
+
+        @Param({"16777216"})
+        public int size;
+
+        @Param({"NONE", "GZIP", "MODE_Z"})
+        public TransferCompression compression;
+
+        byte[] data;
+
+        @Override
+        protected void prepare() {
+            data = payload(size);
+            //下载测试使用的文件按同样的压缩方式上传
+            TransferResult result = processor.uploadFileWithResult(DIRECTORY, "download.txt", new ByteArrayInputStream(data), compression);
+            if (!result.isSuccess()) {
+                throw new IllegalStateException("准备下载文件失败：" + result.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 每个线程上传到自己的文件，避免并发覆盖同一个文件
+     */
+    @State(Scope.Thread)
+    public static class ThreadFile {
+
+        private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+        String fileName = "upload-" + SEQUENCE.incrementAndGet() + ".txt";
+    }
+
+    /**
+     * 按实际传输的原始字节数计数，报告为每秒字节数
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Bytes {
+
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean smallFileUpload(SmallFileState state, ThreadFile file) {
+        return state.processor.uploadFileWithResult(DIRECTORY, file.fileName, new ByteArrayInputStream(state.data)).isSuccess();
+    }
+
+    @Benchmark
+    public void largeFileUpload(LargeFileState state, ThreadFile file, Bytes counter) {
+        TransferResult result = state.processor.uploadFileWithResult(DIRECTORY, file.fileName,
+                new ByteArrayInputStream(state.data), state.compression);
+        counter.bytes += result.getBytes();
+    }
+
+    @Benchmark
+    public void largeFileDownload(LargeFileState state, Bytes counter) {
+        TransferResult result = state.processor.downloadFileWithResult(DIRECTORY, "download.txt",
+                Channels.newChannel(NullOutputStream.INSTANCE), state.compression);
+        counter.bytes += result.getBytes();
+    }
+
+    /**
+     * 生成可压缩的文本数据，接近业务中文本文件的压缩比
+     *
+     * @param size 数据大小
+     */
+    static byte[] payload(int size) {
+        byte[] line = "2021-06-21 11:15:00,INFO,order-service,订单处理完成,orderId=1000001,amount=128.00\n"
+                .getBytes(StandardCharsets.UTF_8);
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = line[i % line.length];
+        }
+        return data;
+    }
+
+    /**
+     * 丢弃所有写入的数据，只测量传输本身
+     */
+    static class NullOutputStream extends OutputStream {
+
+        static final NullOutputStream INSTANCE = new NullOutputStream();
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.magic.benchmark;
+
+import com.magic.embedded.EmbeddedFtpServer;
+import com.magic.embedded.EmbeddedSftpServer;
+import com.magic.factory.FtpClientPooledObjectFactory;
+import com.magic.factory.RemoteFileClient;
+import com.magic.properties.FtpProperties;
+import com.magic.service.FtpProcessor;
+import com.magic.service.impl.DefaultFtpProcessor;
+import com.magic.support.FtpTransport;
+import com.magic.support.TransferCompression;
+import com.magic.support.TransferResult;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 不同传输协议的吞吐量：小文件体现每次传输的握手开销，大文件体现加密和请求流水线的吞吐量，
+ * ftps默认复用TLS会话，可通过-p sessionReuse=true,false比较每次传输完整握手的开销
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname TransportBenchmark
+ * @date 2021/6/29 : 17:10
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class TransportBenchmark {
+
+    private static final String DIRECTORY = "/transport";
+
+    @State(Scope.Benchmark)
+    public static class TransportState {
+
+        @Param({"FTP", "FTPS", "SFTP"})
+        public FtpTransport transport;
+
+        //只对ftps生效
+        @Param({"true"})
+        public boolean sessionReuse;
+
+        @Param({"1024", "16777216"})
+        public int size;
+
+        private EmbeddedFtpServer ftpServer;
+
+        private EmbeddedSftpServer sftpServer;
+
+        private GenericObjectPool<RemoteFileClient> pool;
+
+        FtpProcessor processor;
+
+        byte[] data;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            FtpProperties ftpProperties = new FtpProperties();
+            ftpProperties.setIp("127.0.0.1");
+            ftpProperties.setUsername(EmbeddedFtpServer.USERNAME);
+            ftpProperties.setPassword(EmbeddedFtpServer.PASSWORD);
+            ftpProperties.setBufferSize(64 * 1024);
+            ftpProperties.setTransport(transport);
+            ftpProperties.getFtps().setTrustAll(true);
+            ftpProperties.getFtps().setSessionReuse(sessionReuse);
+            if (transport == FtpTransport.SFTP) {
+                sftpServer = new EmbeddedSftpServer();
+                sftpServer.start();
+                ftpProperties.setPort(String.valueOf(sftpServer.getPort()));
+                ftpProperties.getSftp().setKnownHosts(sftpServer.writeKnownHosts().toString());
+            } else {
+                ftpServer = new EmbeddedFtpServer(transport);
+                ftpServer.start();
+                ftpProperties.setPort(String.valueOf(ftpServer.getPort()));
+            }
+            pool = new GenericObjectPool<>(new FtpClientPooledObjectFactory(ftpProperties), FtpBenchmarkState.poolConfig(ftpProperties));
+            DefaultFtpProcessor ftpProcessor = new DefaultFtpProcessor(ftpProperties);
+            ftpProcessor.setFtpClientPool(pool);
+            ftpProcessor.setHasInit(true);
+            processor = ftpProcessor;
+            data = TransferBenchmark.payload(size);
+            TransferResult result = processor.uploadFileWithResult(DIRECTORY, "download.txt", new ByteArrayInputStream(data),
+                    TransferCompression.NONE);
+            if (!result.isSuccess()) {
+                throw new IllegalStateException("准备下载文件失败：" + result.getMessage());
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            pool.close();
+            if (null != ftpServer) {
+                ftpServer.stop();
+            }
+            if (null != sftpServer) {
+                sftpServer.stop();
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void upload(TransportState state, TransferBenchmark.ThreadFile file, TransferBenchmark.Bytes counter) {
+        TransferResult result = state.processor.uploadFileWithResult(DIRECTORY, file.fileName, new ByteArrayInputStream(state.data),
+                TransferCompression.NONE);
+        counter.bytes += result.getBytes();
+    }
+
+    @Benchmark
+    public void download(TransportState state, TransferBenchmark.Bytes counter) {
+        TransferResult result = state.processor.downloadFileWithResult(DIRECTORY, "download.txt",
+                Channels.newChannel(TransferBenchmark.NullOutputStream.INSTANCE), TransferCompression.NONE);
+        counter.bytes += result.getBytes();
+    }
+}
@@ -1,15 +1,39 @@
 package com.magic.config;
 
+import com.magic.endpoint.FtpBandwidthEndpoint;
+import com.magic.endpoint.FtpJobEndpoint;
 import com.magic.factory.FtpClientPooledObjectFactory;
+import com.magic.factory.RemoteFileClient;
+import com.magic.pool.BurstPrefiller;
+import com.magic.pool.FtpEndpointNode;
+import com.magic.pool.LoadBalancedFtpClientPool;
+import com.magic.pool.PriorityFtpClientPool;
+import com.magic.pool.StallWatchdog;
 import com.magic.properties.FtpProperties;
+import com.magic.service.AsyncFtpProcessor;
+import com.magic.service.FtpFileCache;
+import com.magic.service.FtpJobQueue;
 import com.magic.service.FtpProcessor;
+import com.magic.service.FtpSynchronizer;
+import com.magic.service.impl.DefaultAsyncFtpProcessor;
+import com.magic.service.impl.DefaultFtpFileCache;
+import com.magic.service.impl.DefaultFtpJobQueue;
 import com.magic.service.impl.DefaultFtpProcessor;
+import com.magic.service.impl.DefaultFtpSynchronizer;
+import com.magic.support.BandwidthLimiter;
+import com.magic.support.FtpJobJournal;
+import com.magic.support.FtpMetrics;
+import com.magic.support.TransferExecutors;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.pool2.ObjectPool;
+import org.apache.commons.pool2.impl.AbandonedConfig;
 import org.apache.commons.pool2.impl.GenericObjectPool;
 import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
@@ -17,8 +41,20 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
 
 import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author magic
@@ -33,32 +69,124 @@ public class FtpConfig {
 
     private final FtpProperties ftpProperties;
 
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
     @Autowired
-    public FtpConfig(FtpProperties ftpProperties) {
+    public FtpConfig(FtpProperties ftpProperties, ObjectProvider<MeterRegistry> meterRegistry) {
         this.ftpProperties = ftpProperties;
+        this.meterRegistry = meterRegistry;
     }
 
-    private ObjectPool<FTPClient> pool;
+    private ObjectPool<RemoteFileClient> pool;
+
+    private ExecutorService transferExecutor;
+
+    private ExecutorService prefillExecutor;
+
+    private ScheduledExecutorService watchdogExecutor;
+
+    private ExecutorService asyncExecutor;
+
+    private ForkJoinPool syncWorkerPool;
+
+    private DefaultFtpJobQueue jobQueue;
+
+    private FtpMetrics metrics = FtpMetrics.NOOP;
 
     /**
-     * 预加载FTPClient连接到对象池中
+     * 预加载ftp连接到对象池中，多个连接并行建立
      *
+     * @param target      预加载的连接池
      * @param initialSize
-     * @param maxIdle
+     * @param poolConfig
+     * @param poolCount   连接池个数，多服务器时每个服务器一个连接池
      */
-    private void preLoadingFtpClient(Integer initialSize, int maxIdle) {
-        //如果初始化大小为null或者小于等于0，则不执行逻辑
-        if (null == initialSize || initialSize <= 0) {
+    private void preLoadingFtpClient(ObjectPool<?> target, Integer initialSize, GenericObjectPoolConfig<?> poolConfig, int poolCount) {
+        int size = Math.max(null == initialSize ? 0 : initialSize, poolConfig.getMinIdle());
+        if (poolConfig.getMaxIdle() >= 0) {
+            size = Math.min(size, poolConfig.getMaxIdle());
+        }
+        size *= poolCount;
+        //如果预加载数量小于等于0，则不执行逻辑
+        if (size <= 0) {
             return;
         }
-        int size = Math.min(initialSize, maxIdle);
+        int threads = Math.max(1, Math.min(size, ftpProperties.getPool().getWarmUpThreads()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("ftp-warm-up-"));
         try {
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[size];
             for (int i = 0; i < size; i++) {
-                pool.addObject();
+                futures[i] = CompletableFuture.runAsync(() -> {
+                    try {
+                        target.addObject();
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor);
             }
-        } catch (Exception e) {
+            CompletableFuture.allOf(futures).join();
+            log.info("预加载ftp客户端" + size + "个");
+        } catch (CompletionException e) {
             log.error("预加载失败！", (Object) e.getStackTrace());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 根据配置创建连接池配置，并在启动时检查配置是否合法
+     */
+    private <T> GenericObjectPoolConfig<T> buildPoolConfig() {
+        FtpProperties.Pool properties = ftpProperties.getPool();
+        Assert.state(properties.getMaxTotal() > 0 || properties.getMaxTotal() == -1, "ftp.pool.maxTotal必须大于0或等于-1");
+        Assert.state(properties.getMinIdle() >= 0, "ftp.pool.minIdle不能小于0");
+        Assert.state(properties.getMaxIdle() < 0 || properties.getMaxIdle() >= properties.getMinIdle(), "ftp.pool.maxIdle不能小于minIdle");
+        Assert.state(properties.getMaxTotal() < 0 || properties.getMinIdle() <= properties.getMaxTotal(), "ftp.pool.minIdle不能大于maxTotal");
+        Assert.state(properties.getMaxWaitMillis() > 0 || properties.getMaxWaitMillis() == -1, "ftp.pool.maxWaitMillis必须大于0或等于-1");
+        Assert.state(properties.getNumTestsPerEvictionRun() != 0, "ftp.pool.numTestsPerEvictionRun不能为0");
+        if (properties.getMaxTotal() > 0 && ftpProperties.getBatchParallelism() > properties.getMaxTotal()) {
+            log.warn("ftp.batchParallelism大于连接池最大连接数，多出的并行任务只能等待连接");
         }
+        GenericObjectPoolConfig<T> poolConfig = new GenericObjectPoolConfig<>();
+        poolConfig.setMaxTotal(properties.getMaxTotal());
+        poolConfig.setMaxIdle(properties.getMaxIdle());
+        poolConfig.setMinIdle(properties.getMinIdle());
+        poolConfig.setMaxWaitMillis(properties.getMaxWaitMillis());
+        poolConfig.setBlockWhenExhausted(properties.getBlockWhenExhausted());
+        poolConfig.setLifo(properties.getLifo());
+        poolConfig.setFairness(properties.getFairness());
+        poolConfig.setMinEvictableIdleTimeMillis(properties.getMinEvictableIdleTimeMillis());
+        poolConfig.setSoftMinEvictableIdleTimeMillis(properties.getSoftMinEvictableIdleTimeMillis());
+        poolConfig.setTimeBetweenEvictionRunsMillis(properties.getTimeBetweenEvictionRunsMillis());
+        poolConfig.setNumTestsPerEvictionRun(properties.getNumTestsPerEvictionRun());
+        //归还时不再验证，借用时的验证可通过idleOnly关闭，只保留空闲检测
+        poolConfig.setTestOnBorrow(!ftpProperties.getValidation().getIdleOnly());
+        poolConfig.setTestOnReturn(false);
+        poolConfig.setTestWhileIdle(true);
+        return poolConfig;
+    }
+
+    /**
+     * 根据配置创建废弃连接的回收配置，未开启时返回null。
+     * ftp客户端按最后一次有进展的时间判断是否废弃，回收时间应大于看门狗的停滞时间，作为看门狗之外的兜底
+     */
+    private AbandonedConfig buildAbandonedConfig() {
+        FtpProperties.Pool properties = ftpProperties.getPool();
+        if (properties.getRemoveAbandonedTimeoutSeconds() <= 0) {
+            return null;
+        }
+        if (properties.getStallTimeoutMillis() > 0
+                && properties.getRemoveAbandonedTimeoutSeconds() * 1000L <= properties.getStallTimeoutMillis()) {
+            log.warn("ftp.pool.removeAbandonedTimeoutSeconds不大于停滞时间，停滞的连接会先被连接池回收");
+        }
+        AbandonedConfig abandonedConfig = new AbandonedConfig();
+        abandonedConfig.setRemoveAbandonedTimeout(properties.getRemoveAbandonedTimeoutSeconds());
+        abandonedConfig.setRemoveAbandonedOnMaintenance(true);
+        abandonedConfig.setRemoveAbandonedOnBorrow(true);
+        abandonedConfig.setLogAbandoned(properties.getLogAbandoned());
+        //客户端自身记录最后一次有进展的时间
+        abandonedConfig.setUseUsageTracking(true);
+        return abandonedConfig;
     }
 
     /**
@@ -66,31 +194,234 @@ public class FtpConfig {
      */
     @PreDestroy
     public void destroy() {
+        if (null != jobQueue) {
+            try {
+                jobQueue.close();
+            } catch (IOException e) {
+                log.error("关闭传输任务队列失败！", (Object) e.getStackTrace());
+            }
+        }
+        if (null != syncWorkerPool) {
+            syncWorkerPool.shutdownNow();
+        }
+        if (null != asyncExecutor) {
+            asyncExecutor.shutdownNow();
+        }
+        if (null != transferExecutor) {
+            transferExecutor.shutdownNow();
+        }
+        if (null != prefillExecutor) {
+            prefillExecutor.shutdownNow();
+        }
+        if (null != watchdogExecutor) {
+            watchdogExecutor.shutdownNow();
+        }
         if (null != pool) {
             pool.close();
             log.info("销毁ftp客户端连接池。。。");
         }
     }
 
+    /**
+     * 创建单个ftp服务器的连接池并注册监控指标
+     *
+     * @param factory    ftp客户端工厂
+     * @param poolConfig 连接池配置
+     * @param metrics    监控指标
+     * @param name       服务器名称
+     */
+    private GenericObjectPool<RemoteFileClient> createPool(FtpClientPooledObjectFactory factory, GenericObjectPoolConfig<RemoteFileClient> poolConfig,
+                                                    FtpMetrics metrics, String name) {
+        factory.setMetrics(metrics);
+        GenericObjectPool<RemoteFileClient> genericObjectPool = new GenericObjectPool<>(factory, poolConfig, buildAbandonedConfig());
+        metrics.bindPool(genericObjectPool, Tags.of("server", name));
+        return genericObjectPool;
+    }
+
+    /**
+     * 连接池的最大连接数，不限制连接数时按默认最大连接数计算
+     */
+    private int poolMaxTotal() {
+        int maxTotal = maxTotalOf(pool);
+        return maxTotal > 0 ? maxTotal : GenericObjectPoolConfig.DEFAULT_MAX_TOTAL;
+    }
+
+    /**
+     * 连接池配置的最大连接数
+     *
+     * @param ftpClientPool 连接池
+     * @return 最大连接数，不限制或无法获取时返回-1
+     */
+    private static int maxTotalOf(ObjectPool<RemoteFileClient> ftpClientPool) {
+        if (ftpClientPool instanceof GenericObjectPool) {
+            return ((GenericObjectPool<RemoteFileClient>) ftpClientPool).getMaxTotal();
+        }
+        if (ftpClientPool instanceof LoadBalancedFtpClientPool) {
+            return ((LoadBalancedFtpClientPool) ftpClientPool).getMaxTotal();
+        }
+        if (ftpClientPool instanceof PriorityFtpClientPool) {
+            return ((PriorityFtpClientPool) ftpClientPool).getMaxTotal();
+        }
+        return -1;
+    }
+
+    /**
+     * 传输限速，按配置初始化，运行时可通过监控端点调整
+     */
+    @Bean
+    @ConditionalOnMissingBean(BandwidthLimiter.class)
+    public BandwidthLimiter ftpBandwidthLimiter() {
+        FtpProperties.Bandwidth properties = ftpProperties.getBandwidth();
+        BandwidthLimiter limiter = new BandwidthLimiter(properties.getGlobalBytesPerSecond(),
+                properties.getServerBytesPerSecond(), properties.getTenantBytesPerSecond(), properties.getMaxDefaultTenants());
+        properties.getServers().forEach(limiter::setServerRate);
+        properties.getTenants().forEach(limiter::setTenantRate);
+        return limiter;
+    }
+
+    /**
+     * 查看和调整传输限速的监控端点
+     */
+    @Bean
+    @ConditionalOnMissingBean(FtpBandwidthEndpoint.class)
+    public FtpBandwidthEndpoint ftpBandwidthEndpoint(BandwidthLimiter bandwidthLimiter) {
+        return new FtpBandwidthEndpoint(bandwidthLimiter);
+    }
+
     /**
      * 判断不存在业务Service时初始化默认Bean到Spring
      */
     @Bean
     @ConditionalOnMissingBean(FtpProcessor.class)
-    public FtpProcessor ftpProcessor() {
+    public FtpProcessor ftpProcessor(BandwidthLimiter bandwidthLimiter) {
         log.info("没有找到ftp处理器，执行创建默认处理器");
-        GenericObjectPoolConfig poolConfig = new GenericObjectPoolConfig();
-        poolConfig.setTestOnBorrow(true);
-        poolConfig.setTestOnReturn(true);
-        poolConfig.setTestWhileIdle(true);
-        poolConfig.setMinEvictableIdleTimeMillis(6000);
-        poolConfig.setSoftMinEvictableIdleTimeMillis(50000);
-        poolConfig.setTimeBetweenEvictionRunsMillis(30000);
-        pool = new GenericObjectPool<>(new FtpClientPooledObjectFactory(ftpProperties), poolConfig);
-        preLoadingFtpClient(ftpProperties.getInitialSize(), poolConfig.getMaxIdle());
+        GenericObjectPoolConfig<RemoteFileClient> poolConfig = buildPoolConfig();
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (null != registry) {
+            metrics = new FtpMetrics(registry);
+        }
+        List<FtpProperties.Endpoint> endpoints = ftpProperties.getEndpoints();
+        List<FtpClientPooledObjectFactory> factories = new ArrayList<>();
+        if (endpoints.isEmpty()) {
+            FtpClientPooledObjectFactory factory = new FtpClientPooledObjectFactory(ftpProperties);
+            factories.add(factory);
+            pool = createPool(factory, poolConfig, metrics, ftpProperties.getIp() + ":" + ftpProperties.getPort());
+        } else {
+            //多服务器时每个服务器一个连接池，按负载均衡策略选择
+            FtpProperties.LoadBalance loadBalance = ftpProperties.getLoadBalance();
+            List<FtpEndpointNode> nodes = new ArrayList<>(endpoints.size());
+            for (FtpProperties.Endpoint endpoint : endpoints) {
+                String name = endpoint.getIp() + ":" + endpoint.getPort();
+                FtpClientPooledObjectFactory factory = new FtpClientPooledObjectFactory(ftpProperties, endpoint);
+                factories.add(factory);
+                GenericObjectPool<RemoteFileClient> endpointPool = createPool(factory, poolConfig, metrics, name);
+                nodes.add(new FtpEndpointNode(name, endpointPool, endpoint.getWeight(),
+                        loadBalance.getFailureThreshold(), loadBalance.getOpenMillis()));
+            }
+            pool = new LoadBalancedFtpClientPool(nodes, loadBalance.getPolicy());
+            log.info("创建多服务器ftp连接池，服务器数：" + nodes.size() + "，负载均衡策略：" + loadBalance.getPolicy());
+        }
+        preLoadingFtpClient(pool, ftpProperties.getInitialSize(), poolConfig, Math.max(1, endpoints.size()));
+        //连接耗尽时按传输优先级排队借用
+        PriorityFtpClientPool priorityPool = new PriorityFtpClientPool(pool, maxTotalOf(pool), ftpProperties.getPool().getMaxWaitMillis());
+        metrics.bindPriorityPool(priorityPool);
+        //被包装的连接池回收废弃连接时释放对应的许可，否则许可会永久丢失
+        factories.forEach(factory -> factory.setAbandonedListener(priorityPool::abandoned));
+        //突发借用时并行预建连接
+        int burstPrefill = ftpProperties.getPool().getBurstPrefill();
+        if (burstPrefill > 0) {
+            int threads = Math.max(1, Math.min(burstPrefill, ftpProperties.getPool().getWarmUpThreads()));
+            prefillExecutor = Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("ftp-prefill-"));
+            BurstPrefiller prefiller = new BurstPrefiller(prefillExecutor, priorityPool.getMaxTotal(), burstPrefill);
+            metrics.bindPrefiller(prefiller);
+            priorityPool.setPrefiller(prefiller);
+        }
+        //按传输进展检测停滞的连接
+        long stallTimeoutMillis = ftpProperties.getPool().getStallTimeoutMillis();
+        if (stallTimeoutMillis > 0) {
+            StallWatchdog watchdog = new StallWatchdog(priorityPool, stallTimeoutMillis);
+            watchdog.setMetrics(metrics);
+            metrics.bindWatchdog(watchdog);
+            long interval = ftpProperties.getPool().getStallCheckIntervalMillis();
+            watchdogExecutor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("ftp-watchdog-"));
+            watchdogExecutor.scheduleWithFixedDelay(watchdog, interval, interval, TimeUnit.MILLISECONDS);
+        }
+        pool = priorityPool;
         DefaultFtpProcessor processor = new DefaultFtpProcessor(ftpProperties);
         processor.setFtpClientPool(pool);
+        processor.setMetrics(metrics);
+        processor.setBandwidthLimiter(bandwidthLimiter);
+        transferExecutor = Executors.newFixedThreadPool(ftpProperties.getTransferThreads(), new CustomizableThreadFactory("ftp-transfer-"));
+        processor.setTransferExecutor(transferExecutor);
         processor.setHasInit(true);
         return processor;
     }
+
+    /**
+     * 判断不存在异步处理器时初始化默认Bean到Spring，排队上限与连接池最大连接数挂钩
+     */
+    @Bean
+    @ConditionalOnMissingBean(AsyncFtpProcessor.class)
+    public AsyncFtpProcessor asyncFtpProcessor(FtpProcessor ftpProcessor) {
+        int maxTotal = poolMaxTotal();
+        int threads = null == ftpProperties.getAsyncThreads() ? maxTotal : ftpProperties.getAsyncThreads();
+        asyncExecutor = TransferExecutors.newExecutor("ftp-async-", threads, ftpProperties.getAsyncVirtualThreads());
+        return new DefaultAsyncFtpProcessor(ftpProcessor, asyncExecutor, maxTotal + ftpProperties.getAsyncQueueCapacity());
+    }
+
+    /**
+     * 判断不存在传输任务队列时初始化默认Bean到Spring，工作线程数默认与连接池最大连接数一致，启动时恢复上次未完成的任务
+     */
+    @Bean
+    @ConditionalOnMissingBean(FtpJobQueue.class)
+    public FtpJobQueue ftpJobQueue(FtpProcessor ftpProcessor) throws IOException {
+        FtpProperties.JobQueue properties = ftpProperties.getJobQueue();
+        Assert.state(null == properties.getWorkers() || properties.getWorkers() > 0, "ftp.jobQueue.workers必须大于0");
+        Assert.state(properties.getMaxPending() > 0, "ftp.jobQueue.maxPending必须大于0");
+        Assert.state(properties.getCompactThreshold() > 0, "ftp.jobQueue.compactThreshold必须大于0");
+        int workers = null == properties.getWorkers() ? poolMaxTotal() : properties.getWorkers();
+        FtpJobJournal journal = new FtpJobJournal(properties.getDir(), properties.getFsync());
+        jobQueue = new DefaultFtpJobQueue(ftpProcessor, journal, workers, properties.getMaxPending(),
+                properties.getCompactThreshold(), properties.getLatencySamples());
+        jobQueue.setMetrics(metrics);
+        metrics.bindJobQueue(jobQueue);
+        jobQueue.recover();
+        return jobQueue;
+    }
+
+    /**
+     * 查看传输任务队列的监控端点
+     */
+    @Bean
+    @ConditionalOnMissingBean(FtpJobEndpoint.class)
+    public FtpJobEndpoint ftpJobEndpoint(FtpJobQueue ftpJobQueue) {
+        return new FtpJobEndpoint(ftpJobQueue);
+    }
+
+    /**
+     * 判断不存在目录同步服务时初始化默认Bean到Spring
+     */
+    @Bean
+    @ConditionalOnMissingBean(FtpSynchronizer.class)
+    public FtpSynchronizer ftpSynchronizer(FtpProcessor ftpProcessor) {
+        syncWorkerPool = new ForkJoinPool(ftpProperties.getSyncParallelism());
+        return new DefaultFtpSynchronizer(ftpProcessor, syncWorkerPool);
+    }
+
+    /**
+     * 开启文件缓存且不存在业务缓存时初始化默认Bean到Spring
+     */
+    @Bean
+    @ConditionalOnMissingBean(FtpFileCache.class)
+    @ConditionalOnProperty(prefix = "ftp.file-cache", name = "enabled", havingValue = "true")
+    public FtpFileCache ftpFileCache(FtpProcessor ftpProcessor) throws IOException {
+        FtpProperties.FileCache properties = ftpProperties.getFileCache();
+        Assert.state(properties.getMaxBytes() > 0, "ftp.fileCache.maxBytes必须大于0");
+        Assert.state(properties.getMaxFiles() > 0, "ftp.fileCache.maxFiles必须大于0");
+        DefaultFtpFileCache cache = new DefaultFtpFileCache(ftpProcessor, properties.getDir(),
+                properties.getMaxBytes(), properties.getMaxFiles());
+        cache.setMetrics(metrics);
+        metrics.bindFileCache(cache);
+        return cache;
+    }
 }
@@ -1,15 +1,34 @@
 package com.magic.controller;
 
+import com.magic.service.FtpJobQueue;
 import com.magic.service.FtpProcessor;
+import com.magic.support.BandwidthLimiter;
+import com.magic.support.FtpJob;
+import com.magic.support.TransferContext;
+import com.magic.support.TransferPriority;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
 
-import java.io.ByteArrayInputStream;
-import java.io.File;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
 
 /**
  * @author magic_lz
@@ -22,8 +41,14 @@ public class FileController {
 
     private final FtpProcessor ftpProcessor;
 
-    public FileController(FtpProcessor ftpProcessor) {
+    private final FtpJobQueue ftpJobQueue;
+
+    private final BandwidthLimiter bandwidthLimiter;
+
+    public FileController(FtpProcessor ftpProcessor, FtpJobQueue ftpJobQueue, BandwidthLimiter bandwidthLimiter) {
         this.ftpProcessor = ftpProcessor;
+        this.ftpJobQueue = ftpJobQueue;
+        this.bandwidthLimiter = bandwidthLimiter;
     }
 
     /**
@@ -35,7 +60,8 @@ public class FileController {
     @PostMapping("/uploadFtp")
     public String uploadFtp(MultipartFile file) throws IOException {
         String url = "F:/ftp/test";
-        InputStream in = new ByteArrayInputStream(file.getBytes());
+        //直接使用multipart的输入流，避免把整个文件读入内存
+        InputStream in = file.getInputStream();
         boolean b = ftpProcessor.uploadFile(url, "test.txt", in);
         if (b) {
             return "success";
@@ -44,6 +70,47 @@ public class FileController {
         }
     }
 
+    /**
+     * 提交上传任务，文件保存到本地任务目录后立即返回任务id，由后台按批量任务的优先级上传，进程重启后未完成的任务会重新执行
+     *
+     * @param file     上传的文件
+     * @param path     ftp服务器保存地址
+     * @param fileName 上传到ftp的文件名，不指定时使用原文件名
+     * @param tenant   租户，按租户限速
+     * @param request  请求
+     * @return 任务id
+     */
+    @PostMapping("/uploadFtp/async")
+    public String uploadFtpAsync(MultipartFile file, @RequestParam String path,
+                                 @RequestParam(required = false) String fileName,
+                                 @RequestHeader(value = "X-Tenant", required = false) String tenant,
+                                 HttpServletRequest request) throws IOException {
+        String name = null == fileName ? file.getOriginalFilename() : fileName;
+        TransferContext context = TransferContext.of(resolveTenant(request, tenant), TransferPriority.BULK);
+        InputStream in = file.getInputStream();
+        try {
+            return context.call(() -> {
+                try {
+                    return ftpJobQueue.submitUpload(path, name, in);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 查询上传任务的状态
+     *
+     * @param id 任务id
+     */
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<FtpJob> job(@PathVariable String id) {
+        FtpJob job = ftpJobQueue.getJob(id);
+        return null == job ? ResponseEntity.notFound().build() : ResponseEntity.ok(job);
+    }
 
     @GetMapping("/downloadFile")
     public String downloadFile() {
@@ -54,4 +121,51 @@ public class FileController {
             return "fail";
         }
     }
+
+    /**
+     * 从ftp服务器下载文件，数据直接写入响应流，不落地到本地磁盘，按交互式请求的优先级借用连接
+     *
+     * @param path     ftp服务器文件路径
+     * @param fileName 文件名称
+     * @param tenant   租户，按租户限速
+     * @param request  请求
+     * @param response 响应
+     */
+    @GetMapping("/downloadFile/stream")
+    public void downloadFileStream(@RequestParam String path, @RequestParam String fileName,
+                                   @RequestHeader(value = "X-Tenant", required = false) String tenant,
+                                   HttpServletRequest request, HttpServletResponse response) throws IOException {
+        TransferContext context = TransferContext.of(resolveTenant(request, tenant), TransferPriority.INTERACTIVE);
+        response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                ContentDisposition.builder("attachment").filename(fileName, StandardCharsets.UTF_8).build().toString());
+        WritableByteChannel channel = Channels.newChannel(response.getOutputStream());
+        boolean b = context.call(() -> ftpProcessor.downloadFile(path, fileName, channel));
+        if (!b && !response.isCommitted()) {
+            response.reset();
+            response.sendError(HttpStatus.NOT_FOUND.value());
+        }
+    }
+
+    /**
+     * 确定请求的租户，已认证的请求使用登录用户，否则只接受单独配置过限速的租户，
+     * 避免调用方随意指定租户绕过限速
+     *
+     * @param request 请求
+     * @param tenant  请求头中的租户
+     * @return 租户，未指定时为null
+     */
+    private String resolveTenant(HttpServletRequest request, String tenant) {
+        Principal principal = request.getUserPrincipal();
+        if (null != principal) {
+            return principal.getName();
+        }
+        if (null == tenant || TransferContext.DEFAULT_TENANT.equals(tenant)) {
+            return null;
+        }
+        if (!bandwidthLimiter.isConfiguredTenant(tenant)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "未配置的租户：" + tenant);
+        }
+        return tenant;
+    }
 }
@@ -0,0 +1,66 @@
+package com.magic.endpoint;
+
+import com.magic.support.BandwidthLimiter;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+
+import java.util.Map;
+
+/**
+ * 查看和调整传输限速的监控端点，调整后立即生效，不需要重启，监控端点只监听本机地址，不能从外部调整
+ * 例如：POST http://127.0.0.1:8081/actuator/ftpbandwidth {"scope":"tenant","key":"batch","bytesPerSecond":5242880}
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname FtpBandwidthEndpoint
+ * @date 2021/6/25 : 16:30
+ */
+@Endpoint(id = "ftpbandwidth")
+public class FtpBandwidthEndpoint {
+
+    private final BandwidthLimiter bandwidthLimiter;
+
+    public FtpBandwidthEndpoint(BandwidthLimiter bandwidthLimiter) {
+        this.bandwidthLimiter = bandwidthLimiter;
+    }
+
+    @ReadOperation
+    public Map<String, Object> limits() {
+        return bandwidthLimiter.snapshot();
+    }
+
+    /**
+     * 调整限速
+     *
+     * @param scope          范围：global、server、tenant，server不指定key时调整默认限速，tenant不指定key时调整未单独配置的租户的默认限速
+     * @param key            服务器（ip:port）或租户
+     * @param bytesPerSecond 每秒字节数，小于等于0时不限速
+     */
+    @WriteOperation
+    public Map<String, Object> update(String scope, @Nullable String key, long bytesPerSecond) {
+        switch (scope) {
+            case "global":
+                bandwidthLimiter.setGlobalRate(bytesPerSecond);
+                break;
+            case "server":
+                if (null == key) {
+                    bandwidthLimiter.setDefaultServerRate(bytesPerSecond);
+                } else {
+                    bandwidthLimiter.setServerRate(key, bytesPerSecond);
+                }
+                break;
+            case "tenant":
+                if (null == key) {
+                    bandwidthLimiter.setDefaultTenantRate(bytesPerSecond);
+                } else {
+                    bandwidthLimiter.setTenantRate(key, bytesPerSecond);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("不支持的限速范围：" + scope);
+        }
+        return bandwidthLimiter.snapshot();
+    }
+}
@@ -0,0 +1,43 @@
+package com.magic.endpoint;
+
+import com.magic.service.FtpJobQueue;
+import com.magic.support.FtpJob;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+
+import java.util.Map;
+
+/**
+ * 查看传输任务队列的监控端点，包括排队数、执行中的任务数和排队时间、总耗时的百分位数
+ * 例如：GET /actuator/ftpjobs，GET /actuator/ftpjobs/{id}
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname FtpJobEndpoint
+ * @date 2021/7/12 : 14:10
+ */
+@Endpoint(id = "ftpjobs")
+public class FtpJobEndpoint {
+
+    private final FtpJobQueue jobQueue;
+
+    public FtpJobEndpoint(FtpJobQueue jobQueue) {
+        this.jobQueue = jobQueue;
+    }
+
+    @ReadOperation
+    public Map<String, Object> status() {
+        return jobQueue.snapshot();
+    }
+
+    /**
+     * 查询单个任务，不存在时返回404
+     *
+     * @param id 任务id
+     */
+    @ReadOperation
+    public FtpJob job(@Selector String id) {
+        return jobQueue.getJob(id);
+    }
+}
@@ -0,0 +1,25 @@
+package com.magic.factory;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 支持流水线发送命令的ftp客户端，连续发出多条命令后再依次读取应答，减少批量操作的往返等待
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname CommandPipeline
+ * @date 2021/7/2 : 14:20
+ */
+public interface CommandPipeline {
+
+    /**
+     * 对每个参数发送一条相同的命令，不等上一条命令的应答就发出下一条，最多有window条命令同时等待应答
+     *
+     * @param command   命令
+     * @param arguments 每条命令的参数
+     * @param window    最多等待应答的命令数
+     * @return 每条命令的应答码，顺序与参数一致
+     */
+    int[] pipeline(String command, List<String> arguments, int window) throws IOException;
+}
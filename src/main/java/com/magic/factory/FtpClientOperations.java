@@ -0,0 +1,127 @@
+package com.magic.factory;
+
+import com.magic.support.RemoteFile;
+import com.magic.support.RemoteFileStat;
+import org.apache.commons.net.ftp.FTP;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPListParseEngine;
+import org.apache.commons.net.ftp.FTPReply;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * {@link RemoteFileClient}在ftp协议上的实现，供明文和加密的客户端共用
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname FtpClientOperations
+ * @date 2021/7/15 : 16:20
+ */
+final class FtpClientOperations {
+
+    private FtpClientOperations() {
+    }
+
+    /**
+     * 连接并登录，之后按二进制传输，SIZE的结果也与传输类型有关
+     */
+    static void connect(FTPClient ftpClient, String host, int port, String username, String password) throws IOException {
+        ftpClient.connect(host, port);
+        if (!ftpClient.login(username, password)) {
+            throw new IOException("登录ftp服务器[" + host + ":" + port + "]失败，返回码：" + ftpClient.getReplyCode());
+        }
+        ftpClient.setFileType(FTP.BINARY_FILE_TYPE);
+    }
+
+    static String server(FTPClient ftpClient) {
+        InetAddress address = ftpClient.isConnected() ? ftpClient.getRemoteAddress() : null;
+        return null == address ? null : address.getHostAddress() + ":" + ftpClient.getRemotePort();
+    }
+
+    /**
+     * 通过SIZE命令获取文件大小，服务器不支持或应答无法解析时返回-1
+     */
+    static long fileSize(FTPClient ftpClient, String pathname) throws IOException {
+        if (!FTPReply.isPositiveCompletion(ftpClient.sendCommand("SIZE", pathname))) {
+            return -1;
+        }
+        String reply = ftpClient.getReplyStrings()[0];
+        try {
+            return Long.parseLong(reply.substring(reply.indexOf(' ') + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 通过SIZE和MDTM命令获取文件状态，不需要列出整个目录
+     */
+    static RemoteFileStat statFile(FTPClient ftpClient, String pathname) throws IOException {
+        long size = fileSize(ftpClient, pathname);
+        String modifyTime = ftpClient.getModificationTime(pathname);
+        return size < 0 && null == modifyTime ? null : new RemoteFileStat(size, modifyTime);
+    }
+
+    /**
+     * 服务器支持MLSD时使用MLSD，否则使用LIST。commons-net在返回前会把整个列表的原始文本逐行读入内存，
+     * 这里按页转换，只减少同时存在的条目对象
+     */
+    static Iterator<RemoteFile> listEntries(FTPClient ftpClient, String pathname, int pageSize) throws IOException {
+        FTPListParseEngine engine = ftpClient.hasFeature("MLSD") ? ftpClient.initiateMListParsing(pathname)
+                : ftpClient.initiateListParsing(pathname);
+        return new Iterator<RemoteFile>() {
+
+            private Iterator<RemoteFile> page = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!page.hasNext()) {
+                    if (!engine.hasNext()) {
+                        return false;
+                    }
+                    //无法解析的行返回null，cdir/pdir条目的名字可能是完整路径，都直接跳过
+                    page = Arrays.stream(engine.getNext(pageSize))
+                            .filter(Objects::nonNull)
+                            .filter(entry -> !MlsdEntryParser.isSelfOrParent(entry))
+                            .map(FtpClientOperations::toRemoteFile)
+                            .iterator();
+                }
+                return true;
+            }
+
+            @Override
+            public RemoteFile next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next();
+            }
+        };
+    }
+
+    static InputStream openRead(FTPClient ftpClient, String pathname, long offset) throws IOException {
+        ftpClient.setRestartOffset(offset);
+        return ftpClient.retrieveFileStream(pathname);
+    }
+
+    static OutputStream openWrite(FTPClient ftpClient, String pathname, boolean append) throws IOException {
+        return append ? ftpClient.appendFileStream(pathname) : ftpClient.storeFileStream(pathname);
+    }
+
+    private static RemoteFile toRemoteFile(FTPFile entry) {
+        RemoteFile.Type type = entry.isSymbolicLink() ? RemoteFile.Type.SYMBOLIC_LINK
+                : entry.isDirectory() ? RemoteFile.Type.DIRECTORY
+                : entry.isFile() ? RemoteFile.Type.FILE : RemoteFile.Type.UNKNOWN;
+        long modifiedTime = null == entry.getTimestamp() ? 0 : entry.getTimestamp().getTimeInMillis();
+        return new RemoteFile(entry.getName(), type, entry.getSize(), modifiedTime);
+    }
+}
@@ -1,7 +1,15 @@
 package com.magic.factory;
 
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
 import com.magic.properties.FtpProperties;
+import com.magic.support.FtpMetrics;
+import com.magic.support.FtpTransport;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPSClient;
+import org.apache.commons.net.util.TrustManagerUtils;
+import org.apache.commons.pool2.DestroyMode;
 import org.apache.commons.pool2.PooledObject;
 import org.apache.commons.pool2.PooledObjectFactory;
 import org.apache.commons.pool2.impl.DefaultPooledObject;
@@ -9,6 +17,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.function.Consumer;
 
 /**
  * @author magic_lz
@@ -16,72 +29,241 @@ import java.io.IOException;
  * @classname FtpClientPooledObjectFactory
  * @date 2021/4/19 : 20:21
  */
-public class FtpClientPooledObjectFactory implements PooledObjectFactory<FTPClient> {
+public class FtpClientPooledObjectFactory implements PooledObjectFactory<RemoteFileClient> {
 
     private Logger log = LoggerFactory.getLogger(FtpClientPooledObjectFactory.class);
 
     private FtpProperties ftpProperties;
 
+    //连接的ftp服务器
+    private FtpProperties.Endpoint endpoint;
+
+    //sftp服务器的ssh配置，加载了known_hosts和私钥，其他协议为null
+    private JSch jsch;
+
+    private FtpMetrics metrics = FtpMetrics.NOOP;
+
+    //连接作为废弃连接被连接池回收时的回调，包装的连接池据此释放借用时占用的资源
+    private Consumer<RemoteFileClient> abandonedListener = ftpClient -> {
+    };
+
     public FtpClientPooledObjectFactory(FtpProperties ftpProperties) {
+        this(ftpProperties, defaultEndpoint(ftpProperties));
+    }
+
+    public FtpClientPooledObjectFactory(FtpProperties ftpProperties, FtpProperties.Endpoint endpoint) {
         this.ftpProperties = ftpProperties;
+        this.endpoint = endpoint;
+        if (transport() == FtpTransport.SFTP) {
+            this.jsch = newJsch(ftpProperties.getSftp());
+        }
+    }
+
+    private static FtpProperties.Endpoint defaultEndpoint(FtpProperties ftpProperties) {
+        FtpProperties.Endpoint endpoint = new FtpProperties.Endpoint();
+        endpoint.setIp(ftpProperties.getIp());
+        endpoint.setPort(ftpProperties.getPort());
+        return endpoint;
+    }
+
+    private FtpTransport transport() {
+        return null == endpoint.getTransport() ? ftpProperties.getTransport() : endpoint.getTransport();
+    }
+
+    /**
+     * 创建sftp使用的jsch，加载校验服务器公钥的known_hosts和登录用的私钥
+     */
+    private JSch newJsch(FtpProperties.Sftp sftp) {
+        JSch newJsch = new JSch();
+        try {
+            if (sftp.getTrustAll()) {
+                log.warn("sftp不校验服务器公钥，连接可能被中间人劫持，只能用于测试环境");
+            } else {
+                newJsch.setKnownHosts(knownHosts(sftp.getKnownHosts()));
+            }
+            if (null != sftp.getPrivateKey()) {
+                newJsch.addIdentity(sftp.getPrivateKey(), sftp.getPassphrase());
+            }
+        } catch (JSchException e) {
+            throw new IllegalStateException("加载sftp密钥或known_hosts失败", e);
+        }
+        return newJsch;
+    }
+
+    /**
+     * 校验服务器公钥时使用的known_hosts文件，文件不存在时启动失败，否则每次建立连接都会因为无法校验公钥而失败
+     */
+    private static String knownHosts(String knownHosts) {
+        if (StringUtils.isBlank(knownHosts)) {
+            throw new IllegalStateException("没有配置ftp.sftp.knownHosts，无法校验sftp服务器公钥");
+        }
+        String file = knownHosts.startsWith("~") ? System.getProperty("user.home") + knownHosts.substring(1) : knownHosts;
+        if (!Files.isRegularFile(Paths.get(file))) {
+            throw new IllegalStateException("known_hosts文件[" + file + "]不存在，无法校验sftp服务器公钥");
+        }
+        return file;
+    }
+
+    public void setMetrics(FtpMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void setAbandonedListener(Consumer<RemoteFileClient> abandonedListener) {
+        this.abandonedListener = abandonedListener;
     }
 
     @Override
-    public PooledObject<FTPClient> makeObject() throws Exception {
-        FTPClient ftpClient = new FTPClient();
+    public PooledObject<RemoteFileClient> makeObject() throws Exception {
+        RemoteFileClient client = newClient();
         try {
-            ftpClient.connect(ftpProperties.getIp(), Integer.valueOf(ftpProperties.getPort()));
-            ftpClient.login(ftpProperties.getUsername(), ftpProperties.getPassword());
-            log.info("连接ftp服务返回码：" + ftpClient.getReplyCode());
-            ftpClient.setBufferSize(ftpProperties.getBufferSize());
-            ftpClient.setControlEncoding(ftpProperties.getEncoding());
-            ftpClient.setFileType(FTPClient.BINARY_FILE_TYPE);
-            ftpClient.enterLocalPassiveMode();
-            return new DefaultPooledObject<>(ftpClient);
+            if (client instanceof FTPClient) {
+                FTPClient ftpClient = (FTPClient) client;
+                configureTimeout(ftpClient);
+                ftpClient.setBufferSize(ftpProperties.getBufferSize());
+                ftpClient.setControlEncoding(ftpProperties.getEncoding());
+            }
+            client.connect(endpoint.getIp(), Integer.valueOf(endpoint.getPort()),
+                    null == endpoint.getUsername() ? ftpProperties.getUsername() : endpoint.getUsername(),
+                    null == endpoint.getPassword() ? ftpProperties.getPassword() : endpoint.getPassword());
+            log.info("连接ftp服务返回码：" + client.getReplyCode());
+            if (client instanceof FTPSClient) {
+                //数据连接的加密方式，PBSZ在TLS下固定为0
+                ((FTPSClient) client).execPBSZ(0);
+                ((FTPSClient) client).execPROT(ftpProperties.getFtps().getProtectData() ? "P" : "C");
+            }
+            //sftp的读写都在ssh会话上，没有数据连接
+            if (client instanceof FTPClient) {
+                configureDataConnection((FTPClient) client);
+            }
+            metrics.connectionCreated();
+            return new DefaultPooledObject<>(client);
         } catch (Exception e) {
-            if (ftpClient.isAvailable()) {
-                ftpClient.disconnect();
+            metrics.connectionCreateFailed();
+            if (client.isConnected()) {
+                client.disconnect();
             }
-            ftpClient = null;
+            client = null;
             log.error("建立ftp连接失败！", (Object) e.getStackTrace());
             throw new Exception("建立ftp连接失败！", e);
         }
     }
 
+    /**
+     * 按服务器的传输协议创建客户端
+     */
+    private RemoteFileClient newClient() {
+        FtpTransport transport = transport();
+        if (transport == FtpTransport.SFTP) {
+            return new SftpClient(jsch, ftpProperties.getSftp(), ftpProperties.getEncoding(),
+                    ftpProperties.getTimeout().getControlKeepAliveMillis());
+        }
+        if (!transport.isFtps()) {
+            return new SessionFtpClient();
+        }
+        FtpProperties.Ftps ftps = ftpProperties.getFtps();
+        SessionFtpsClient ftpsClient = new SessionFtpsClient(ftps.getProtocol(), transport == FtpTransport.FTPS_IMPLICIT,
+                ftps.getSessionReuse());
+        if (ftps.getTrustAll()) {
+            ftpsClient.setTrustManager(TrustManagerUtils.getAcceptAllTrustManager());
+        }
+        return ftpsClient;
+    }
+
+    /**
+     * 设置超时时间，必须在连接前调用，控制连接的超时在建立连接时生效
+     */
+    private void configureTimeout(FTPClient ftpClient) {
+        FtpProperties.Timeout timeout = ftpProperties.getTimeout();
+        ftpClient.setConnectTimeout(timeout.getConnectTimeoutMillis());
+        ftpClient.setDefaultTimeout(timeout.getControlTimeoutMillis());
+        ftpClient.setDataTimeout(Duration.ofMillis(timeout.getDataTimeoutMillis()));
+        ftpClient.setControlKeepAliveTimeout(Duration.ofMillis(timeout.getControlKeepAliveMillis()));
+        ftpClient.setControlKeepAliveReplyTimeout(Duration.ofMillis(timeout.getControlKeepAliveReplyTimeoutMillis()));
+    }
+
+    /**
+     * 设置数据连接方式，连接后设置，建立连接时客户端会恢复为默认的主动模式
+     */
+    private void configureDataConnection(FTPClient ftpClient) throws UnknownHostException {
+        FtpProperties.DataConnection dataConnection = ftpProperties.getDataConnection();
+        dataConnection.getMode().apply(ftpClient);
+        String passiveHost = dataConnection.getPassiveHost();
+        if (StringUtils.isNotBlank(passiveHost)) {
+            ftpClient.setPassiveNatWorkaroundStrategy(hostname -> passiveHost);
+        } else if (!dataConnection.getPassiveNatWorkaround()) {
+            ftpClient.setPassiveNatWorkaroundStrategy(null);
+        }
+        if (StringUtils.isNotBlank(dataConnection.getActiveExternalHost())) {
+            ftpClient.setReportActiveExternalIPAddress(dataConnection.getActiveExternalHost());
+        }
+        if (dataConnection.getActiveMinPort() > 0 && dataConnection.getActiveMaxPort() >= dataConnection.getActiveMinPort()) {
+            ftpClient.setActivePortRange(dataConnection.getActiveMinPort(), dataConnection.getActiveMaxPort());
+        }
+    }
+
+    @Override
+    public void destroyObject(PooledObject<RemoteFileClient> pooledObject) throws Exception {
+        destroyObject(pooledObject, DestroyMode.NORMAL);
+    }
+
+    /**
+     * 销毁连接，连接池调用时对象已被标记为作废，只能按销毁方式判断是否为废弃连接
+     */
     @Override
-    public void destroyObject(PooledObject<FTPClient> pooledObject) throws Exception {
-        FTPClient ftpClient = getObject(pooledObject);
+    public void destroyObject(PooledObject<RemoteFileClient> pooledObject, DestroyMode destroyMode) throws Exception {
+        RemoteFileClient ftpClient = getObject(pooledObject);
+        metrics.connectionDestroyed();
+        //作为废弃连接回收时借用者可能还阻塞在数据连接上，先关闭数据连接
+        if (destroyMode == DestroyMode.ABANDONED) {
+            log.warn("ftp连接[" + endpoint.getIp() + ":" + endpoint.getPort() + "]长时间没有进展，作为废弃连接回收");
+            metrics.transferStalled(endpoint.getIp() + ":" + endpoint.getPort(), "abandoned");
+            if (ftpClient instanceof ProgressAware) {
+                ((ProgressAware) ftpClient).abortConnection();
+            }
+            abandonedListener.accept(ftpClient);
+        }
         if (null != ftpClient && ftpClient.isConnected()) {
             ftpClient.disconnect();
         }
     }
 
     @Override
-    public boolean validateObject(PooledObject<FTPClient> pooledObject) {
-        FTPClient ftpClient = getObject(pooledObject);
+    public boolean validateObject(PooledObject<RemoteFileClient> pooledObject) {
+        RemoteFileClient ftpClient = getObject(pooledObject);
         if (null == ftpClient || !ftpClient.isConnected()) {
+            metrics.validationFailed();
             return false;
         }
-        try {
-            ftpClient.changeWorkingDirectory("/");
+        FtpProperties.Validation validation = ftpProperties.getValidation();
+        //刚归还不久的连接无需再向服务器确认
+        if (System.currentTimeMillis() - pooledObject.getLastReturnTime() < validation.getSkipIfUsedWithinMillis()) {
             return true;
+        }
+        try {
+            if (validation.getStrategy().validate(ftpClient)) {
+                return true;
+            }
+            log.warn("验证ftp连接失败，返回码：" + ftpClient.getReplyCode());
+            metrics.validationFailed();
+            return false;
         } catch (IOException e) {
             log.error("验证ftp连接失败！", (Object) e.getStackTrace());
+            metrics.validationFailed();
             return false;
         }
     }
 
     @Override
-    public void activateObject(PooledObject<FTPClient> pooledObject) throws Exception {
+    public void activateObject(PooledObject<RemoteFileClient> pooledObject) throws Exception {
 
     }
 
     @Override
-    public void passivateObject(PooledObject<FTPClient> pooledObject) throws Exception {
+    public void passivateObject(PooledObject<RemoteFileClient> pooledObject) throws Exception {
 
     }
 
-    private FTPClient getObject(PooledObject<FTPClient> pooledObject) {
+    private RemoteFileClient getObject(PooledObject<RemoteFileClient> pooledObject) {
         if (null == pooledObject || null == pooledObject.getObject()) {
             return null;
         }
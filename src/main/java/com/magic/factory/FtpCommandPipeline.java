@@ -0,0 +1,81 @@
+package com.magic.factory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * 流水线发送命令的实现，供明文和加密的客户端共用。ftp服务器按顺序处理控制连接上的命令，
+ * 应答与命令一一对应，限制等待应答的命令数是为了避免双方的发送缓冲区同时写满
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname FtpCommandPipeline
+ * @date 2021/7/2 : 14:35
+ */
+final class FtpCommandPipeline {
+
+    /**
+     * 读取一条应答
+     */
+    interface ReplyReader {
+        int read() throws IOException;
+    }
+
+    private FtpCommandPipeline() {
+    }
+
+    /**
+     * 流水线发送命令，出错时连接状态无法确定，调用方应作废该连接
+     *
+     * @param output    控制连接的输出
+     * @param reader    应答读取
+     * @param listener  命令发出后的通知
+     * @param session   会话状态
+     * @param command   命令
+     * @param arguments 每条命令的参数
+     * @param window    最多等待应答的命令数
+     */
+    static int[] send(Writer output, ReplyReader reader, BiConsumer<String, String> listener, FtpSessionState session,
+                      String command, List<String> arguments, int window) throws IOException {
+        int[] replies = new int[arguments.size()];
+        int sent = 0;
+        try {
+            while (sent < replies.length && sent < Math.max(1, window)) {
+                write(output, listener, command, arguments.get(sent++));
+            }
+            output.flush();
+            for (int i = 0; i < replies.length; i++) {
+                replies[i] = reader.read();
+                session.afterCommand(command, arguments.get(i), replies[i]);
+                if (sent < replies.length) {
+                    write(output, listener, command, arguments.get(sent++));
+                    output.flush();
+                }
+            }
+        } catch (IOException e) {
+            session.clear();
+            throw e;
+        }
+        return replies;
+    }
+
+    /**
+     * 只发送命令，不读取应答，应答由调用方稍后读取
+     *
+     * @param output   控制连接的输出
+     * @param listener 命令发出后的通知
+     * @param command  命令
+     */
+    static void sendWithoutReply(Writer output, BiConsumer<String, String> listener, String command) throws IOException {
+        write(output, listener, command, null);
+        output.flush();
+    }
+
+    private static void write(Writer output, BiConsumer<String, String> listener, String command, String args) throws IOException {
+        String message = null == args ? command + "\r\n" : command + " " + args + "\r\n";
+        output.write(message);
+        listener.accept(command, message);
+    }
+}
@@ -0,0 +1,148 @@
+package com.magic.factory;
+
+import org.apache.commons.net.ftp.FTPReply;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * ftp会话状态，记录服务器上的当前目录和传输类型，供明文和加密的客户端共用
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname FtpSessionState
+ * @date 2021/6/29 : 10:10
+ */
+class FtpSessionState {
+
+    static final String ROOT = "/";
+
+    //不依赖当前目录的命令，发送前不需要先切换到根目录
+    private static final Set<String> DIRECTORY_INDEPENDENT_COMMANDS = new HashSet<>(Arrays.asList(
+            "CWD", "TYPE", "MODE", "STRU", "PASV", "EPSV", "PORT", "EPRT", "REST", "NOOP", "FEAT", "OPTS",
+            "SYST", "STAT", "HELP", "USER", "PASS", "ACCT", "QUIT", "AUTH", "PBSZ", "PROT", "CCC", "ABOR"));
+
+    //服务器上的当前目录，未知时为null
+    private String workingDirectory;
+    //逻辑上已回到根目录但尚未发送CWD
+    private boolean pendingRoot = false;
+    //当前的传输类型，未知时为-1
+    private int fileType = -1;
+
+    void resetWorkingDirectory() {
+        pendingRoot = !ROOT.equals(workingDirectory);
+    }
+
+    /**
+     * 把要切换的目录转换为规范的绝对路径，相对路径按已知的当前目录计算
+     *
+     * @param pathname 目录
+     * @return 绝对路径，无法确定时返回null
+     */
+    String resolve(String pathname) {
+        if (pathname.startsWith(ROOT)) {
+            return normalize(pathname);
+        }
+        String base = pendingRoot ? ROOT : workingDirectory;
+        return null == base ? null : normalize(base + ROOT + pathname);
+    }
+
+    /**
+     * 服务器是否已位于该目录，是则取消延迟的切换
+     *
+     * @param target 绝对路径
+     */
+    boolean arrive(String target) {
+        if (null != target && target.equals(workingDirectory)) {
+            pendingRoot = false;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 发送命令前调用，存在延迟的切换且该命令依赖当前目录时返回true，调用方需要先切换到根目录
+     *
+     * @param command 命令，为null时表示无条件取出延迟的切换
+     */
+    boolean takePendingRoot(String command) {
+        if (!pendingRoot || (null != command && DIRECTORY_INDEPENDENT_COMMANDS.contains(command.toUpperCase()))) {
+            return false;
+        }
+        pendingRoot = false;
+        return true;
+    }
+
+    /**
+     * 命令完成后根据应答更新会话状态
+     *
+     * @param command 命令
+     * @param args    参数
+     * @param reply   应答码
+     */
+    void afterCommand(String command, String args, int reply) {
+        switch (command.toUpperCase()) {
+            case "CWD":
+                if (FTPReply.isPositiveCompletion(reply)) {
+                    workingDirectory = null != args && args.startsWith(ROOT) ? normalize(args) : null;
+                    pendingRoot = false;
+                }
+                break;
+            case "CDUP":
+            case "XCUP":
+                workingDirectory = null;
+                break;
+            case "RMD":
+            case "XRMD":
+            case "RNTO":
+                //当前目录或其上级可能已被删除或改名，下次切换时重新发送CWD
+                if (FTPReply.isPositiveCompletion(reply)) {
+                    workingDirectory = null;
+                }
+                break;
+            case "TYPE":
+                //setFileType发送TYPE后自行记录，其他途径发送的TYPE无法确定结果
+                fileType = -1;
+                break;
+            case "REIN":
+                clear();
+                break;
+            default:
+                break;
+        }
+    }
+
+    boolean isFileType(int fileType) {
+        return this.fileType == fileType;
+    }
+
+    void setFileType(int fileType) {
+        this.fileType = fileType;
+    }
+
+    void clear() {
+        workingDirectory = null;
+        pendingRoot = false;
+        fileType = -1;
+    }
+
+    /**
+     * 规范化绝对路径，去掉重复的分隔符、末尾的分隔符和“.”，含有“..”时无法确定实际目录，返回null
+     *
+     * @param path 绝对路径
+     */
+    private static String normalize(String path) {
+        StringBuilder builder = new StringBuilder();
+        for (String segment : path.split(ROOT)) {
+            if (segment.isEmpty() || ".".equals(segment)) {
+                continue;
+            }
+            if ("..".equals(segment)) {
+                return null;
+            }
+            builder.append(ROOT).append(segment);
+        }
+        return builder.length() == 0 ? ROOT : builder.toString();
+    }
+}
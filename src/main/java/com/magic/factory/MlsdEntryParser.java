@@ -0,0 +1,134 @@
+package com.magic.factory;
+
+import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPListParseEngine;
+import org.apache.commons.net.ftp.parser.MLSxEntryParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.util.Locale;
+
+/**
+ * MLSD条目解析，在commons-net的基础上识别符号链接。服务器用type=OS.unix=slink:目标（或symlink）表示符号链接，
+ * 事实值中带有“=”，commons-net无法解析而直接丢弃该条目，这里去掉该事实后解析其余部分，并把条目标记为符号链接
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname MlsdEntryParser
+ * @date 2021/7/14 : 16:30
+ */
+public class MlsdEntryParser extends MLSxEntryParser {
+
+    public static final MlsdEntryParser INSTANCE = new MlsdEntryParser();
+
+    private static final String TYPE = "type=";
+    private static final String[] LINK_TYPES = {"os.unix=slink", "os.unix=symlink"};
+
+    @Override
+    public FTPFile parseFTPEntry(String entry) {
+        FTPFile file = super.parseFTPEntry(entry);
+        int space = entry.indexOf(' ');
+        if (null != file || space <= 0) {
+            return file;
+        }
+        String link = null;
+        StringBuilder facts = new StringBuilder();
+        for (String fact : entry.substring(0, space).split(";")) {
+            String type = typeOf(fact);
+            if (null != type && isLinkType(type)) {
+                int colon = fact.indexOf(':');
+                link = colon < 0 ? "" : fact.substring(colon + 1);
+            } else if (!fact.isEmpty()) {
+                facts.append(fact).append(';');
+            }
+        }
+        if (null == link) {
+            return null;
+        }
+        file = super.parseFTPEntry(facts + entry.substring(space));
+        if (null != file) {
+            file.setType(FTPFile.SYMBOLIC_LINK_TYPE);
+            file.setLink(link.isEmpty() ? null : link);
+            file.setRawListing(entry);
+        }
+        return file;
+    }
+
+    /**
+     * 读取MLSD的数据连接并解析，供明文和加密的客户端共用。读完后关闭数据连接，传输结束的应答由调用方读取
+     *
+     * @param socket   数据连接，为null表示服务器拒绝了MLSD，返回空的解析结果
+     * @param encoding 控制连接的编码
+     */
+    static FTPListParseEngine parse(Socket socket, String encoding) throws IOException {
+        if (null == socket) {
+            return new FTPListParseEngine(INSTANCE);
+        }
+        try (Socket dataSocket = socket) {
+            return parse(dataSocket.getInputStream(), encoding);
+        }
+    }
+
+    /**
+     * 解析MLSD格式的列表，读完后关闭输入流
+     *
+     * @param inputStream 列表内容，每行一个条目
+     * @param encoding    列表的编码
+     */
+    static FTPListParseEngine parse(InputStream inputStream, String encoding) throws IOException {
+        FTPListParseEngine engine = new FTPListParseEngine(INSTANCE);
+        try (InputStream listing = inputStream) {
+            engine.readServerList(listing, encoding);
+        }
+        return engine;
+    }
+
+    /**
+     * MLSD条目的type事实，小写，不是MLSD条目或没有type事实时返回null
+     *
+     * @param entry 条目
+     */
+    public static String typeOf(FTPFile entry) {
+        String raw = entry.getRawListing();
+        int space = null == raw ? -1 : raw.indexOf(' ');
+        if (space <= 0) {
+            return null;
+        }
+        for (String fact : raw.substring(0, space).split(";")) {
+            String type = typeOf(fact);
+            if (null != type) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 是否为目录自身或上级目录。MLSD按type=cdir/pdir事实判断，这两种条目的名字可能是完整路径而不是.和..，
+     * 按目录递归时会走到目录之外
+     *
+     * @param entry 列表条目
+     */
+    static boolean isSelfOrParent(FTPFile entry) {
+        if (".".equals(entry.getName()) || "..".equals(entry.getName())) {
+            return true;
+        }
+        String type = typeOf(entry);
+        return "cdir".equals(type) || "pdir".equals(type);
+    }
+
+    private static String typeOf(String fact) {
+        String lower = fact.toLowerCase(Locale.ENGLISH);
+        return lower.startsWith(TYPE) ? lower.substring(TYPE.length()) : null;
+    }
+
+    private static boolean isLinkType(String type) {
+        for (String linkType : LINK_TYPES) {
+            if (type.startsWith(linkType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,26 @@
+package com.magic.factory;
+
+import org.apache.commons.pool2.TrackedUse;
+
+/**
+ * 记录传输进展的ftp客户端，连接池的废弃检测和传输看门狗按最后一次有进展的时间判断连接是否停滞，
+ * 而不是按借出的时长，长时间但持续有数据的传输不会被误判
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname ProgressAware
+ * @date 2021/7/8 : 9:50
+ */
+public interface ProgressAware extends TrackedUse {
+
+    /**
+     * 最后一次收到命令应答或读写数据的时间（毫秒）
+     */
+    @Override
+    long getLastUsed();
+
+    /**
+     * 关闭数据连接和控制连接，使阻塞在读写上的线程立即失败，可以在其他线程调用，之后该客户端只能作废
+     */
+    void abortConnection();
+}
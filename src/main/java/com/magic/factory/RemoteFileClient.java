@@ -0,0 +1,116 @@
+package com.magic.factory;
+
+import com.magic.support.RemoteFile;
+import com.magic.support.RemoteFileStat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+/**
+ * 连接池中的客户端，ftp、ftps和sftp各有一个实现，连接池、传输看门狗和处理器只通过该接口使用客户端。
+ * 相对路径按当前工作目录解析；文件操作失败时返回false或null，返回码通过getReplyCode获取，
+ * 连接断开时抛出IOException，该客户端不能再归还连接池
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname RemoteFileClient
+ * @date 2021/7/15 : 16:10
+ */
+public interface RemoteFileClient {
+
+    /**
+     * 连接服务器并登录
+     *
+     * @param host     服务器地址
+     * @param port     端口
+     * @param username 用户名
+     * @param password 密码
+     */
+    void connect(String host, int port, String username, String password) throws IOException;
+
+    boolean isConnected();
+
+    void disconnect() throws IOException;
+
+    /**
+     * 连接的服务器（ip:port），未连接时返回null
+     */
+    String getServer();
+
+    /**
+     * 最后一次操作的返回码，ftp为服务器的应答码，sftp为失败时的状态码，成功时为0
+     */
+    int getReplyCode();
+
+    /**
+     * 向服务器确认连接可用，不改变会话状态
+     */
+    boolean sendNoOp() throws IOException;
+
+    boolean changeWorkingDirectory(String pathname) throws IOException;
+
+    boolean makeDirectory(String pathname) throws IOException;
+
+    boolean removeDirectory(String pathname) throws IOException;
+
+    boolean deleteFile(String pathname) throws IOException;
+
+    boolean rename(String from, String to) throws IOException;
+
+    /**
+     * 文件大小，文件不存在、是目录或服务器不支持时返回-1
+     *
+     * @param pathname 文件路径
+     */
+    long fileSize(String pathname) throws IOException;
+
+    /**
+     * 文件大小和修改时间，文件不存在或两者都无法获取时返回null
+     *
+     * @param pathname 文件路径
+     */
+    RemoteFileStat statFile(String pathname) throws IOException;
+
+    /**
+     * 列出目录，路径为文件时只返回该文件，路径不存在时没有条目。
+     * 返回前列表已经传输完成，客户端可以立即用于其他操作或归还，条目按页转换
+     *
+     * @param pathname 目录
+     * @param pageSize 每次转换的条目数
+     */
+    Iterator<RemoteFile> listEntries(String pathname, int pageSize) throws IOException;
+
+    /**
+     * 打开读取流，读完并关闭后必须调用completeTransfer，提前关闭时调用abortTransfer
+     *
+     * @param pathname 文件路径
+     * @param offset   起始偏移量
+     * @return 读取流，打开失败时返回null
+     */
+    InputStream openRead(String pathname, long offset) throws IOException;
+
+    /**
+     * 打开写入流，写完并关闭后必须调用completeTransfer
+     *
+     * @param pathname 文件路径
+     * @param append   是否追加到已有文件的末尾
+     * @return 写入流，打开失败时返回null
+     */
+    OutputStream openWrite(String pathname, boolean append) throws IOException;
+
+    /**
+     * 读写流关闭后确认传输完成
+     *
+     * @return 服务器是否确认传输成功
+     */
+    boolean completeTransfer() throws IOException;
+
+    /**
+     * 中止提前关闭了读取流的传输，成功后客户端可以继续使用
+     *
+     * @return 是否中止成功，失败时客户端不能再复用
+     */
+    boolean abortTransfer() throws IOException;
+}
@@ -0,0 +1,17 @@
+package com.magic.factory;
+
+/**
+ * 记录会话状态的ftp客户端，借用时通过该接口重置会话而不必立即发送命令
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname SessionAware
+ * @date 2021/6/29 : 10:05
+ */
+public interface SessionAware {
+
+    /**
+     * 把工作目录重置为根目录，延迟到下一个依赖当前目录的命令发出前再切换
+     */
+    void resetWorkingDirectory();
+}
@@ -0,0 +1,218 @@
+package com.magic.factory;
+
+import com.magic.support.RemoteFile;
+import com.magic.support.RemoteFileStat;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPCmd;
+import org.apache.commons.net.ftp.FTPListParseEngine;
+import org.apache.commons.net.ftp.FTPReply;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 记录会话状态的ftp客户端，跟踪服务器上的当前目录和传输类型，切换到相同的目录或设置相同的传输类型时不再发送命令。
+ * 归还连接池后只在本地把工作目录标记为根目录，直到下一个依赖当前目录的命令发出前才真正切换，
+ * 借用后紧接着切换到绝对路径时可以省掉一次CWD
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname SessionFtpClient
+ * @date 2021/6/28 : 10:15
+ */
+public class SessionFtpClient extends FTPClient implements RemoteFileClient, SessionAware, CommandPipeline, ProgressAware {
+
+    private final FtpSessionState session = new FtpSessionState();
+
+    private final TransferMonitor monitor = new TransferMonitor(this,
+            () -> FtpCommandPipeline.sendWithoutReply(_controlOutput_, this::fireCommandSent, "NOOP"));
+
+    @Override
+    public void resetWorkingDirectory() {
+        session.resetWorkingDirectory();
+    }
+
+    /**
+     * 切换目录，目标目录与服务器上的当前目录相同时不发送命令，相对路径按已知的当前目录转换为绝对路径
+     *
+     * @param pathname 目录
+     */
+    @Override
+    public boolean changeWorkingDirectory(String pathname) throws IOException {
+        String target = session.resolve(pathname);
+        if (session.arrive(target)) {
+            return true;
+        }
+        if (null == target && session.takePendingRoot(null)) {
+            super.changeWorkingDirectory(FtpSessionState.ROOT);
+        }
+        return super.changeWorkingDirectory(null == target ? pathname : target);
+    }
+
+    /**
+     * 设置传输类型，与当前的传输类型相同时不发送命令
+     *
+     * @param fileType 传输类型
+     */
+    @Override
+    public boolean setFileType(int fileType) throws IOException {
+        if (session.isFileType(fileType)) {
+            return true;
+        }
+        boolean flag = super.setFileType(fileType);
+        session.setFileType(flag ? fileType : -1);
+        return flag;
+    }
+
+    @Override
+    public boolean setFileType(int fileType, int formatOrByteSize) throws IOException {
+        session.setFileType(-1);
+        return super.setFileType(fileType, formatOrByteSize);
+    }
+
+    /**
+     * 所有命令都经过该方法，在此更新会话状态，依赖当前目录的命令发出前先完成延迟的切换
+     */
+    @Override
+    public int sendCommand(String command, String args) throws IOException {
+        monitor.drain();
+        if (session.takePendingRoot(command)) {
+            super.changeWorkingDirectory(FtpSessionState.ROOT);
+        }
+        int reply;
+        try {
+            reply = super.sendCommand(command, args);
+        } catch (IOException e) {
+            session.clear();
+            throw e;
+        }
+        monitor.touch();
+        session.afterCommand(command, args, reply);
+        return reply;
+    }
+
+    /**
+     * 流水线发送命令，依赖当前目录的命令发出前先完成延迟的切换
+     */
+    @Override
+    public int[] pipeline(String command, List<String> arguments, int window) throws IOException {
+        monitor.drain();
+        if (session.takePendingRoot(command)) {
+            super.changeWorkingDirectory(FtpSessionState.ROOT);
+        }
+        return FtpCommandPipeline.send(_controlOutput_, () -> {
+            int reply = getReply();
+            monitor.touch();
+            return reply;
+        }, this::fireCommandSent, session, command, arguments, window);
+    }
+
+    @Override
+    public long getLastUsed() {
+        return monitor.getLastProgressTime();
+    }
+
+    @Override
+    public void abortConnection() {
+        monitor.abort(_socket_);
+    }
+
+    /**
+     * 以流的方式传输时记录进展并在控制连接上保活
+     */
+    @Override
+    protected InputStream _retrieveFileStream(String command, String remote) throws IOException {
+        return monitor.wrap(super._retrieveFileStream(command, remote));
+    }
+
+    @Override
+    protected OutputStream _storeFileStream(String command, String remote) throws IOException {
+        return monitor.wrap(super._storeFileStream(command, remote));
+    }
+
+    @Override
+    public boolean completePendingCommand() throws IOException {
+        return FTPReply.isPositiveCompletion(monitor.awaitTransferReply());
+    }
+
+    /**
+     * 发送ABOR后读取传输和ABOR的应答，数据流必须已经关闭
+     */
+    @Override
+    public boolean abortTransfer() throws IOException {
+        FtpCommandPipeline.sendWithoutReply(_controlOutput_, this::fireCommandSent, "ABOR");
+        return monitor.awaitAbortReply();
+    }
+
+    @Override
+    public void connect(String host, int port, String username, String password) throws IOException {
+        FtpClientOperations.connect(this, host, port, username, password);
+    }
+
+    @Override
+    public String getServer() {
+        return FtpClientOperations.server(this);
+    }
+
+    @Override
+    public long fileSize(String pathname) throws IOException {
+        return FtpClientOperations.fileSize(this, pathname);
+    }
+
+    @Override
+    public RemoteFileStat statFile(String pathname) throws IOException {
+        return FtpClientOperations.statFile(this, pathname);
+    }
+
+    @Override
+    public Iterator<RemoteFile> listEntries(String pathname, int pageSize) throws IOException {
+        return FtpClientOperations.listEntries(this, pathname, pageSize);
+    }
+
+    @Override
+    public InputStream openRead(String pathname, long offset) throws IOException {
+        return FtpClientOperations.openRead(this, pathname, offset);
+    }
+
+    @Override
+    public OutputStream openWrite(String pathname, boolean append) throws IOException {
+        return FtpClientOperations.openWrite(this, pathname, append);
+    }
+
+    @Override
+    public boolean completeTransfer() throws IOException {
+        return completePendingCommand();
+    }
+
+    /**
+     * 按MLSD列出目录，符号链接条目不会因为无法解析而被丢弃，mlistDir也经过该方法
+     */
+    @Override
+    public FTPListParseEngine initiateMListParsing(String pathname) throws IOException {
+        Socket socket = _openDataConnection_(FTPCmd.MLSD, pathname);
+        try {
+            return MlsdEntryParser.parse(socket, getControlEncoding());
+        } finally {
+            if (null != socket) {
+                completePendingCommand();
+            }
+        }
+    }
+
+    @Override
+    protected void _connectAction_() throws IOException {
+        session.clear();
+        monitor.clear();
+        super._connectAction_();
+    }
+
+    @Override
+    public void disconnect() throws IOException {
+        session.clear();
+        super.disconnect();
+    }
+}
@@ -0,0 +1,264 @@
+package com.magic.factory;
+
+import com.magic.support.RemoteFile;
+import com.magic.support.RemoteFileStat;
+import org.apache.commons.net.ftp.FTPCmd;
+import org.apache.commons.net.ftp.FTPListParseEngine;
+import org.apache.commons.net.ftp.FTPReply;
+import org.apache.commons.net.ftp.FTPSClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.Socket;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 记录会话状态的ftps客户端，会话状态的处理与{@link SessionFtpClient}一致。
+ * 数据连接复用控制连接的TLS会话，每次传输只需简化握手，要求“require_ssl_reuse”的服务器（如vsftpd）也能正常传输。
+ * JDK没有提供指定会话的接口，这里通过反射把控制连接的会话放入客户端会话缓存，
+ * 运行在JDK9及以上时需要增加启动参数--add-opens java.base/sun.security.ssl=ALL-UNNAMED和--add-opens java.base/sun.security.util=ALL-UNNAMED，
+ * 反射失败时退化为每次传输完整握手
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname SessionFtpsClient
+ * @date 2021/6/29 : 10:40
+ */
+public class SessionFtpsClient extends FTPSClient implements RemoteFileClient, SessionAware, CommandPipeline, ProgressAware {
+
+    private Logger log = LoggerFactory.getLogger(SessionFtpsClient.class);
+
+    private final FtpSessionState session = new FtpSessionState();
+
+    private final TransferMonitor monitor = new TransferMonitor(this,
+            () -> FtpCommandPipeline.sendWithoutReply(_controlOutput_, this::fireCommandSent, "NOOP"));
+
+    //数据连接是否复用控制连接的TLS会话
+    private boolean sessionReuse;
+
+    /**
+     * @param protocol     TLS协议版本，如TLSv1.2
+     * @param implicit     是否隐式ftps
+     * @param sessionReuse 数据连接是否复用控制连接的TLS会话
+     */
+    public SessionFtpsClient(String protocol, boolean implicit, boolean sessionReuse) {
+        super(protocol, implicit);
+        this.sessionReuse = sessionReuse;
+    }
+
+    @Override
+    public void resetWorkingDirectory() {
+        session.resetWorkingDirectory();
+    }
+
+    @Override
+    public boolean changeWorkingDirectory(String pathname) throws IOException {
+        String target = session.resolve(pathname);
+        if (session.arrive(target)) {
+            return true;
+        }
+        if (null == target && session.takePendingRoot(null)) {
+            super.changeWorkingDirectory(FtpSessionState.ROOT);
+        }
+        return super.changeWorkingDirectory(null == target ? pathname : target);
+    }
+
+    @Override
+    public boolean setFileType(int fileType) throws IOException {
+        if (session.isFileType(fileType)) {
+            return true;
+        }
+        boolean flag = super.setFileType(fileType);
+        session.setFileType(flag ? fileType : -1);
+        return flag;
+    }
+
+    @Override
+    public boolean setFileType(int fileType, int formatOrByteSize) throws IOException {
+        session.setFileType(-1);
+        return super.setFileType(fileType, formatOrByteSize);
+    }
+
+    @Override
+    public int sendCommand(String command, String args) throws IOException {
+        monitor.drain();
+        if (session.takePendingRoot(command)) {
+            super.changeWorkingDirectory(FtpSessionState.ROOT);
+        }
+        int reply;
+        try {
+            reply = super.sendCommand(command, args);
+        } catch (IOException e) {
+            session.clear();
+            throw e;
+        }
+        monitor.touch();
+        session.afterCommand(command, args, reply);
+        return reply;
+    }
+
+    /**
+     * 流水线发送命令，依赖当前目录的命令发出前先完成延迟的切换
+     */
+    @Override
+    public int[] pipeline(String command, List<String> arguments, int window) throws IOException {
+        monitor.drain();
+        if (session.takePendingRoot(command)) {
+            super.changeWorkingDirectory(FtpSessionState.ROOT);
+        }
+        return FtpCommandPipeline.send(_controlOutput_, () -> {
+            int reply = getReply();
+            monitor.touch();
+            return reply;
+        }, this::fireCommandSent, session, command, arguments, window);
+    }
+
+    @Override
+    public long getLastUsed() {
+        return monitor.getLastProgressTime();
+    }
+
+    @Override
+    public void abortConnection() {
+        monitor.abort(_socket_);
+    }
+
+    /**
+     * 以流的方式传输时记录进展并在控制连接上保活
+     */
+    @Override
+    protected InputStream _retrieveFileStream(String command, String remote) throws IOException {
+        return monitor.wrap(super._retrieveFileStream(command, remote));
+    }
+
+    @Override
+    protected OutputStream _storeFileStream(String command, String remote) throws IOException {
+        return monitor.wrap(super._storeFileStream(command, remote));
+    }
+
+    @Override
+    public boolean completePendingCommand() throws IOException {
+        return FTPReply.isPositiveCompletion(monitor.awaitTransferReply());
+    }
+
+    /**
+     * 发送ABOR后读取传输和ABOR的应答，数据流必须已经关闭
+     */
+    @Override
+    public boolean abortTransfer() throws IOException {
+        FtpCommandPipeline.sendWithoutReply(_controlOutput_, this::fireCommandSent, "ABOR");
+        return monitor.awaitAbortReply();
+    }
+
+    @Override
+    public void connect(String host, int port, String username, String password) throws IOException {
+        FtpClientOperations.connect(this, host, port, username, password);
+    }
+
+    @Override
+    public String getServer() {
+        return FtpClientOperations.server(this);
+    }
+
+    @Override
+    public long fileSize(String pathname) throws IOException {
+        return FtpClientOperations.fileSize(this, pathname);
+    }
+
+    @Override
+    public RemoteFileStat statFile(String pathname) throws IOException {
+        return FtpClientOperations.statFile(this, pathname);
+    }
+
+    @Override
+    public Iterator<RemoteFile> listEntries(String pathname, int pageSize) throws IOException {
+        return FtpClientOperations.listEntries(this, pathname, pageSize);
+    }
+
+    @Override
+    public InputStream openRead(String pathname, long offset) throws IOException {
+        return FtpClientOperations.openRead(this, pathname, offset);
+    }
+
+    @Override
+    public OutputStream openWrite(String pathname, boolean append) throws IOException {
+        return FtpClientOperations.openWrite(this, pathname, append);
+    }
+
+    @Override
+    public boolean completeTransfer() throws IOException {
+        return completePendingCommand();
+    }
+
+    /**
+     * 按MLSD列出目录，符号链接条目不会因为无法解析而被丢弃，mlistDir也经过该方法
+     */
+    @Override
+    public FTPListParseEngine initiateMListParsing(String pathname) throws IOException {
+        Socket socket = _openDataConnection_(FTPCmd.MLSD, pathname);
+        try {
+            return MlsdEntryParser.parse(socket, getControlEncoding());
+        } finally {
+            if (null != socket) {
+                completePendingCommand();
+            }
+        }
+    }
+
+    @Override
+    protected void _connectAction_() throws IOException {
+        session.clear();
+        monitor.clear();
+        super._connectAction_();
+    }
+
+    @Override
+    public void disconnect() throws IOException {
+        session.clear();
+        super.disconnect();
+    }
+
+    /**
+     * 数据连接握手前把控制连接的TLS会话放入会话缓存，握手时按服务器地址找到该会话并恢复
+     *
+     * @param socket 数据连接
+     */
+    @Override
+    protected void _prepareDataSocket_(Socket socket) throws IOException {
+        if (!sessionReuse || !(socket instanceof SSLSocket) || !(_socket_ instanceof SSLSocket)) {
+            return;
+        }
+        SSLSession sslSession = ((SSLSocket) _socket_).getSession();
+        if (!sslSession.isValid()) {
+            return;
+        }
+        SSLSessionContext context = sslSession.getSessionContext();
+        try {
+            Field field = context.getClass().getDeclaredField("sessionHostPortCache");
+            field.setAccessible(true);
+            Object cache = field.get(context);
+            Method put = cache.getClass().getDeclaredMethod("put", Object.class, Object.class);
+            put.setAccessible(true);
+            //握手时按主机名或地址查找会话，两种键都放入
+            put.invoke(cache, cacheKey(socket.getInetAddress().getHostName(), socket.getPort()), sslSession);
+            put.invoke(cache, cacheKey(socket.getInetAddress().getHostAddress(), socket.getPort()), sslSession);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            sessionReuse = false;
+            log.warn("无法复用TLS会话，数据连接将完整握手：" + e);
+        }
+    }
+
+    private static String cacheKey(String host, int port) {
+        return (host + ":" + port).toLowerCase(Locale.ENGLISH);
+    }
+}
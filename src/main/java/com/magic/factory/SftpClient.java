@@ -0,0 +1,433 @@
+package com.magic.factory;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpATTRS;
+import com.jcraft.jsch.SftpException;
+import com.jcraft.jsch.SftpProgressMonitor;
+import com.magic.properties.FtpProperties;
+import com.magic.support.RemoteFile;
+import com.magic.support.RemoteFileStat;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 基于jsch的sftp客户端，与ftp客户端一样接入连接池和默认处理器，负载均衡、优先级排队、传输看门狗和分段下载对sftp同样生效。
+ * 请求失败时返回码为sftp的状态码；sftp没有数据连接，传输结束后completeTransfer直接返回成功，
+ * 传输中的错误在读写或关闭流时抛出。相对路径按登录后的初始目录解析，借用时工作目录重置为该目录
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname SftpClient
+ * @date 2021/7/14 : 18:20
+ */
+public class SftpClient implements RemoteFileClient, SessionAware, ProgressAware {
+
+    //修改时间按UTC，与ftp的MDTM应答格式一致
+    private static final DateTimeFormatter MODIFY_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMddHHmmss").withZone(ZoneOffset.UTC);
+
+    private final JSch jsch;
+
+    private final FtpProperties.Sftp sftp;
+
+    //文件名编码，与ftp控制连接的编码一致
+    private final String encoding;
+
+    //ssh会话的保活间隔（毫秒）
+    private final long keepAliveMillis;
+
+    private String host;
+
+    private int port;
+
+    private volatile Session session;
+
+    private volatile ChannelSftp channel;
+
+    //登录后的初始目录
+    private String home = "/";
+
+    //本地记录的工作目录，sftp请求都使用绝对路径
+    private String workingDirectory = "/";
+
+    //最后一次请求的状态码
+    private int replyCode = ChannelSftp.SSH_FX_OK;
+
+    private volatile long lastUsed = System.currentTimeMillis();
+
+    /**
+     * @param jsch            已加载known_hosts和私钥的jsch，多个客户端共用
+     * @param sftp            sftp配置
+     * @param encoding        文件名编码
+     * @param keepAliveMillis ssh会话的保活间隔（毫秒），小于等于0时不保活
+     */
+    public SftpClient(JSch jsch, FtpProperties.Sftp sftp, String encoding, long keepAliveMillis) {
+        this.jsch = jsch;
+        this.sftp = sftp;
+        this.encoding = encoding;
+        this.keepAliveMillis = keepAliveMillis;
+    }
+
+    /**
+     * 建立ssh会话并打开sftp通道，用户名和密码在ssh握手时校验
+     */
+    @Override
+    public void connect(String host, int port, String username, String password) throws IOException {
+        this.host = host;
+        this.port = port;
+        Session newSession = null;
+        try {
+            newSession = jsch.getSession(username, host, port);
+            if (null != password) {
+                newSession.setPassword(password);
+            }
+            newSession.setConfig("StrictHostKeyChecking", sftp.getTrustAll() ? "no" : "yes");
+            //与ftp的控制连接保活使用相同的间隔，超过该时间没有数据时发送保活消息
+            if (keepAliveMillis > 0) {
+                newSession.setServerAliveInterval((int) keepAliveMillis);
+            }
+            newSession.connect(sftp.getConnectTimeoutMillis());
+            ChannelSftp newChannel = (ChannelSftp) newSession.openChannel("sftp");
+            newChannel.connect(sftp.getConnectTimeoutMillis());
+            //读写时同时发出的请求数，不必等上一个请求的应答
+            newChannel.setBulkRequests(sftp.getBulkRequests());
+            newChannel.setFilenameEncoding(encoding);
+            home = newChannel.pwd();
+            workingDirectory = home;
+            session = newSession;
+            channel = newChannel;
+        } catch (JSchException | SftpException e) {
+            if (null != newSession) {
+                newSession.disconnect();
+            }
+            throw new IOException("建立sftp会话失败：" + e.getMessage(), e);
+        }
+        ok();
+    }
+
+    @Override
+    public boolean isConnected() {
+        ChannelSftp current = channel;
+        return null != current && current.isConnected();
+    }
+
+    @Override
+    public void disconnect() {
+        if (null != channel) {
+            channel.disconnect();
+        }
+        if (null != session) {
+            session.disconnect();
+        }
+    }
+
+    @Override
+    public String getServer() {
+        return isConnected() ? host + ":" + port : null;
+    }
+
+    @Override
+    public int getReplyCode() {
+        return replyCode;
+    }
+
+    @Override
+    public void resetWorkingDirectory() {
+        workingDirectory = home;
+    }
+
+    @Override
+    public boolean sendNoOp() throws IOException {
+        try {
+            channel().realpath(".");
+            return ok();
+        } catch (SftpException e) {
+            return failed(e);
+        }
+    }
+
+    @Override
+    public boolean changeWorkingDirectory(String pathname) throws IOException {
+        String target = resolve(pathname);
+        try {
+            if (!target.equals(workingDirectory) && !channel().stat(target).isDir()) {
+                touch();
+                replyCode = ChannelSftp.SSH_FX_FAILURE;
+                return false;
+            }
+            workingDirectory = target;
+            return ok();
+        } catch (SftpException e) {
+            return failed(e);
+        }
+    }
+
+    @Override
+    public boolean makeDirectory(String pathname) throws IOException {
+        try {
+            channel().mkdir(resolve(pathname));
+            return ok();
+        } catch (SftpException e) {
+            return failed(e);
+        }
+    }
+
+    @Override
+    public boolean removeDirectory(String pathname) throws IOException {
+        try {
+            channel().rmdir(resolve(pathname));
+            return ok();
+        } catch (SftpException e) {
+            return failed(e);
+        }
+    }
+
+    @Override
+    public boolean deleteFile(String pathname) throws IOException {
+        try {
+            channel().rm(resolve(pathname));
+            return ok();
+        } catch (SftpException e) {
+            return failed(e);
+        }
+    }
+
+    @Override
+    public boolean rename(String from, String to) throws IOException {
+        try {
+            channel().rename(resolve(from), resolve(to));
+            return ok();
+        } catch (SftpException e) {
+            return failed(e);
+        }
+    }
+
+    @Override
+    public long fileSize(String pathname) throws IOException {
+        try {
+            SftpATTRS attrs = channel().stat(resolve(pathname));
+            ok();
+            return attrs.isDir() ? -1 : attrs.getSize();
+        } catch (SftpException e) {
+            failed(e);
+            return -1;
+        }
+    }
+
+    @Override
+    public RemoteFileStat statFile(String pathname) throws IOException {
+        try {
+            SftpATTRS attrs = channel().stat(resolve(pathname));
+            ok();
+            return new RemoteFileStat(attrs.isDir() ? -1 : attrs.getSize(), MODIFY_TIME_FORMATTER.format(modifiedTime(attrs)));
+        } catch (SftpException e) {
+            failed(e);
+            return null;
+        }
+    }
+
+    /**
+     * sftp的目录列表一次返回，不分页
+     */
+    @Override
+    public Iterator<RemoteFile> listEntries(String pathname, int pageSize) throws IOException {
+        List<RemoteFile> entries = new ArrayList<>();
+        try {
+            channel().ls(resolve(pathname), entry -> {
+                if (!".".equals(entry.getFilename()) && !"..".equals(entry.getFilename())) {
+                    entries.add(toRemoteFile(entry.getFilename(), entry.getAttrs()));
+                }
+                return ChannelSftp.LsEntrySelector.CONTINUE;
+            });
+            ok();
+        } catch (SftpException e) {
+            failed(e);
+        }
+        return entries.iterator();
+    }
+
+    @Override
+    public InputStream openRead(String pathname, long offset) throws IOException {
+        try {
+            InputStream inputStream = channel().get(resolve(pathname), (SftpProgressMonitor) null, offset);
+            ok();
+            return new ProgressInputStream(inputStream);
+        } catch (SftpException e) {
+            failed(e);
+            return null;
+        }
+    }
+
+    @Override
+    public OutputStream openWrite(String pathname, boolean append) throws IOException {
+        try {
+            OutputStream outputStream = channel().put(resolve(pathname), (SftpProgressMonitor) null,
+                    append ? ChannelSftp.APPEND : ChannelSftp.OVERWRITE);
+            ok();
+            return new ProgressOutputStream(outputStream);
+        } catch (SftpException e) {
+            failed(e);
+            return null;
+        }
+    }
+
+    /**
+     * 传输结果在读写和关闭流时已经确定，这里只确认会话仍然可用
+     */
+    @Override
+    public boolean completeTransfer() throws IOException {
+        channel();
+        return ok();
+    }
+
+    /**
+     * 关闭读取流时已经结束了sftp的读请求，会话可以继续使用
+     */
+    @Override
+    public boolean abortTransfer() {
+        return isConnected();
+    }
+
+    @Override
+    public long getLastUsed() {
+        return lastUsed;
+    }
+
+    /**
+     * 断开ssh会话，阻塞在读写上的线程随之收到异常
+     */
+    @Override
+    public void abortConnection() {
+        Session current = session;
+        if (null != current) {
+            current.disconnect();
+        }
+    }
+
+    private void touch() {
+        lastUsed = System.currentTimeMillis();
+    }
+
+    private ChannelSftp channel() throws IOException {
+        ChannelSftp current = channel;
+        if (null == current || !current.isConnected()) {
+            throw new IOException("sftp会话已断开");
+        }
+        return current;
+    }
+
+    /**
+     * 请求成功
+     */
+    private boolean ok() {
+        touch();
+        replyCode = ChannelSftp.SSH_FX_OK;
+        return true;
+    }
+
+    /**
+     * 请求失败时记录sftp的状态码，会话已断开时抛出异常，由处理器作废该连接
+     */
+    private boolean failed(SftpException e) throws IOException {
+        if (!isConnected()) {
+            throw new IOException("sftp会话已断开", e);
+        }
+        touch();
+        replyCode = e.id;
+        return false;
+    }
+
+    /**
+     * 按工作目录把路径转换为规范的绝对路径
+     */
+    private String resolve(String path) {
+        if (StringUtils.isEmpty(path)) {
+            return workingDirectory;
+        }
+        String absolute = path.startsWith("/") ? path : workingDirectory + "/" + path;
+        Deque<String> segments = new ArrayDeque<>();
+        for (String segment : absolute.split("/")) {
+            if ("..".equals(segment)) {
+                segments.pollLast();
+            } else if (!segment.isEmpty() && !".".equals(segment)) {
+                segments.addLast(segment);
+            }
+        }
+        return "/" + String.join("/", segments);
+    }
+
+    private static Instant modifiedTime(SftpATTRS attrs) {
+        return Instant.ofEpochSecond(attrs.getMTime() & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 把sftp的文件属性转换为目录条目，符号链接按链接本身返回，不解析链接的目标
+     */
+    private static RemoteFile toRemoteFile(String name, SftpATTRS attrs) {
+        RemoteFile.Type type = attrs.isLink() ? RemoteFile.Type.SYMBOLIC_LINK
+                : attrs.isDir() ? RemoteFile.Type.DIRECTORY
+                : attrs.isReg() ? RemoteFile.Type.FILE : RemoteFile.Type.UNKNOWN;
+        return new RemoteFile(name, type, attrs.getSize(), modifiedTime(attrs).toEpochMilli());
+    }
+
+    /**
+     * 读取数据时记录进展
+     */
+    private class ProgressInputStream extends FilterInputStream {
+
+        ProgressInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            touch();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            touch();
+            return read;
+        }
+    }
+
+    /**
+     * 写入数据时记录进展
+     */
+    private class ProgressOutputStream extends FilterOutputStream {
+
+        ProgressOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            touch();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            touch();
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.magic.factory;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPReply;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+
+/**
+ * 以流的方式传输时的监控，供明文和加密的客户端共用，记录控制连接和数据连接最后一次有进展的时间，
+ * 传输停滞时可以关闭数据连接，使阻塞在读写上的线程立即失败。
+ * commons-net只在storeFile和retrieveFile中发送保活的NOOP，以流的方式传输时由该类在数据有进展时按间隔发送。
+ * 传输过程中只发送NOOP不读取应答，服务器对NOOP和传输的应答顺序不固定，传输完成时跳过NOOP的应答（200）找到传输的应答
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname TransferMonitor
+ * @date 2021/7/6 : 10:30
+ */
+class TransferMonitor {
+
+    private Logger log = LoggerFactory.getLogger(TransferMonitor.class);
+
+    /**
+     * 只发送NOOP，不读取应答
+     */
+    interface NoOpSender {
+        void send() throws IOException;
+    }
+
+    private final FTPClient ftpClient;
+
+    private final NoOpSender sender;
+
+    //上次在控制连接上发送NOOP或开始传输的时间
+    private long lastActiveTime;
+    //未读取应答的NOOP数
+    private int notAcked = 0;
+    //是否正在以流的方式传输
+    private boolean transferring = false;
+    //最后一次发送命令或读写数据的时间，看门狗在其他线程读取
+    private volatile long lastProgressTime = System.currentTimeMillis();
+    //正在传输的数据流，看门狗在其他线程关闭
+    private volatile Closeable dataStream;
+
+    TransferMonitor(FTPClient ftpClient, NoOpSender sender) {
+        this.ftpClient = ftpClient;
+        this.sender = sender;
+    }
+
+    /**
+     * 包装数据连接的输入流
+     *
+     * @param inputStream 数据连接的输入流，为null时说明打开失败
+     */
+    InputStream wrap(InputStream inputStream) {
+        if (null == inputStream) {
+            return null;
+        }
+        start(inputStream);
+        return new FilterInputStream(inputStream) {
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                progress();
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                progress();
+                return n;
+            }
+        };
+    }
+
+    /**
+     * 包装数据连接的输出流
+     *
+     * @param outputStream 数据连接的输出流，为null时说明打开失败
+     */
+    OutputStream wrap(OutputStream outputStream) {
+        if (null == outputStream) {
+            return null;
+        }
+        start(outputStream);
+        return new FilterOutputStream(outputStream) {
+
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                progress();
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                progress();
+            }
+        };
+    }
+
+    /**
+     * 读取传输完成的应答，跳过先到达的NOOP应答，其余NOOP应答留到下一条命令发出前再读取，
+     * 使getReplyCode仍是传输的应答
+     */
+    int awaitTransferReply() throws IOException {
+        transferring = false;
+        dataStream = null;
+        int reply = ftpClient.getReply();
+        while (notAcked > 0 && reply == FTPReply.COMMAND_OK) {
+            notAcked--;
+            reply = ftpClient.getReply();
+        }
+        return reply;
+    }
+
+    /**
+     * 数据流提前关闭并发出ABOR后读取应答：先是传输的应答（中止时一般为426，服务器已发完数据时为226），
+     * 再读取传输期间未读取的NOOP应答，最后是ABOR的应答（225或226）
+     *
+     * @return ABOR是否成功
+     */
+    boolean awaitAbortReply() throws IOException {
+        awaitTransferReply();
+        drain();
+        int reply = ftpClient.getReply();
+        touch();
+        return FTPReply.isPositiveCompletion(reply);
+    }
+
+    /**
+     * 发送命令前读取未读取的NOOP应答，使后续命令与应答重新对应，传输过程中不读取
+     */
+    void drain() throws IOException {
+        if (notAcked == 0 || transferring) {
+            return;
+        }
+        int timeout = ftpClient.getSoTimeout();
+        try {
+            ftpClient.setSoTimeout((int) ftpClient.getControlKeepAliveReplyTimeoutDuration().toMillis());
+            while (notAcked > 0) {
+                ftpClient.getReply();
+                notAcked--;
+            }
+        } catch (SocketTimeoutException e) {
+            log.warn("未收到" + notAcked + "个NOOP的应答");
+            notAcked = 0;
+        } finally {
+            ftpClient.setSoTimeout(timeout);
+        }
+    }
+
+    void clear() {
+        notAcked = 0;
+        transferring = false;
+        dataStream = null;
+    }
+
+    /**
+     * 控制连接有进展时调用
+     */
+    void touch() {
+        lastProgressTime = System.currentTimeMillis();
+    }
+
+    long getLastProgressTime() {
+        return lastProgressTime;
+    }
+
+    /**
+     * 关闭正在传输的数据连接和控制连接，可以在其他线程调用
+     *
+     * @param controlSocket 控制连接
+     */
+    void abort(Socket controlSocket) {
+        closeQuietly(dataStream);
+        closeQuietly(controlSocket);
+    }
+
+    private void closeQuietly(Closeable closeable) {
+        if (null == closeable) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            log.warn("关闭连接失败：" + e.getMessage());
+        }
+    }
+
+    private void start(Closeable stream) {
+        lastActiveTime = System.currentTimeMillis();
+        lastProgressTime = lastActiveTime;
+        transferring = true;
+        dataStream = stream;
+    }
+
+    /**
+     * 数据有进展时记录时间，距上次发送超过保活间隔时发送NOOP
+     */
+    private void progress() throws IOException {
+        long now = System.currentTimeMillis();
+        lastProgressTime = now;
+        Duration interval = ftpClient.getControlKeepAliveTimeoutDuration();
+        if (interval.isZero() || interval.isNegative() || now - lastActiveTime < interval.toMillis()) {
+            return;
+        }
+        lastActiveTime = now;
+        sender.send();
+        notAcked++;
+    }
+}
@@ -0,0 +1,78 @@
+package com.magic.pool;
+
+import com.magic.factory.RemoteFileClient;
+import org.apache.commons.pool2.ObjectPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 突发借用时的连接预建器，借走最后一个空闲连接后在后台并行建立新连接，
+ * 后续的借用者不必各自在借用线程里串行完成连接和登录的握手
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname BurstPrefiller
+ * @date 2021/6/28 : 14:40
+ */
+public class BurstPrefiller {
+
+    private Logger log = LoggerFactory.getLogger(BurstPrefiller.class);
+
+    private final Executor executor;
+
+    //最大连接数，-1表示不限制
+    private final int maxTotal;
+
+    //每次最多预建的连接数
+    private final int batchSize;
+
+    //正在建立的连接数
+    private final AtomicInteger pending = new AtomicInteger();
+
+    public BurstPrefiller(Executor executor, int maxTotal, int batchSize) {
+        this.executor = executor;
+        this.maxTotal = maxTotal;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 借用连接后调用，连接池中没有空闲连接且未达到最大连接数时在后台预建连接
+     *
+     * @param pool 连接池
+     */
+    public void onBorrow(ObjectPool<RemoteFileClient> pool) {
+        if (pool.getNumIdle() > 0) {
+            return;
+        }
+        int spare = maxTotal < 0 ? batchSize : maxTotal - pool.getNumActive() - pending.get();
+        int count = Math.min(batchSize - pending.get(), spare);
+        for (int i = 0; i < count; i++) {
+            pending.incrementAndGet();
+            try {
+                executor.execute(() -> {
+                    try {
+                        pool.addObject();
+                    } catch (Exception e) {
+                        log.warn("预建ftp连接失败：" + e.getMessage());
+                    } finally {
+                        pending.decrementAndGet();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                pending.decrementAndGet();
+                return;
+            }
+        }
+    }
+
+    /**
+     * 正在建立的连接数
+     */
+    public int getPending() {
+        return pending.get();
+    }
+}
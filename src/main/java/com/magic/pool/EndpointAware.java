@@ -0,0 +1,32 @@
+package com.magic.pool;
+
+import com.magic.factory.RemoteFileClient;
+
+import java.util.Set;
+
+/**
+ * 能够识别借出的ftp客户端连接的是哪个服务器的连接池，按服务器限速和换服务器重试时使用
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname EndpointAware
+ * @date 2021/6/25 : 14:05
+ */
+public interface EndpointAware {
+
+    /**
+     * 借出的ftp客户端所属的服务器
+     *
+     * @param ftpClient 借出的ftp客户端
+     * @return 服务器名称（ip:port），不是该连接池借出的客户端时返回null
+     */
+    String endpointOf(RemoteFileClient ftpClient);
+
+    /**
+     * 借用不属于指定服务器的客户端，幂等的读操作换服务器重试时使用
+     *
+     * @param excluded 已经尝试过的服务器名称（ip:port）
+     * @throws java.util.NoSuchElementException 除指定服务器外没有其他服务器时
+     */
+    RemoteFileClient borrowObject(Set<String> excluded) throws Exception;
+}
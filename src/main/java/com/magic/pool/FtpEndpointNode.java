@@ -0,0 +1,82 @@
+package com.magic.pool;
+
+import com.magic.factory.RemoteFileClient;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单个ftp服务器及其连接池，同时记录健康状态，连续失败达到阈值后熔断一段时间
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname FtpEndpointNode
+ * @date 2021/6/2 : 9:42
+ */
+public class FtpEndpointNode {
+
+    private Logger log = LoggerFactory.getLogger(FtpEndpointNode.class);
+
+    //服务器名称，ip:port
+    private final String name;
+    //该服务器的连接池
+    private final GenericObjectPool<RemoteFileClient> pool;
+    //权重
+    private final int weight;
+    //连续失败多少次后熔断
+    private final int failureThreshold;
+    //熔断时长（毫秒）
+    private final long openMillis;
+
+    //连续失败次数
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    //熔断结束时间
+    private volatile long openUntil = 0;
+
+    public FtpEndpointNode(String name, GenericObjectPool<RemoteFileClient> pool, int weight, int failureThreshold, long openMillis) {
+        this.name = name;
+        this.pool = pool;
+        this.weight = weight;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * 是否可用，熔断时间结束后允许再次尝试，尝试成功即恢复
+     */
+    public boolean isAvailable() {
+        return System.currentTimeMillis() >= openUntil;
+    }
+
+    public void recordSuccess() {
+        if (consecutiveFailures.getAndSet(0) >= failureThreshold) {
+            log.info("ftp服务器[" + name + "]恢复可用");
+        }
+        openUntil = 0;
+    }
+
+    public void recordFailure() {
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            openUntil = System.currentTimeMillis() + openMillis;
+            log.warn("ftp服务器[" + name + "]连续失败" + consecutiveFailures.get() + "次，熔断" + openMillis + "毫秒");
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public GenericObjectPool<RemoteFileClient> getPool() {
+        return pool;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public int getNumActive() {
+        return pool.getNumActive();
+    }
+}
@@ -0,0 +1,81 @@
+package com.magic.pool;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 多ftp服务器的负载均衡策略，决定借用连接时依次尝试服务器的顺序
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname LoadBalancePolicy
+ * @date 2021/6/2 : 9:30
+ */
+public enum LoadBalancePolicy {
+
+    /**
+     * 轮询
+     */
+    ROUND_ROBIN {
+        @Override
+        public List<FtpEndpointNode> order(List<FtpEndpointNode> nodes, int sequence) {
+            return rotate(nodes, sequence);
+        }
+    },
+
+    /**
+     * 优先选择借出连接最少的服务器
+     */
+    LEAST_ACTIVE {
+        @Override
+        public List<FtpEndpointNode> order(List<FtpEndpointNode> nodes, int sequence) {
+            //先轮转再排序，借出数相同的服务器之间仍然轮询
+            List<FtpEndpointNode> ordered = rotate(nodes, sequence);
+            ordered.sort(Comparator.comparingInt(FtpEndpointNode::getNumActive));
+            return ordered;
+        }
+    },
+
+    /**
+     * 按权重随机选择第一个服务器，其余服务器按轮询顺序作为备选
+     */
+    WEIGHTED {
+        @Override
+        public List<FtpEndpointNode> order(List<FtpEndpointNode> nodes, int sequence) {
+            List<FtpEndpointNode> ordered = rotate(nodes, sequence);
+            int totalWeight = ordered.stream().mapToInt(FtpEndpointNode::getWeight).sum();
+            if (totalWeight <= 0) {
+                return ordered;
+            }
+            int random = ThreadLocalRandom.current().nextInt(totalWeight);
+            for (int i = 0; i < ordered.size(); i++) {
+                random -= ordered.get(i).getWeight();
+                if (random < 0) {
+                    ordered.add(0, ordered.remove(i));
+                    break;
+                }
+            }
+            return ordered;
+        }
+    };
+
+    /**
+     * 返回本次借用依次尝试的服务器
+     *
+     * @param nodes    可用的服务器
+     * @param sequence 借用序号
+     */
+    public abstract List<FtpEndpointNode> order(List<FtpEndpointNode> nodes, int sequence);
+
+    private static List<FtpEndpointNode> rotate(List<FtpEndpointNode> nodes, int sequence) {
+        int size = nodes.size();
+        List<FtpEndpointNode> ordered = new ArrayList<>(size);
+        int start = size == 0 ? 0 : Math.floorMod(sequence, size);
+        for (int i = 0; i < size; i++) {
+            ordered.add(nodes.get((start + i) % size));
+        }
+        return ordered;
+    }
+}
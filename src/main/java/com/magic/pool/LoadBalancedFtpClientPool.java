@@ -0,0 +1,197 @@
+package com.magic.pool;
+
+import com.magic.factory.RemoteFileClient;
+import org.apache.commons.pool2.ObjectPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * 多ftp服务器连接池，每个服务器一个连接池，借用时按负载均衡策略选择服务器，
+ * 借用失败或连接池耗尽时自动尝试下一个服务器，熔断中的服务器不参与选择
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname LoadBalancedFtpClientPool
+ * @date 2021/6/2 : 10:05
+ */
+public class LoadBalancedFtpClientPool implements ObjectPool<RemoteFileClient>, EndpointAware {
+
+    private Logger log = LoggerFactory.getLogger(LoadBalancedFtpClientPool.class);
+
+    private final List<FtpEndpointNode> nodes;
+
+    private final LoadBalancePolicy policy;
+
+    //借出的客户端 -> 所属服务器，归还时据此找到对应的连接池
+    private final Map<RemoteFileClient, FtpEndpointNode> borrowed = new ConcurrentHashMap<>();
+
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    public LoadBalancedFtpClientPool(List<FtpEndpointNode> nodes, LoadBalancePolicy policy) {
+        if (null == nodes || nodes.isEmpty()) {
+            throw new IllegalArgumentException("至少需要一个ftp服务器");
+        }
+        this.nodes = nodes;
+        this.policy = policy;
+    }
+
+    @Override
+    public RemoteFileClient borrowObject() throws Exception {
+        return borrowObject(Collections.emptySet());
+    }
+
+    /**
+     * 按负载均衡策略借用连接，先依次不等待地尝试各服务器，有空闲连接或还能新建连接的服务器立即借出；
+     * 所有服务器都已耗尽时才在第一个耗尽的服务器上按最大等待时间等待。
+     * 连接池耗尽只说明服务器繁忙，不计入失败，不会触发熔断
+     *
+     * @param excluded 不参与选择的服务器
+     */
+    @Override
+    public RemoteFileClient borrowObject(Set<String> excluded) throws Exception {
+        List<FtpEndpointNode> available = nodes.stream()
+                .filter(node -> !excluded.contains(node.getName()) && node.isAvailable())
+                .collect(Collectors.toList());
+        //全部熔断时仍然尝试所有服务器，避免整个服务不可用
+        if (available.isEmpty()) {
+            available = nodes.stream().filter(node -> !excluded.contains(node.getName())).collect(Collectors.toList());
+        }
+        if (available.isEmpty()) {
+            throw new NoSuchElementException("没有其他可用的ftp服务器");
+        }
+        List<FtpEndpointNode> candidates = policy.order(available, sequence.getAndIncrement());
+        Exception exception = null;
+        //连接池已耗尽的服务器
+        FtpEndpointNode exhausted = null;
+        for (FtpEndpointNode node : candidates) {
+            try {
+                return borrow(node, 0);
+            } catch (Exception e) {
+                if (isExhausted(e)) {
+                    exhausted = null == exhausted ? node : exhausted;
+                } else {
+                    log.warn("从ftp服务器[" + node.getName() + "]借用连接失败：" + e.getMessage());
+                    node.recordFailure();
+                }
+                exception = e;
+            }
+        }
+        if (null != exhausted) {
+            try {
+                return borrow(exhausted, exhausted.getPool().getMaxWaitMillis());
+            } catch (Exception e) {
+                if (!isExhausted(e)) {
+                    log.warn("从ftp服务器[" + exhausted.getName() + "]借用连接失败：" + e.getMessage());
+                    exhausted.recordFailure();
+                }
+                exception = e;
+            }
+        }
+        throw exception;
+    }
+
+    /**
+     * 从指定服务器借用连接
+     *
+     * @param node          服务器
+     * @param maxWaitMillis 连接池耗尽时的最大等待时间（毫秒），0表示不等待
+     */
+    private RemoteFileClient borrow(FtpEndpointNode node, long maxWaitMillis) throws Exception {
+        RemoteFileClient ftpClient = node.getPool().borrowObject(maxWaitMillis);
+        node.recordSuccess();
+        borrowed.put(ftpClient, node);
+        return ftpClient;
+    }
+
+    /**
+     * 连接池耗尽时commons-pool抛出NoSuchElementException，新建的连接验证失败时同样抛出该异常，按消息区分
+     */
+    private static boolean isExhausted(Exception e) {
+        return e instanceof NoSuchElementException && !String.valueOf(e.getMessage()).contains("validate");
+    }
+
+    @Override
+    public void returnObject(RemoteFileClient ftpClient) throws Exception {
+        FtpEndpointNode node = borrowed.remove(ftpClient);
+        if (null == node) {
+            throw new IllegalStateException("归还的ftp客户端不属于该连接池");
+        }
+        node.getPool().returnObject(ftpClient);
+    }
+
+    @Override
+    public void invalidateObject(RemoteFileClient ftpClient) throws Exception {
+        FtpEndpointNode node = borrowed.remove(ftpClient);
+        if (null == node) {
+            throw new IllegalStateException("作废的ftp客户端不属于该连接池");
+        }
+        //连接已断开说明服务器出了问题，主动作废但连接仍可用的情况不计入失败
+        if (!ftpClient.isConnected()) {
+            node.recordFailure();
+        }
+        node.getPool().invalidateObject(ftpClient);
+    }
+
+    @Override
+    public String endpointOf(RemoteFileClient ftpClient) {
+        FtpEndpointNode node = borrowed.get(ftpClient);
+        return null == node ? null : node.getName();
+    }
+
+    /**
+     * 按轮询顺序在各服务器之间分配预加载的连接
+     */
+    @Override
+    public void addObject() throws Exception {
+        nodes.get(Math.floorMod(sequence.getAndIncrement(), nodes.size())).getPool().addObject();
+    }
+
+    @Override
+    public int getNumIdle() {
+        return nodes.stream().mapToInt(node -> node.getPool().getNumIdle()).sum();
+    }
+
+    @Override
+    public int getNumActive() {
+        return nodes.stream().mapToInt(node -> node.getPool().getNumActive()).sum();
+    }
+
+    /**
+     * 所有服务器的最大连接数之和，有服务器不限制连接数时返回-1
+     */
+    public int getMaxTotal() {
+        int total = 0;
+        for (FtpEndpointNode node : nodes) {
+            if (node.getPool().getMaxTotal() < 0) {
+                return -1;
+            }
+            total += node.getPool().getMaxTotal();
+        }
+        return total;
+    }
+
+    @Override
+    public void clear() throws Exception {
+        for (FtpEndpointNode node : nodes) {
+            node.getPool().clear();
+        }
+    }
+
+    @Override
+    public void close() {
+        nodes.forEach(node -> node.getPool().close());
+    }
+
+    public List<FtpEndpointNode> getNodes() {
+        return nodes;
+    }
+}
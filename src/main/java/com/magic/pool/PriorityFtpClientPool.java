@@ -0,0 +1,332 @@
+package com.magic.pool;
+
+import com.magic.factory.RemoteFileClient;
+import com.magic.support.TransferContext;
+import com.magic.support.TransferPriority;
+import org.apache.commons.pool2.ObjectPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按优先级借用连接的连接池，借用许可数与被包装连接池的最大连接数一致，连接耗尽时等待的线程按当前传输上下文的优先级排队，
+ * 同一优先级内先来先得，归还连接时许可交给优先级最高的等待者，交互式请求因此不会排在批量任务之后
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname PriorityFtpClientPool
+ * @date 2021/6/25 : 14:20
+ */
+public class PriorityFtpClientPool implements ObjectPool<RemoteFileClient>, EndpointAware {
+
+    private Logger log = LoggerFactory.getLogger(PriorityFtpClientPool.class);
+
+    private final ObjectPool<RemoteFileClient> delegate;
+
+    //最大连接数，-1表示不限制，此时不排队
+    private final int maxTotal;
+    //借用的最大等待时间（毫秒），-1表示一直等待
+    private final long maxWaitMillis;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    //等待许可的线程，按优先级和到达顺序排列
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>(
+            Comparator.comparing((Waiter waiter) -> waiter.priority).thenComparingLong(waiter -> waiter.sequence));
+    //剩余许可数
+    private int permits;
+    //等待者的到达顺序
+    private long sequence = 0;
+
+    //借出的客户端 -> 借出时间，重复归还时不会重复释放许可
+    private final Map<RemoteFileClient, Long> borrowed = new ConcurrentHashMap<>();
+    //被看门狗回收后借用者尚未归还的客户端，借用者不再归还时随客户端一起被回收
+    private final Set<RemoteFileClient> reclaimed = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    //突发借用时在后台预建连接，为null时不预建
+    private BurstPrefiller prefiller;
+
+    public PriorityFtpClientPool(ObjectPool<RemoteFileClient> delegate, int maxTotal, long maxWaitMillis) {
+        this.delegate = delegate;
+        this.maxTotal = maxTotal;
+        this.maxWaitMillis = maxWaitMillis;
+        this.permits = maxTotal;
+    }
+
+    @Override
+    public RemoteFileClient borrowObject() throws Exception {
+        return borrowObject(Collections.emptySet());
+    }
+
+    /**
+     * 按优先级获取许可后借用连接，被包装的连接池能识别服务器时不从指定的服务器借用
+     *
+     * @param excluded 不参与选择的服务器
+     */
+    @Override
+    public RemoteFileClient borrowObject(Set<String> excluded) throws Exception {
+        if (maxTotal < 0) {
+            RemoteFileClient ftpClient = borrowFromDelegate(excluded);
+            borrowed.put(ftpClient, System.currentTimeMillis());
+            return prefill(ftpClient);
+        }
+        TransferPriority priority = TransferContext.current().getPriority();
+        if (!acquire(priority)) {
+            throw new NoSuchElementException("等待ftp连接超时，优先级：" + priority);
+        }
+        try {
+            RemoteFileClient ftpClient = borrowFromDelegate(excluded);
+            borrowed.put(ftpClient, System.currentTimeMillis());
+            return prefill(ftpClient);
+        } catch (Exception e) {
+            release();
+            throw e;
+        }
+    }
+
+    private RemoteFileClient borrowFromDelegate(Set<String> excluded) throws Exception {
+        if (!excluded.isEmpty() && delegate instanceof EndpointAware) {
+            return ((EndpointAware) delegate).borrowObject(excluded);
+        }
+        return delegate.borrowObject();
+    }
+
+    @Override
+    public void returnObject(RemoteFileClient ftpClient) throws Exception {
+        boolean tracked = null != borrowed.remove(ftpClient);
+        if (!tracked && reclaimed.remove(ftpClient)) {
+            //已被看门狗回收，连接已作废，许可已释放
+            return;
+        }
+        try {
+            delegate.returnObject(ftpClient);
+        } finally {
+            if (tracked) {
+                release();
+            }
+        }
+    }
+
+    @Override
+    public void invalidateObject(RemoteFileClient ftpClient) throws Exception {
+        boolean tracked = null != borrowed.remove(ftpClient);
+        if (!tracked && reclaimed.remove(ftpClient)) {
+            return;
+        }
+        try {
+            delegate.invalidateObject(ftpClient);
+        } finally {
+            if (tracked) {
+                release();
+            }
+        }
+    }
+
+    /**
+     * 回收借出后不再归还的客户端，作废连接并释放许可，借用者之后再归还时直接忽略
+     *
+     * @param ftpClient 借出的客户端
+     * @return 是否回收，客户端已归还时返回false
+     */
+    public boolean reclaim(RemoteFileClient ftpClient) {
+        if (!detach(ftpClient)) {
+            return false;
+        }
+        try {
+            delegate.invalidateObject(ftpClient);
+        } catch (Exception e) {
+            log.warn("回收ftp客户端失败：" + e.getMessage());
+        } finally {
+            release();
+        }
+        return true;
+    }
+
+    /**
+     * 被包装的连接池把借出的客户端作为废弃连接销毁后调用，释放许可，借用者之后再归还时直接忽略。
+     * 连接已被销毁，不再作废
+     *
+     * @param ftpClient 被销毁的客户端
+     */
+    public void abandoned(RemoteFileClient ftpClient) {
+        if (detach(ftpClient)) {
+            release();
+        }
+    }
+
+    /**
+     * 把借出的客户端登记为已回收
+     *
+     * @return 是否由本次调用移出，客户端已归还时返回false
+     */
+    private boolean detach(RemoteFileClient ftpClient) {
+        //先登记再移出，借用者同时归还时只有一方能移出
+        reclaimed.add(ftpClient);
+        if (null == borrowed.remove(ftpClient)) {
+            reclaimed.remove(ftpClient);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 借出的客户端及其借出时间
+     */
+    public Map<RemoteFileClient, Long> getBorrowed() {
+        return new HashMap<>(borrowed);
+    }
+
+    private RemoteFileClient prefill(RemoteFileClient ftpClient) {
+        if (null != prefiller) {
+            prefiller.onBorrow(delegate);
+        }
+        return ftpClient;
+    }
+
+    public void setPrefiller(BurstPrefiller prefiller) {
+        this.prefiller = prefiller;
+    }
+
+    /**
+     * 获取借用许可，没有剩余许可时按优先级排队等待
+     *
+     * @param priority 优先级
+     * @return 是否在等待时间内获取到许可
+     */
+    private boolean acquire(TransferPriority priority) throws InterruptedException {
+        lock.lock();
+        try {
+            if (waiters.isEmpty() && permits > 0) {
+                permits--;
+                return true;
+            }
+            Waiter waiter = new Waiter(priority, sequence++, lock.newCondition());
+            waiters.add(waiter);
+            long nanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+            try {
+                while (!waiter.granted) {
+                    if (maxWaitMillis < 0) {
+                        waiter.condition.await();
+                    } else if (nanos <= 0) {
+                        waiters.remove(waiter);
+                        return false;
+                    } else {
+                        nanos = waiter.condition.awaitNanos(nanos);
+                    }
+                }
+                return true;
+            } catch (InterruptedException e) {
+                //被中断前刚好获得了许可时交给下一个等待者
+                if (!waiters.remove(waiter) && waiter.granted) {
+                    grant();
+                }
+                throw e;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 释放借用许可，不限制连接数时没有许可
+     */
+    private void release() {
+        if (maxTotal < 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            grant();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 把一个许可交给优先级最高的等待者，没有等待者时归还到剩余许可，调用方必须持有锁
+     */
+    private void grant() {
+        Waiter waiter = waiters.poll();
+        if (null == waiter) {
+            permits++;
+            return;
+        }
+        waiter.granted = true;
+        waiter.condition.signal();
+    }
+
+    @Override
+    public String endpointOf(RemoteFileClient ftpClient) {
+        return delegate instanceof EndpointAware ? ((EndpointAware) delegate).endpointOf(ftpClient) : null;
+    }
+
+    @Override
+    public void addObject() throws Exception {
+        delegate.addObject();
+    }
+
+    @Override
+    public int getNumIdle() {
+        return delegate.getNumIdle();
+    }
+
+    @Override
+    public int getNumActive() {
+        return delegate.getNumActive();
+    }
+
+    /**
+     * 按优先级排队等待连接的线程数
+     */
+    public int getNumWaiters() {
+        lock.lock();
+        try {
+            return waiters.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    @Override
+    public void clear() throws Exception {
+        delegate.clear();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    /**
+     * 等待许可的线程
+     */
+    private static class Waiter {
+
+        private final TransferPriority priority;
+        private final long sequence;
+        private final Condition condition;
+        //是否已获得许可
+        private boolean granted = false;
+
+        private Waiter(TransferPriority priority, long sequence, Condition condition) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.condition = condition;
+        }
+    }
+}
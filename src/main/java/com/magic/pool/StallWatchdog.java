@@ -0,0 +1,110 @@
+package com.magic.pool;
+
+import com.magic.factory.ProgressAware;
+import com.magic.factory.RemoteFileClient;
+import com.magic.support.FtpMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 传输看门狗，定期检查所有借出的ftp客户端，按最后一次收到应答或读写数据的时间判断是否停滞，
+ * 持续有数据的长时间传输不会被误判。停滞的连接先关闭数据连接和控制连接，阻塞的借用者随即失败并按正常流程作废连接；
+ * 下次检查时仍未归还的连接说明借用者已不再使用，直接从连接池回收并释放许可
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname StallWatchdog
+ * @date 2021/7/8 : 10:40
+ */
+public class StallWatchdog implements Runnable {
+
+    private Logger log = LoggerFactory.getLogger(StallWatchdog.class);
+
+    private final PriorityFtpClientPool pool;
+
+    //没有进展超过该时间（毫秒）视为停滞
+    private final long stallTimeoutMillis;
+
+    private FtpMetrics metrics = FtpMetrics.NOOP;
+
+    //已中止连接但尚未归还的客户端 -> 服务器
+    private final Map<RemoteFileClient, String> aborted = new ConcurrentHashMap<>();
+
+    public StallWatchdog(PriorityFtpClientPool pool, long stallTimeoutMillis) {
+        this.pool = pool;
+        this.stallTimeoutMillis = stallTimeoutMillis;
+    }
+
+    public void setMetrics(FtpMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void run() {
+        //定时任务抛出异常后不会再执行
+        try {
+            long now = System.currentTimeMillis();
+            Map<RemoteFileClient, Long> borrowed = pool.getBorrowed();
+            aborted.keySet().retainAll(borrowed.keySet());
+            borrowed.forEach((ftpClient, borrowTime) -> check(ftpClient, borrowTime, now));
+        } catch (RuntimeException e) {
+            log.error("检查ftp传输停滞出错！", (Object) e.getStackTrace());
+        }
+    }
+
+    /**
+     * 检查一个借出的客户端
+     *
+     * @param ftpClient  ftp客户端
+     * @param borrowTime 借出时间
+     * @param now        当前时间
+     */
+    private void check(RemoteFileClient ftpClient, long borrowTime, long now) {
+        String server = aborted.get(ftpClient);
+        if (null != server) {
+            if (pool.reclaim(ftpClient)) {
+                aborted.remove(ftpClient);
+                metrics.transferStalled(server, "reclaim");
+                log.warn("ftp连接[" + server + "]中止后仍未归还，已从连接池回收");
+            }
+            return;
+        }
+        //借出前的进展不算，按借出时间和最后一次进展中较晚的计算
+        long lastProgress = borrowTime;
+        if (ftpClient instanceof ProgressAware) {
+            lastProgress = Math.max(borrowTime, ((ProgressAware) ftpClient).getLastUsed());
+        }
+        if (now - lastProgress < stallTimeoutMillis) {
+            return;
+        }
+        server = serverOf(ftpClient);
+        aborted.put(ftpClient, server);
+        metrics.transferStalled(server, "abort");
+        log.warn("ftp连接[" + server + "]已" + (now - lastProgress) + "毫秒没有进展，中止连接");
+        if (ftpClient instanceof ProgressAware) {
+            ((ProgressAware) ftpClient).abortConnection();
+        }
+    }
+
+    /**
+     * 客户端连接的服务器，单服务器时连接池不记录服务器，按客户端连接的地址获取
+     */
+    private String serverOf(RemoteFileClient ftpClient) {
+        String endpoint = pool.endpointOf(ftpClient);
+        if (null != endpoint) {
+            return endpoint;
+        }
+        String server = ftpClient.getServer();
+        return null == server ? "unknown" : server;
+    }
+
+    /**
+     * 已中止连接但尚未归还的客户端数
+     */
+    public int getNumAborted() {
+        return aborted.size();
+    }
+}
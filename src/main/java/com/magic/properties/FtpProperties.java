@@ -1,10 +1,21 @@
 package com.magic.properties;
 
+import com.magic.pool.LoadBalancePolicy;
+import com.magic.support.ChecksumAlgorithm;
+import com.magic.support.DataConnectionMode;
+import com.magic.support.FtpTransport;
+import com.magic.support.TransferCompression;
+import com.magic.support.ValidationStrategy;
 import lombok.Data;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * @author magic_lz
  * @version 1.0
@@ -21,9 +32,251 @@ public class FtpProperties {
     private String port;
     private String username;
     private String password;
+    //传输协议，多服务器时作为各服务器的默认协议
+    private FtpTransport transport = FtpTransport.FTP;
     private Integer initialSize = 0;
     private String encoding = "UTF-8";
+    //按行读取文件内容时使用的编码
+    private String fileEncoding = "UTF-8";
+    //按行读取文件内容时的缓冲区大小
+    private Integer readBufferSize = 64 * 1024;
     private Integer bufferSize = 4096;
+    //传输缓冲区池容量
+    private Integer bufferPoolSize = 16;
+    //默认的传输压缩方式
+    private TransferCompression compression = TransferCompression.NONE;
+    //传输校验的摘要算法，传输过程中计算，服务器支持HASH或XCRC/XMD5时与服务器的结果比较
+    private ChecksumAlgorithm checksumAlgorithm = ChecksumAlgorithm.NONE;
+    //传输完成后是否通过SIZE校验远程文件大小
+    private Boolean verifySize = true;
+    //校验不一致时的重试次数，只对本地文件的上传和下载生效
+    private Integer checksumRetryCount = 2;
     private Integer retryCount = 3;
+    //传输线程数，分段下载等并行传输使用
+    private Integer transferThreads = 8;
+    //批量上传的最大并行连接数，不应超过连接池的最大连接数
+    private Integer batchParallelism = 4;
+    //异步传输线程数，为空时与连接池最大连接数一致
+    private Integer asyncThreads;
+    //异步传输排队容量，执行中和排队中的任务总数不超过连接池最大连接数加上该值
+    private Integer asyncQueueCapacity = 64;
+    //异步传输是否使用虚拟线程，运行时不支持时使用平台线程
+    private Boolean asyncVirtualThreads = false;
+    //目录同步的工作线程数
+    private Integer syncParallelism = 4;
+    //分段下载的最大分段数
+    private Integer segmentCount = 4;
+    //分段下载的最小分段大小（字节），文件小于两个分段时不分段
+    private Long minSegmentSize = 8L * 1024 * 1024;
+    //断点续传检查点目录
+    private String checkpointDir = System.getProperty("java.io.tmpdir") + "/ftp-checkpoint";
+    //断点续传重试的初始等待时间（毫秒），每次重试翻倍
+    private Long retryBackoffMillis = 1000L;
+    //断点续传重试的最大等待时间（毫秒）
+    private Long maxRetryBackoffMillis = 30000L;
+    //远程目录缓存的最大数量，小于等于0时不缓存
+    private Integer directoryCacheSize = 1024;
+    //远程目录缓存的有效期（毫秒）
+    private Long directoryCacheTtlMillis = 5L * 60 * 1000;
+    //流式获取文件列表时每页解析的条目数，只限制同时存在的条目对象数，原始列表仍会整体读入内存
+    private Integer listPageSize = 1000;
+    //批量删除等操作连续发送命令时最多等待应答的命令数，小于等于1时逐条发送
+    private Integer pipelineWindow = 32;
+    //多服务器配置，不为空时忽略ip和port，每个服务器一个连接池
+    private List<Endpoint> endpoints = new ArrayList<>();
+    //多服务器负载均衡配置
+    private LoadBalance loadBalance = new LoadBalance();
+    //连接池配置，多服务器时每个服务器的连接池都使用该配置
+    private Pool pool = new Pool();
+    //连接验证配置
+    private Validation validation = new Validation();
+    //数据连接配置
+    private DataConnection dataConnection = new DataConnection();
+    //超时配置
+    private Timeout timeout = new Timeout();
+    //文件缓存配置
+    private FileCache fileCache = new FileCache();
+    //传输任务队列配置
+    private JobQueue jobQueue = new JobQueue();
+    //传输限速配置
+    private Bandwidth bandwidth = new Bandwidth();
+    //ftps配置
+    private Ftps ftps = new Ftps();
+    //sftp配置
+    private Sftp sftp = new Sftp();
+
+    @Data
+    public static class Endpoint {
+        private String ip;
+        private String port;
+        //用户名，为空时使用ftp.username
+        private String username;
+        //密码，为空时使用ftp.password
+        private String password;
+        //权重，WEIGHTED策略使用
+        private Integer weight = 1;
+        //传输协议，为空时使用ftp.transport，各服务器可以使用不同的协议
+        private FtpTransport transport;
+    }
+
+    @Data
+    public static class LoadBalance {
+        //负载均衡策略
+        private LoadBalancePolicy policy = LoadBalancePolicy.ROUND_ROBIN;
+        //连续失败多少次后熔断
+        private Integer failureThreshold = 3;
+        //熔断时长（毫秒）
+        private Long openMillis = 30000L;
+    }
+
+    @Data
+    public static class Pool {
+        //最大连接数，-1表示不限制
+        private Integer maxTotal = 8;
+        //最大空闲连接数
+        private Integer maxIdle = 8;
+        //最小空闲连接数，启动时并行预热到该数量
+        private Integer minIdle = 0;
+        //连接耗尽时借用的最大等待时间（毫秒），-1表示一直等待
+        private Long maxWaitMillis = 30000L;
+        //连接耗尽时是否等待，为false时直接失败
+        private Boolean blockWhenExhausted = true;
+        //是否后进先出，为false时先进先出
+        private Boolean lifo = true;
+        //等待的线程是否按先来后到的顺序获取连接
+        private Boolean fairness = false;
+        //连接空闲超过该时间（毫秒）后可被回收
+        private Long minEvictableIdleTimeMillis = 6000L;
+        //连接空闲超过该时间（毫秒）且空闲数大于minIdle时可被回收
+        private Long softMinEvictableIdleTimeMillis = 50000L;
+        //空闲检测的间隔（毫秒），小于等于0时不检测
+        private Long timeBetweenEvictionRunsMillis = 30000L;
+        //每次空闲检测的连接数
+        private Integer numTestsPerEvictionRun = 3;
+        //预热连接的并行线程数
+        private Integer warmUpThreads = 4;
+        //借走最后一个空闲连接时在后台预建的连接数，0表示不预建
+        private Integer burstPrefill = 2;
+        //借出的连接超过该时间（毫秒）没有收到应答或读写数据时视为停滞，中止连接并回收，小于等于0时不检测
+        private Long stallTimeoutMillis = 120000L;
+        //停滞检测的间隔（毫秒）
+        private Long stallCheckIntervalMillis = 5000L;
+        //借出的连接超过该时间（秒）没有进展时由连接池作为废弃连接回收，应大于停滞时间，小于等于0时不回收
+        private Integer removeAbandonedTimeoutSeconds = 600;
+        //回收废弃连接时是否打印借用时的调用栈
+        private Boolean logAbandoned = false;
+    }
+
+    @Data
+    public static class Validation {
+        //验证使用的命令
+        private ValidationStrategy strategy = ValidationStrategy.NOOP;
+        //连接在该时间（毫秒）内归还过则认为可用，跳过验证
+        private Long skipIfUsedWithinMillis = 5000L;
+        //只在空闲检测时验证，借用和归还时都不验证
+        private Boolean idleOnly = false;
+    }
+
+    @Data
+    public static class DataConnection {
+        //数据连接方式
+        private DataConnectionMode mode = DataConnectionMode.PASSIVE;
+        //被动模式下服务器返回内网地址而控制连接是外网地址时，改为连接控制连接的地址
+        private Boolean passiveNatWorkaround = true;
+        //被动模式下固定连接的地址，配置后忽略服务器在PASV应答中返回的地址
+        private String passiveHost;
+        //主动模式下通过PORT/EPRT告知服务器的地址，客户端在NAT后面时配置为外网地址
+        private String activeExternalHost;
+        //主动模式监听的最小端口，与最大端口都为0时由系统分配
+        private Integer activeMinPort = 0;
+        //主动模式监听的最大端口
+        private Integer activeMaxPort = 0;
+    }
+
+    @Data
+    public static class Timeout {
+        //建立控制连接的超时时间（毫秒）
+        private Integer connectTimeoutMillis = 10000;
+        //控制连接等待应答的超时时间（毫秒），0表示一直等待
+        private Integer controlTimeoutMillis = 60000;
+        //数据连接读写的超时时间（毫秒），传输停滞超过该时间时失败并释放连接，0表示一直等待
+        private Long dataTimeoutMillis = 60000L;
+        //传输过程中在控制连接上发送NOOP的间隔（毫秒），避免控制连接被防火墙或NAT断开，0表示不发送
+        private Long controlKeepAliveMillis = 300000L;
+        //等待NOOP应答的超时时间（毫秒）
+        private Long controlKeepAliveReplyTimeoutMillis = 1000L;
+    }
+
+    @Data
+    public static class FileCache {
+        //是否开启文件缓存
+        private Boolean enabled = false;
+        //缓存目录，启动时清理目录中上次运行留下的缓存文件
+        private String dir = System.getProperty("java.io.tmpdir") + "/ftp-cache";
+        //缓存总大小上限（字节）
+        private Long maxBytes = 1024L * 1024 * 1024;
+        //缓存文件数上限
+        private Integer maxFiles = 1000;
+    }
+
+    @Data
+    public static class JobQueue {
+        //任务日志和待上传数据的目录，重启后从该目录恢复未完成的任务
+        private String dir = System.getProperty("java.io.tmpdir") + "/ftp-jobs";
+        //工作线程数，不配置时与连接池最大连接数一致
+        private Integer workers;
+        //排队和执行中的任务数上限，超出时拒绝提交
+        private Integer maxPending = 10000;
+        //每条日志和每份数据写入后是否强制刷盘，关闭后吞吐更高，但机器掉电时可能丢失最近提交的任务
+        private Boolean fsync = true;
+        //追加多少条结束记录后重写日志
+        private Integer compactThreshold = 1000;
+        //计算耗时百分位数的样本数
+        private Integer latencySamples = 1024;
+    }
+
+    @Data
+    public static class Bandwidth {
+        //全局限速（字节/秒），小于等于0时不限速
+        private Long globalBytesPerSecond = 0L;
+        //每个服务器的默认限速（字节/秒）
+        private Long serverBytesPerSecond = 0L;
+        //未单独配置的租户各自的默认限速（字节/秒）
+        private Long tenantBytesPerSecond = 0L;
+        //未单独配置的租户的令牌桶数量上限，超过时淘汰最久未使用的
+        private Integer maxDefaultTenants = 1024;
+        //单独配置的服务器限速，key为ip:port
+        private Map<String, Long> servers = new HashMap<>();
+        //单独配置的租户限速
+        private Map<String, Long> tenants = new HashMap<>();
+    }
+
+    @Data
+    public static class Ftps {
+        //TLS协议版本，TLSv1.3的会话恢复方式不同，复用会话时建议使用TLSv1.2
+        private String protocol = "TLSv1.2";
+        //数据连接是否加密（PROT P），为false时只加密控制连接（PROT C）
+        private Boolean protectData = true;
+        //数据连接是否复用控制连接的TLS会话，避免每次传输完整握手
+        private Boolean sessionReuse = true;
+        //是否信任所有服务器证书，只用于测试环境
+        private Boolean trustAll = false;
+    }
+
+    @Data
+    public static class Sftp {
+        //每个通道同时发出的读写请求数，越大越能抵消网络延迟
+        private Integer bulkRequests = 64;
+        //连接和打开通道的超时时间（毫秒）
+        private Integer connectTimeoutMillis = 10000;
+        //known_hosts文件，按其中的公钥校验服务器，文件不存在时无法建立连接
+        private String knownHosts = "~/.ssh/known_hosts";
+        //是否信任所有服务器公钥，不校验known_hosts，只用于测试环境
+        private Boolean trustAll = false;
+        //私钥文件，为空时使用密码登录
+        private String privateKey;
+        //私钥密码
+        private String passphrase;
+    }
 
 }
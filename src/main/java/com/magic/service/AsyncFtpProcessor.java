@@ -0,0 +1,28 @@
+package com.magic.service;
+
+import com.magic.support.TransferResult;
+
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 异步ftp处理器，传输在独立的线程池中执行，不占用调用线程
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname AsyncFtpProcessor
+ * @date 2021/5/20 : 13:47
+ */
+public interface AsyncFtpProcessor {
+
+    CompletableFuture<TransferResult> uploadFile(String path, String fileName, String originFileName);
+
+    CompletableFuture<TransferResult> uploadFile(String path, String fileName, InputStream inputStream);
+
+    CompletableFuture<TransferResult> downloadFile(String path, String fileName, String localPath);
+
+    CompletableFuture<TransferResult> downloadFile(String path, String fileName, WritableByteChannel channel);
+
+    CompletableFuture<Boolean> deleteFile(String path, String fileName);
+}
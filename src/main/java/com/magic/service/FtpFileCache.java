@@ -0,0 +1,27 @@
+package com.magic.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * ftp文件的本地磁盘缓存，远程文件大小和修改时间没有变化时直接使用本地副本，不再重复下载
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname FtpFileCache
+ * @date 2021/6/18 : 10:05
+ */
+public interface FtpFileCache {
+
+    boolean downloadFile(String path, String fileName, String localPath);
+
+    InputStream retrieveFileStream(String path, String fileName) throws IOException;
+
+    void invalidate(String path, String fileName);
+
+    void clear();
+
+    int size();
+
+    long getUsedBytes();
+}
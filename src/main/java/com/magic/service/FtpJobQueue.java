@@ -0,0 +1,46 @@
+package com.magic.service;
+
+import com.magic.support.FtpJob;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * 持久化的传输任务队列，提交时数据先保存到本地磁盘并记录日志，立即返回任务id，
+ * 由后台工作线程按优先级上传，进程重启后未完成的任务重新执行
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname FtpJobQueue
+ * @date 2021/7/12 : 9:20
+ */
+public interface FtpJobQueue {
+
+    /**
+     * 提交上传任务，按当前线程传输上下文的租户和优先级执行
+     *
+     * @param path        ftp服务器保存地址
+     * @param fileName    上传到ftp的文件名
+     * @param inputStream 文件流，保存到本地后关闭
+     * @return 任务id
+     */
+    String submitUpload(String path, String fileName, InputStream inputStream) throws IOException;
+
+    /**
+     * 查询任务
+     *
+     * @param id 任务id
+     * @return 任务，不存在或已结束较久时返回null
+     */
+    FtpJob getJob(String id);
+
+    int getQueued();
+
+    int getRunning();
+
+    /**
+     * 队列状态，包括排队数、执行中的任务数、各状态的任务数和耗时的百分位数
+     */
+    Map<String, Object> snapshot();
+}
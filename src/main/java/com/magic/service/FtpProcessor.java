@@ -1,10 +1,19 @@
 package com.magic.service;
 
-import org.apache.commons.net.ftp.FTPClient;
+import com.magic.support.RemoteFile;
+import com.magic.support.RemoteFileStat;
+import com.magic.support.TransferCompression;
+import com.magic.support.TransferResult;
+import com.magic.support.UploadResult;
+import com.magic.support.UploadTask;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * @author magic_lz
@@ -18,15 +27,51 @@ public interface FtpProcessor {
 
     boolean uploadFile(String path, String fileName, InputStream inputStream);
 
+    TransferResult uploadFileWithResult(String path, String fileName, InputStream inputStream);
+
+    TransferResult uploadFileWithResult(String path, String fileName, InputStream inputStream, TransferCompression compression);
+
+    List<UploadResult> uploadAll(Collection<UploadTask> tasks);
+
+    boolean uploadFileResumable(String path, String fileName, String originFileName);
+
     boolean downloadFile(String path, String fileName, String localPath);
 
+    boolean downloadFileResumable(String path, String fileName, String localPath);
+
+    boolean downloadFile(String path, String fileName, WritableByteChannel channel);
+
+    TransferResult downloadFileWithResult(String path, String fileName, WritableByteChannel channel);
+
+    TransferResult downloadFileWithResult(String path, String fileName, WritableByteChannel channel, TransferCompression compression);
+
+    boolean downloadFileSegmented(String path, String fileName, String localPath);
+
+    RemoteFileStat statFile(String path, String fileName) throws IOException;
+
+    InputStream retrieveFileStream(String path, String fileName) throws IOException;
+
     boolean deleteFile(String path, String fileName);
 
-    boolean createDirectory(String remote, FTPClient ftpClient) throws IOException;
+    int deleteFiles(String path, Collection<String> fileNames);
+
+    boolean deleteDirectory(String remote);
+
+    boolean rename(String from, String to);
+
+    boolean moveFile(String path, String fileName, String targetPath);
 
-    boolean existFile(String path, FTPClient ftpClient) throws IOException;
+    boolean createDirectory(String remote) throws IOException;
 
-    boolean makeDirectory(String directory, FTPClient ftpClient);
+    boolean existFile(String path) throws IOException;
+
+    boolean makeDirectory(String directory);
 
     List<String> retrieveFileNames(String remotePath) throws IOException;
+
+    Stream<RemoteFile> listFiles(String remotePath) throws IOException;
+
+    Stream<String> lines(String remoteFilePath) throws IOException;
+
+    long readLines(String remoteFilePath, int batchSize, Consumer<List<String>> consumer) throws IOException;
 }
@@ -0,0 +1,20 @@
+package com.magic.service;
+
+import com.magic.support.SyncReport;
+
+import java.io.IOException;
+
+/**
+ * 目录同步，比较本地和远程目录树中文件的大小和修改时间，只传输有变化的文件
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname FtpSynchronizer
+ * @date 2021/6/9 : 14:50
+ */
+public interface FtpSynchronizer {
+
+    SyncReport upload(String localRoot, String remoteRoot, boolean dryRun) throws IOException;
+
+    SyncReport download(String remoteRoot, String localRoot, boolean dryRun) throws IOException;
+}
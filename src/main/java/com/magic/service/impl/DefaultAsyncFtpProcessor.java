@@ -0,0 +1,119 @@
+package com.magic.service.impl;
+
+import com.magic.service.AsyncFtpProcessor;
+import com.magic.service.FtpProcessor;
+import com.magic.support.TransferContext;
+import com.magic.support.TransferResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * 默认的异步ftp处理器，委托同步处理器在传输线程池中执行，
+ * 同时执行和排队的任务总数受许可数限制，超出时直接拒绝，避免任务无限堆积
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname DefaultAsyncFtpProcessor
+ * @date 2021/5/20 : 13:52
+ */
+public class DefaultAsyncFtpProcessor implements AsyncFtpProcessor {
+
+    private Logger log = LoggerFactory.getLogger(DefaultAsyncFtpProcessor.class);
+
+    private final FtpProcessor ftpProcessor;
+
+    private final Executor executor;
+
+    //执行中和排队中的任务许可
+    private final Semaphore permits;
+
+    /**
+     * @param ftpProcessor 同步ftp处理器
+     * @param executor     传输线程池
+     * @param maxPending   执行中和排队中的任务总数上限，一般为连接池最大连接数加上排队容量
+     */
+    public DefaultAsyncFtpProcessor(FtpProcessor ftpProcessor, Executor executor, int maxPending) {
+        this.ftpProcessor = ftpProcessor;
+        this.executor = executor;
+        this.permits = new Semaphore(maxPending);
+    }
+
+    @Override
+    public CompletableFuture<TransferResult> uploadFile(String path, String fileName, String originFileName) {
+        return submit(() -> {
+            InputStream inputStream;
+            try {
+                inputStream = new FileInputStream(originFileName);
+            } catch (FileNotFoundException e) {
+                return TransferResult.failure(e.getMessage());
+            }
+            return ftpProcessor.uploadFileWithResult(path, fileName, inputStream);
+        });
+    }
+
+    @Override
+    public CompletableFuture<TransferResult> uploadFile(String path, String fileName, InputStream inputStream) {
+        return submit(() -> ftpProcessor.uploadFileWithResult(path, fileName, inputStream));
+    }
+
+    @Override
+    public CompletableFuture<TransferResult> downloadFile(String path, String fileName, String localPath) {
+        return submit(() -> {
+            try (FileChannel channel = new FileOutputStream(localPath + "/" + fileName).getChannel()) {
+                return ftpProcessor.downloadFileWithResult(path, fileName, channel);
+            } catch (IOException e) {
+                log.error("下载文件出错！", (Object) e.getStackTrace());
+                return TransferResult.failure(e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<TransferResult> downloadFile(String path, String fileName, WritableByteChannel channel) {
+        return submit(() -> ftpProcessor.downloadFileWithResult(path, fileName, channel));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteFile(String path, String fileName) {
+        return submit(() -> ftpProcessor.deleteFile(path, fileName));
+    }
+
+    /**
+     * 提交任务，没有可用许可时返回异常结束的future，任务在调用方的传输上下文中执行
+     *
+     * @param task 任务
+     */
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        if (!permits.tryAcquire()) {
+            return rejected();
+        }
+        TransferContext context = TransferContext.current();
+        try {
+            CompletableFuture<T> future = CompletableFuture.supplyAsync(() -> context.call(task), executor);
+            future.whenComplete((result, e) -> permits.release());
+            return future;
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            return rejected();
+        }
+    }
+
+    private <T> CompletableFuture<T> rejected() {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(new RejectedExecutionException("等待中的ftp传输任务过多"));
+        return future;
+    }
+}
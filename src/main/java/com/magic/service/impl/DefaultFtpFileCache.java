@@ -0,0 +1,340 @@
+package com.magic.service.impl;
+
+import com.magic.service.FtpFileCache;
+import com.magic.service.FtpProcessor;
+import com.magic.support.FtpMetrics;
+import com.magic.support.RemoteFileStat;
+import com.magic.support.TransferCheckpointStore;
+import com.magic.support.TransferResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 默认的ftp文件磁盘缓存，按最近最少使用淘汰，缓存总大小和文件数都有上限。
+ * 每次读取都通过SIZE和MDTM确认远程文件没有变化，同一个文件的并发请求只触发一次下载。
+ * 每次下载的缓存文件名称都不同，命中时在锁内打开文件，之后被淘汰删除也不影响已经打开的读取
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname DefaultFtpFileCache
+ * @date 2021/6/18 : 10:30
+ */
+public class DefaultFtpFileCache implements FtpFileCache {
+
+    private Logger log = LoggerFactory.getLogger(DefaultFtpFileCache.class);
+
+    private static final String CACHE_SUFFIX = ".cache";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final FtpProcessor ftpProcessor;
+
+    //缓存目录
+    private final Path directory;
+    //缓存总大小上限（字节）
+    private final long maxBytes;
+    //缓存文件数上限
+    private final int maxFiles;
+
+    private FtpMetrics metrics = FtpMetrics.NOOP;
+
+    //缓存key -> 缓存条目，按访问顺序排列，最久未访问的在最前面
+    private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    //缓存文件总大小，由entries的锁保护
+    private long usedBytes = 0;
+    //下载中的文件，同一个文件的并发请求等待同一次下载
+    private final Map<String, CompletableFuture<Void>> loading = new ConcurrentHashMap<>();
+
+    public DefaultFtpFileCache(FtpProcessor ftpProcessor, String directory, long maxBytes, int maxFiles) throws IOException {
+        this.ftpProcessor = ftpProcessor;
+        this.directory = Paths.get(directory);
+        this.maxBytes = maxBytes;
+        this.maxFiles = maxFiles;
+        Files.createDirectories(this.directory);
+        //索引只保存在内存中，上次运行留下的缓存文件无法确认对应的远程文件，直接清理
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory, "*{" + CACHE_SUFFIX + "," + TEMP_SUFFIX + "}")) {
+            for (Path file : stream) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    public void setMetrics(FtpMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * 通过缓存下载文件
+     *
+     * @param path      ftp服务器文件路径
+     * @param fileName  文件名称
+     * @param localPath 下载后的路径
+     */
+    @Override
+    public boolean downloadFile(String path, String fileName, String localPath) {
+        try (InputStream in = retrieveFileStream(path, fileName)) {
+            Files.copy(in, Paths.get(localPath, fileName), StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (IOException e) {
+            log.error("通过缓存下载文件出错！", (Object) e.getStackTrace());
+            return false;
+        }
+    }
+
+    /**
+     * 通过缓存获取文件的输入流，调用方必须关闭该流
+     *
+     * @param path     ftp服务器文件路径
+     * @param fileName 文件名称
+     */
+    @Override
+    public InputStream retrieveFileStream(String path, String fileName) throws IOException {
+        return Channels.newInputStream(open(path, fileName));
+    }
+
+    /**
+     * 使文件的缓存失效，远程文件被覆盖或删除时调用
+     *
+     * @param path     ftp服务器文件路径
+     * @param fileName 文件名称
+     */
+    @Override
+    public void invalidate(String path, String fileName) {
+        CacheEntry entry;
+        synchronized (entries) {
+            entry = entries.remove(TransferCheckpointStore.key(path, fileName));
+            if (null != entry) {
+                usedBytes -= entry.length;
+            }
+        }
+        if (null != entry) {
+            deleteQuietly(entry.file);
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    @Override
+    public void clear() {
+        List<CacheEntry> removed;
+        synchronized (entries) {
+            removed = new ArrayList<>(entries.values());
+            entries.clear();
+            usedBytes = 0;
+        }
+        removed.forEach(entry -> deleteQuietly(entry.file));
+    }
+
+    @Override
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public long getUsedBytes() {
+        synchronized (entries) {
+            return usedBytes;
+        }
+    }
+
+    /**
+     * 打开文件的本地副本，远程文件没有变化时直接命中，否则下载到缓存目录
+     *
+     * @param path     ftp服务器文件路径
+     * @param fileName 文件名称
+     */
+    private FileChannel open(String path, String fileName) throws IOException {
+        String key = TransferCheckpointStore.key(path, fileName);
+        RemoteFileStat stat = ftpProcessor.statFile(path, fileName);
+        if (null == stat) {
+            throw new FileNotFoundException("ftp文件[" + path + "/" + fileName + "]不存在");
+        }
+        while (true) {
+            FileChannel cached = lookup(key, stat);
+            if (null != cached) {
+                metrics.cacheHit();
+                return cached;
+            }
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            CompletableFuture<Void> running = loading.putIfAbsent(key, future);
+            if (null != running) {
+                //其他线程正在下载同一个文件，等待其完成后再查找，期间缓存文件被淘汰时重新下载
+                metrics.cacheCoalesced();
+                await(running);
+                continue;
+            }
+            try {
+                //占到下载权之前可能刚有其他线程完成下载，再检查一次
+                cached = lookup(key, stat);
+                if (null != cached) {
+                    metrics.cacheHit();
+                } else {
+                    metrics.cacheMiss();
+                    cached = load(key, path, fileName, stat);
+                }
+                future.complete(null);
+                return cached;
+            } catch (IOException | RuntimeException e) {
+                future.completeExceptionally(e);
+                throw e;
+            } finally {
+                loading.remove(key, future);
+            }
+        }
+    }
+
+    /**
+     * 查找与远程文件状态一致的缓存文件并在锁内打开，条目移出之后才会删除文件，打开后不会再被删除影响
+     *
+     * @param key  缓存key
+     * @param stat 远程文件状态
+     * @return 打开的缓存文件，没有可用的缓存时返回null
+     */
+    private FileChannel lookup(String key, RemoteFileStat stat) throws IOException {
+        synchronized (entries) {
+            CacheEntry entry = entries.get(key);
+            if (null == entry || !entry.stat.isSameAs(stat)) {
+                return null;
+            }
+            try {
+                return FileChannel.open(entry.file, StandardOpenOption.READ);
+            } catch (NoSuchFileException e) {
+                //缓存文件被外部删除，丢弃该条目
+                entries.remove(key);
+                usedBytes -= entry.length;
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 下载远程文件到缓存目录，先写入临时文件，完成后改名为新的缓存文件，并在加入缓存之前打开，
+     * 加入后即使马上被淘汰也能读取
+     *
+     * @param key      缓存key
+     * @param path     ftp服务器文件路径
+     * @param fileName 文件名称
+     * @param stat     下载前获取的远程文件状态
+     */
+    private FileChannel load(String key, String path, String fileName, RemoteFileStat stat) throws IOException {
+        Path temp = Files.createTempFile(directory, key, TEMP_SUFFIX);
+        try {
+            TransferResult result;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                result = ftpProcessor.downloadFileWithResult(path, fileName, channel);
+            }
+            if (!result.isSuccess()) {
+                throw new IOException("下载ftp文件[" + path + "/" + fileName + "]失败：" + result.getMessage());
+            }
+            //每次下载使用不同的缓存文件，删除被替换或淘汰的旧文件时不会删除新下载的文件
+            String name = temp.getFileName().toString();
+            Path file = directory.resolve(name.substring(0, name.length() - TEMP_SUFFIX.length()) + CACHE_SUFFIX);
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+            store(key, new CacheEntry(file, stat, channel.size()));
+            return channel;
+        } finally {
+            deleteQuietly(temp);
+        }
+    }
+
+    /**
+     * 记录缓存条目并删除被替换的旧文件，超过总大小或文件数上限时淘汰最久未访问的条目，刚加入的条目不会被淘汰
+     *
+     * @param key   缓存key
+     * @param entry 缓存条目
+     */
+    private void store(String key, CacheEntry entry) {
+        List<CacheEntry> evicted = new ArrayList<>();
+        CacheEntry previous;
+        synchronized (entries) {
+            previous = entries.put(key, entry);
+            if (null != previous) {
+                usedBytes -= previous.length;
+            }
+            usedBytes += entry.length;
+            Iterator<Map.Entry<String, CacheEntry>> iterator = entries.entrySet().iterator();
+            while ((usedBytes > maxBytes || entries.size() > maxFiles) && entries.size() > 1) {
+                CacheEntry eldest = iterator.next().getValue();
+                iterator.remove();
+                usedBytes -= eldest.length;
+                evicted.add(eldest);
+            }
+        }
+        if (null != previous) {
+            deleteQuietly(previous.file);
+        }
+        for (CacheEntry eldest : evicted) {
+            deleteQuietly(eldest.file);
+            metrics.cacheEvicted();
+        }
+        if (entry.length > maxBytes) {
+            log.warn("缓存文件[" + entry.file + "]大小超过缓存上限，只保留该文件");
+        }
+    }
+
+    private void await(CompletableFuture<Void> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("等待缓存下载时被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("缓存下载失败", cause);
+        }
+    }
+
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("删除缓存文件[" + file + "]失败");
+        }
+    }
+
+    /**
+     * 缓存条目
+     */
+    private static class CacheEntry {
+
+        //缓存文件
+        private final Path file;
+        //下载时的远程文件状态
+        private final RemoteFileStat stat;
+        //缓存文件大小
+        private final long length;
+
+        private CacheEntry(Path file, RemoteFileStat stat, long length) {
+            this.file = file;
+            this.stat = stat;
+            this.length = length;
+        }
+    }
+}
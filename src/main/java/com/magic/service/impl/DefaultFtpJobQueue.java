@@ -0,0 +1,332 @@
+package com.magic.service.impl;
+
+import com.magic.service.FtpJobQueue;
+import com.magic.service.FtpProcessor;
+import com.magic.support.FtpJob;
+import com.magic.support.FtpJobJournal;
+import com.magic.support.FtpJobState;
+import com.magic.support.FtpMetrics;
+import com.magic.support.LatencyWindow;
+import com.magic.support.TransferContext;
+import com.magic.support.TransferPriority;
+import com.magic.support.TransferResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 默认的持久化传输任务队列。提交时先把数据保存到日志目录、追加提交记录，再放入内存中的优先级队列；
+ * 任务结束后追加结束记录并删除数据。启动时按日志恢复未结束的任务，执行到一半的任务从头重新上传。
+ * 工作线程数默认与连接池最大连接数一致，排队的任务不占用连接
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname DefaultFtpJobQueue
+ * @date 2021/7/12 : 11:30
+ */
+public class DefaultFtpJobQueue implements FtpJobQueue, Closeable {
+
+    private Logger log = LoggerFactory.getLogger(DefaultFtpJobQueue.class);
+
+    //保留的已结束任务数，超出后最早结束的任务不再能查询
+    private static final int FINISHED_RETAINED = 1024;
+    //关闭时等待执行中的任务结束的时间（秒）
+    private static final int SHUTDOWN_WAIT_SECONDS = 10;
+
+    private final FtpProcessor ftpProcessor;
+
+    private final FtpJobJournal journal;
+
+    //工作线程池，队列按优先级和提交顺序排列
+    private final ThreadPoolExecutor executor;
+
+    //排队和执行中的任务数上限
+    private final int maxPending;
+
+    //追加多少条结束记录后重写日志
+    private final int compactThreshold;
+
+    private FtpMetrics metrics = FtpMetrics.NOOP;
+
+    //未结束的任务，按提交顺序排列，重写日志时按该顺序写入
+    private final Map<String, FtpJob> pending = Collections.synchronizedMap(new LinkedHashMap<>());
+    //最近结束的任务
+    private final Map<String, FtpJob> finished = Collections.synchronizedMap(new FinishedJobs());
+
+    //同一优先级内按提交顺序执行
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicInteger doneSinceCompact = new AtomicInteger();
+
+    //提交到开始执行的等待时间
+    private final LatencyWindow waitLatency;
+    //提交到结束的总耗时
+    private final LatencyWindow totalLatency;
+
+    private volatile boolean closed = false;
+
+    /**
+     * @param ftpProcessor     同步ftp处理器
+     * @param journal          任务日志
+     * @param workers          工作线程数
+     * @param maxPending       排队和执行中的任务数上限，超出时拒绝提交
+     * @param compactThreshold 追加多少条结束记录后重写日志
+     * @param latencySamples   计算耗时百分位数的样本数
+     */
+    public DefaultFtpJobQueue(FtpProcessor ftpProcessor, FtpJobJournal journal, int workers, int maxPending,
+                              int compactThreshold, int latencySamples) {
+        this.ftpProcessor = ftpProcessor;
+        this.journal = journal;
+        this.maxPending = maxPending;
+        this.compactThreshold = compactThreshold;
+        this.waitLatency = new LatencyWindow(latencySamples);
+        this.totalLatency = new LatencyWindow(latencySamples);
+        this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), new CustomizableThreadFactory("ftp-job-"));
+    }
+
+    public void setMetrics(FtpMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * 按日志恢复未结束的任务并开始执行，启动时调用一次
+     */
+    public void recover() throws IOException {
+        List<FtpJob> jobs = journal.replay();
+        for (FtpJob job : jobs) {
+            if (job.getState().isFinished()) {
+                finished.put(job.getId(), job);
+            } else if (Files.exists(journal.dataFile(job.getId()))) {
+                job.requeue();
+                pending.put(job.getId(), job);
+            } else {
+                log.warn("任务[" + job + "]的数据已丢失，无法恢复");
+                job.finish(System.currentTimeMillis(), false, 0, "任务数据已丢失");
+                finished.put(job.getId(), job);
+                failed.incrementAndGet();
+            }
+        }
+        journal.removeOrphanData(pending.keySet());
+        journal.compact(pending.values());
+        synchronized (pending) {
+            pending.values().forEach(this::enqueue);
+        }
+        if (!pending.isEmpty()) {
+            log.info("从任务日志恢复未完成的任务" + pending.size() + "个");
+        }
+    }
+
+    @Override
+    public String submitUpload(String path, String fileName, InputStream inputStream) throws IOException {
+        if (closed) {
+            throw new RejectedExecutionException("任务队列已关闭");
+        }
+        if (pending.size() >= maxPending) {
+            inputStream.close();
+            throw new RejectedExecutionException("等待中的ftp传输任务过多");
+        }
+        TransferContext context = TransferContext.current();
+        String id = UUID.randomUUID().toString().replace("-", "");
+        FtpJob job = new FtpJob(id, path, fileName, context.getTenant(), context.getPriority(), System.currentTimeMillis());
+        journal.spool(id, inputStream);
+        //先放入未结束的任务再追加日志，期间重写日志时最多多写一条重复的提交记录，恢复时按id去重
+        pending.put(id, job);
+        try {
+            journal.appendSubmit(job);
+        } catch (IOException e) {
+            pending.remove(id);
+            journal.removeData(id);
+            throw e;
+        }
+        enqueue(job);
+        return id;
+    }
+
+    @Override
+    public FtpJob getJob(String id) {
+        FtpJob job = pending.get(id);
+        return null != job ? job : finished.get(id);
+    }
+
+    @Override
+    public int getQueued() {
+        return executor.getQueue().size();
+    }
+
+    @Override
+    public int getRunning() {
+        return running.get();
+    }
+
+    @Override
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("queued", getQueued());
+        snapshot.put("running", getRunning());
+        snapshot.put("workers", executor.getMaximumPoolSize());
+        snapshot.put("succeeded", succeeded.get());
+        snapshot.put("failed", failed.get());
+        Map<TransferPriority, Long> byPriority = new EnumMap<>(TransferPriority.class);
+        synchronized (pending) {
+            byPriority.putAll(pending.values().stream()
+                    .filter(job -> job.getState() == FtpJobState.QUEUED)
+                    .collect(Collectors.groupingBy(FtpJob::getPriority, Collectors.counting())));
+        }
+        snapshot.put("queuedByPriority", byPriority);
+        snapshot.put("waitMillis", waitLatency.snapshot());
+        snapshot.put("latencyMillis", totalLatency.snapshot());
+        return snapshot;
+    }
+
+    /**
+     * 停止工作线程并关闭日志，排队和执行中的任务保留在日志中，下次启动时恢复。
+     * 不中断执行中的任务，中断会让借用的连接停在不确定的状态，归还后影响其他传输
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        executor.getQueue().clear();
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("关闭任务队列时仍有" + running.get() + "个任务在执行，下次启动时重新执行");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        journal.close();
+    }
+
+    private void enqueue(FtpJob job) {
+        executor.execute(new JobRunner(job, sequence.incrementAndGet()));
+    }
+
+    private void run(FtpJob job) {
+        long startTime = System.currentTimeMillis();
+        job.start(startTime);
+        running.incrementAndGet();
+        TransferResult result;
+        try {
+            result = TransferContext.of(job.getTenant(), job.getPriority()).call(() -> upload(job));
+        } catch (RuntimeException e) {
+            log.error("执行任务[" + job + "]出错！", (Object) e.getStackTrace());
+            result = TransferResult.failure(e.getMessage());
+        } finally {
+            running.decrementAndGet();
+        }
+        //关闭时执行中的任务不记录结果，下次启动时重新执行
+        if (closed) {
+            return;
+        }
+        long finishTime = System.currentTimeMillis();
+        job.finish(finishTime, result.isSuccess(), result.getBytes(), result.getMessage());
+        try {
+            journal.appendDone(job);
+        } catch (IOException e) {
+            //结束记录写入失败时任务会在下次启动时重新执行，上传是覆盖写入，重复执行不影响结果
+            log.error("记录任务[" + job + "]结束失败！", (Object) e.getStackTrace());
+        }
+        pending.remove(job.getId());
+        finished.put(job.getId(), job);
+        journal.removeData(job.getId());
+        if (result.isSuccess()) {
+            succeeded.incrementAndGet();
+        } else {
+            failed.incrementAndGet();
+            log.warn("任务[" + job + "]上传失败：" + result.getMessage());
+        }
+        waitLatency.record(startTime - job.getSubmitTime());
+        totalLatency.record(finishTime - job.getSubmitTime());
+        metrics.recordJob(result.isSuccess(), startTime - job.getSubmitTime(), finishTime - job.getSubmitTime());
+        if (doneSinceCompact.incrementAndGet() >= compactThreshold) {
+            compact();
+        }
+    }
+
+    private TransferResult upload(FtpJob job) {
+        InputStream inputStream;
+        try {
+            inputStream = Files.newInputStream(journal.dataFile(job.getId()));
+        } catch (IOException e) {
+            return TransferResult.failure("读取任务数据失败：" + e.getMessage());
+        }
+        return ftpProcessor.uploadFileWithResult(job.getPath(), job.getFileName(), inputStream);
+    }
+
+    /**
+     * 用未结束的任务重写日志，避免日志无限增长
+     */
+    private void compact() {
+        doneSinceCompact.set(0);
+        try {
+            synchronized (pending) {
+                journal.compact(pending.values());
+            }
+        } catch (IOException e) {
+            log.error("重写任务日志失败！", (Object) e.getStackTrace());
+        }
+    }
+
+    /**
+     * 最近结束的任务，按结束顺序排列，超出保留数时移除最早结束的任务
+     */
+    private static class FinishedJobs extends LinkedHashMap<String, FtpJob> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FtpJob> eldest) {
+            return size() > FINISHED_RETAINED;
+        }
+    }
+
+    /**
+     * 工作线程池中的任务，优先级高的先执行，同一优先级按提交顺序执行
+     */
+    private class JobRunner implements Runnable, Comparable<JobRunner> {
+
+        private final FtpJob job;
+
+        private final long sequence;
+
+        JobRunner(FtpJob job, long sequence) {
+            this.job = job;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            DefaultFtpJobQueue.this.run(job);
+        }
+
+        @Override
+        public int compareTo(JobRunner other) {
+            int compare = job.getPriority().compareTo(other.job.getPriority());
+            return compare != 0 ? compare : Long.compare(sequence, other.sequence);
+        }
+    }
+}
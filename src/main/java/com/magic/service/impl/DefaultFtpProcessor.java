@@ -1,25 +1,73 @@
 package com.magic.service.impl;
 
+import com.magic.factory.CommandPipeline;
+import com.magic.factory.RemoteFileClient;
+import com.magic.factory.SessionAware;
+import com.magic.pool.EndpointAware;
 import com.magic.properties.FtpProperties;
+import com.magic.support.BandwidthLimiter;
+import com.magic.support.ChecksumAlgorithm;
 import com.magic.service.FtpProcessor;
 import com.magic.support.FtpConstants;
+import com.magic.support.FtpMetrics;
+import com.magic.support.RemoteDirectoryCache;
+import com.magic.support.RemoteFile;
+import com.magic.support.RemoteFileStat;
+import com.magic.support.StreamingChecksum;
+import com.magic.support.TransferBufferPool;
+import com.magic.support.TransferCheckpointStore;
+import com.magic.support.TransferCompression;
+import com.magic.support.TransferContext;
+import com.magic.support.TransferResult;
+import com.magic.support.UploadResult;
+import com.magic.support.UploadTask;
 import lombok.Getter;
 import lombok.Setter;
-import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.net.ftp.FTPClient;
-import org.apache.commons.net.ftp.FTPFile;
+import org.apache.commons.net.ftp.FTPReply;
 import org.apache.commons.pool2.ObjectPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
  * @author magic_lz
@@ -38,10 +86,25 @@ public class DefaultFtpProcessor implements FtpProcessor {
     //连接池初始化标志
     private boolean hasInit = false;
     //连接池
-    private ObjectPool<FTPClient> ftpClientPool;
+    private ObjectPool<RemoteFileClient> ftpClientPool;
+    //传输缓冲区池
+    private final TransferBufferPool bufferPool;
+    //并行传输线程池
+    private ExecutorService transferExecutor;
+    //断点续传检查点
+    private final TransferCheckpointStore checkpointStore;
+    //已确认存在的远程目录
+    private final RemoteDirectoryCache directoryCache;
+    //监控指标
+    private FtpMetrics metrics = FtpMetrics.NOOP;
+    //传输限速，为null时不限速
+    private BandwidthLimiter bandwidthLimiter;
 
     public DefaultFtpProcessor(FtpProperties ftpProperties) {
         this.ftpProperties = ftpProperties;
+        this.bufferPool = new TransferBufferPool(ftpProperties.getBufferSize(), ftpProperties.getBufferPoolSize());
+        this.checkpointStore = new TransferCheckpointStore(ftpProperties.getCheckpointDir());
+        this.directoryCache = new RemoteDirectoryCache(ftpProperties.getDirectoryCacheSize(), ftpProperties.getDirectoryCacheTtlMillis());
     }
 
     /**
@@ -53,24 +116,21 @@ public class DefaultFtpProcessor implements FtpProcessor {
      */
     @Override
     public boolean uploadFile(String path, String fileName, String originFileName) {
-        boolean flag = false;
-        InputStream inputStream = null;
-        FTPClient ftpClient = getFtpClient();
-        try {
-            inputStream = new FileInputStream(new File(originFileName));
-            ftpClient.setFileType(FTPClient.BINARY_FILE_TYPE);
-            createDirectory(path, ftpClient);
-            ftpClient.makeDirectory(path);
-            ftpClient.changeWorkingDirectory(path);
-            ftpClient.storeFile(fileName, inputStream);
-            inputStream.close();
-            flag = true;
-        } catch (Exception e) {
-            log.error("上传文件出错！", (Object) e.getStackTrace());
-        } finally {
-            releaseFtpClient(ftpClient);
+        //本地文件可以重新读取，校验不一致时重新上传
+        for (int attempt = 0; ; attempt++) {
+            InputStream inputStream;
+            try {
+                inputStream = new FileInputStream(new File(originFileName));
+            } catch (FileNotFoundException e) {
+                log.error("上传文件出错！", (Object) e.getStackTrace());
+                return false;
+            }
+            TransferResult result = uploadFileWithResult(path, fileName, inputStream);
+            if (!result.isCorrupted() || attempt >= ftpProperties.getChecksumRetryCount()) {
+                return result.isSuccess();
+            }
+            log.warn("文件[" + fileName + "]校验不一致，第" + (attempt + 1) + "次重新上传");
         }
-        return flag;
     }
 
     /**
@@ -82,140 +142,1013 @@ public class DefaultFtpProcessor implements FtpProcessor {
      */
     @Override
     public boolean uploadFile(String path, String fileName, InputStream inputStream) {
+        return uploadFileWithResult(path, fileName, inputStream).isSuccess();
+    }
+
+    /**
+     * 上传文件并返回传输字节数、耗时和返回码
+     *
+     * @param path        ftp服务器保存地址
+     * @param fileName    上传到ftp的文件名
+     * @param inputStream 文件流
+     */
+    @Override
+    public TransferResult uploadFileWithResult(String path, String fileName, InputStream inputStream) {
+        return uploadFileWithResult(path, fileName, inputStream, ftpProperties.getCompression());
+    }
+
+    /**
+     * 上传文件，传输过程中按指定方式压缩
+     *
+     * @param path        ftp服务器保存地址
+     * @param fileName    上传到ftp的文件名
+     * @param inputStream 文件流
+     * @param compression 压缩方式
+     */
+    @Override
+    public TransferResult uploadFileWithResult(String path, String fileName, InputStream inputStream, TransferCompression compression) {
+        TransferResult result = TransferResult.failure("进入上传目录失败");
+        RemoteFileClient ftpClient = getFtpClient();
+        //传输中途出错时服务器的应答可能还没有读取，连接不能再归还
+        boolean broken = false;
+        try (InputStream in = inputStream) {
+            if (prepareDirectory(path, ftpClient)) {
+                result = storeFile(fileName, in, false, compression, ftpClient);
+            }
+        } catch (Exception e) {
+            log.error("上传文件出错！", (Object) e.getStackTrace());
+            result = TransferResult.failure(e.getMessage());
+            broken = true;
+        } finally {
+            if (broken) {
+                invalidateFtpClient(ftpClient);
+            } else {
+                releaseFtpClient(ftpClient);
+            }
+        }
+        if (!result.isSuccess()) {
+            directoryCache.invalidate(path);
+        }
+        return result;
+    }
+
+    /**
+     * 批量上传文件，按目标目录分组，每个并行连接依次处理若干个分组，同一分组只准备一次目录
+     *
+     * @param tasks 上传任务
+     * @return 每个任务的上传结果，顺序与任务顺序一致
+     */
+    @Override
+    public List<UploadResult> uploadAll(Collection<UploadTask> tasks) {
+        Queue<List<UploadTask>> groups = new ConcurrentLinkedQueue<>(tasks.stream()
+                .collect(Collectors.groupingBy(UploadTask::getPath, LinkedHashMap::new, Collectors.toList()))
+                .values());
+        int parallelism = Math.min(groups.size(), ftpProperties.getBatchParallelism());
+        List<UploadResult> results = new ArrayList<>(tasks.size());
+        if (parallelism <= 1 || null == transferExecutor) {
+            results.addAll(uploadGroups(groups));
+        } else {
+            List<Future<List<UploadResult>>> futures = new ArrayList<>(parallelism);
+            TransferContext context = TransferContext.current();
+            for (int i = 0; i < parallelism; i++) {
+                futures.add(transferExecutor.submit(() -> context.call(() -> uploadGroups(groups))));
+            }
+            for (Future<List<UploadResult>> future : futures) {
+                try {
+                    results.addAll(future.get());
+                } catch (ExecutionException e) {
+                    log.error("批量上传文件出错！", (Object) e.getStackTrace());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    log.error("批量上传文件被中断！", (Object) e.getStackTrace());
+                    break;
+                }
+            }
+        }
+        Map<UploadTask, UploadResult> resultMap = new IdentityHashMap<>();
+        results.forEach(result -> resultMap.put(result.getTask(), result));
+        return tasks.stream()
+                .map(task -> resultMap.getOrDefault(task, UploadResult.failure(task, "任务未执行")))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 从队列中依次取出分组上传，整个过程只借用一个ftp客户端，连接出错时才重新借用
+     *
+     * @param groups 按目录分组的上传任务
+     */
+    private List<UploadResult> uploadGroups(Queue<List<UploadTask>> groups) {
+        List<UploadResult> results = new ArrayList<>();
+        RemoteFileClient ftpClient = null;
+        //当前客户端所在的上传目录
+        String currentPath = null;
+        List<UploadTask> group;
+        try {
+            while (null != (group = groups.poll())) {
+                for (UploadTask task : group) {
+                    InputStream inputStream = null;
+                    try {
+                        inputStream = task.openStream();
+                        if (null == ftpClient) {
+                            ftpClient = getFtpClient();
+                            currentPath = null;
+                        }
+                        if (!task.getPath().equals(currentPath)) {
+                            if (!prepareDirectory(task.getPath(), ftpClient)) {
+                                results.add(UploadResult.failure(task, "进入上传目录失败"));
+                                continue;
+                            }
+                            currentPath = task.getPath();
+                        }
+                        if (storeFile(task.getFileName(), inputStream, false, ftpProperties.getCompression(), ftpClient).isSuccess()) {
+                            results.add(UploadResult.success(task));
+                        } else {
+                            results.add(UploadResult.failure(task, "上传失败，返回码：" + ftpClient.getReplyCode()));
+                        }
+                    } catch (FileNotFoundException e) {
+                        results.add(UploadResult.failure(task, e.getMessage()));
+                    } catch (IOException e) {
+                        log.error("上传文件[" + task + "]出错！", (Object) e.getStackTrace());
+                        results.add(UploadResult.failure(task, e.getMessage()));
+                        directoryCache.invalidate(task.getPath());
+                        invalidateFtpClient(ftpClient);
+                        ftpClient = null;
+                    } catch (RuntimeException e) {
+                        results.add(UploadResult.failure(task, e.getMessage()));
+                        //获取连接失败时没有客户端，传输中途失败时连接同样不能再复用
+                        if (null != ftpClient) {
+                            directoryCache.invalidate(task.getPath());
+                            invalidateFtpClient(ftpClient);
+                            ftpClient = null;
+                        }
+                    } finally {
+                        if (null != inputStream) {
+                            try {
+                                inputStream.close();
+                            } catch (IOException e) {
+                                log.error("关闭输入流出错！", (Object) e.getStackTrace());
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            releaseFtpClient(ftpClient);
+        }
+        return results;
+    }
+
+    /**
+     * 断点续传上传文件，失败后按退避时间重试，只补传服务器上缺少的部分
+     *
+     * @param path           ftp服务器保存地址
+     * @param fileName       上传到ftp的文件名
+     * @param originFileName 等待上传的文件名（绝对地址或路径）
+     */
+    @Override
+    public boolean uploadFileResumable(String path, String fileName, String originFileName) {
+        File localFile = new File(originFileName);
+        long size = localFile.length();
+        String key = TransferCheckpointStore.key("upload", path + "/" + fileName, localFile.getAbsolutePath());
+        for (int attempt = 0; attempt <= ftpProperties.getRetryCount(); attempt++) {
+            if (attempt > 0 && !backoff(attempt)) {
+                return false;
+            }
+            RemoteFileClient ftpClient = getFtpClient();
+            try (FileInputStream inputStream = new FileInputStream(localFile)) {
+                if (!prepareDirectory(path, ftpClient)) {
+                    releaseFtpClient(ftpClient);
+                    continue;
+                }
+                //只有检查点存在时才认为服务器上的文件是本次传输的残留部分，以服务器的实际大小为准
+                long remoteSize = ftpClient.fileSize(fileName);
+                long offset = checkpointStore.load(key, size) >= 0 && remoteSize >= 0 && remoteSize <= size ? remoteSize : 0;
+                checkpointStore.save(key, offset, size);
+                if (offset > 0) {
+                    log.info("文件[" + fileName + "]从偏移量" + offset + "处续传");
+                }
+                inputStream.getChannel().position(offset);
+                //续传偏移量按服务器上的文件大小计算，不能使用改变文件内容的gzip压缩
+                boolean flag = storeFile(fileName, inputStream, offset > 0, TransferCompression.NONE, ftpClient).isSuccess();
+                //追加上传只能在完成后按整个文件的大小校验，不一致时保留检查点，下次按服务器的实际大小重新续传
+                if (flag && ftpProperties.getVerifySize()) {
+                    long uploadedSize = ftpClient.fileSize(fileName);
+                    if (uploadedSize >= 0 && uploadedSize != size) {
+                        log.warn("文件[" + fileName + "]续传后大小" + uploadedSize + "与本地文件大小" + size + "不一致");
+                        flag = false;
+                    }
+                }
+                releaseFtpClient(ftpClient);
+                if (flag) {
+                    checkpointStore.remove(key);
+                    return true;
+                }
+            } catch (IOException e) {
+                log.error("第" + (attempt + 1) + "次上传文件出错！", (Object) e.getStackTrace());
+                invalidateFtpClient(ftpClient);
+            }
+            directoryCache.invalidate(path);
+        }
+        return false;
+    }
+
+    /**
+     * 下载文件
+     *
+     * @param path      ftp服务器文件路径
+     * @param fileName  文件名称
+     * @param localPath 下载后的路径
+     */
+    @Override
+    public boolean downloadFile(String path, String fileName, String localPath) {
+        //直接按文件名下载，不再列出整个目录查找文件
+        File localFile = new File(localPath + "/" + fileName);
+        boolean flag = false;
+        //本地文件可以覆盖重写，校验不一致时重新下载
+        for (int attempt = 0; ; attempt++) {
+            TransferResult result;
+            try (FileChannel channel = new FileOutputStream(localFile).getChannel()) {
+                result = downloadFileWithResult(path, fileName, channel);
+            } catch (IOException e) {
+                log.error("下载文件出错！", (Object) e.getStackTrace());
+                break;
+            }
+            flag = result.isSuccess();
+            if (!result.isCorrupted() || attempt >= ftpProperties.getChecksumRetryCount()) {
+                break;
+            }
+            log.warn("文件[" + fileName + "]校验不一致，第" + (attempt + 1) + "次重新下载");
+        }
+        if (!flag && localFile.exists() && !localFile.delete()) {
+            log.warn("删除下载失败的本地文件[" + localFile + "]失败");
+        }
+        return flag;
+    }
+
+    /**
+     * 断点续传下载文件，失败后按退避时间重试，只补传本地缺少的部分
+     *
+     * @param path      ftp服务器文件路径
+     * @param fileName  文件名称
+     * @param localPath 下载后的路径
+     */
+    @Override
+    public boolean downloadFileResumable(String path, String fileName, String localPath) {
+        File localFile = new File(localPath + "/" + fileName);
+        String key = TransferCheckpointStore.key("download", path + "/" + fileName, localFile.getAbsolutePath());
+        for (int attempt = 0; attempt <= ftpProperties.getRetryCount(); attempt++) {
+            if (attempt > 0 && !backoff(attempt)) {
+                return false;
+            }
+            RemoteFileClient ftpClient = getFtpClient();
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(localFile, "rw");
+                 FileChannel fileChannel = randomAccessFile.getChannel()) {
+                ftpClient.changeWorkingDirectory(path);
+                //远程文件大小未知或已变化时无法确认本地的残留部分，从头下载
+                long remoteSize = ftpClient.fileSize(fileName);
+                long offset = remoteSize >= 0 && checkpointStore.load(key, remoteSize) >= 0 ? Math.min(localFile.length(), remoteSize) : 0;
+                checkpointStore.save(key, offset, remoteSize);
+                randomAccessFile.setLength(offset);
+                fileChannel.position(offset);
+                if (offset > 0) {
+                    log.info("文件[" + fileName + "]从偏移量" + offset + "处续传");
+                }
+                InputStream inputStream = ftpClient.openRead(fileName, offset);
+                if (null == inputStream) {
+                    log.error("打开ftp下载流失败，返回码：" + ftpClient.getReplyCode());
+                    releaseFtpClient(ftpClient);
+                    continue;
+                }
+                try (ReadableByteChannel source = Channels.newChannel(throttle(inputStream, ftpClient))) {
+                    transfer(source, fileChannel);
+                }
+                boolean flag = ftpClient.completeTransfer();
+                releaseFtpClient(ftpClient);
+                if (flag) {
+                    checkpointStore.remove(key);
+                    return true;
+                }
+            } catch (IOException e) {
+                log.error("第" + (attempt + 1) + "次下载文件出错！", (Object) e.getStackTrace());
+                invalidateFtpClient(ftpClient);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 重试前按指数退避等待
+     *
+     * @param attempt 第几次重试
+     * @return 等待期间是否被中断，被中断时返回false
+     */
+    private boolean backoff(int attempt) {
+        long millis = ftpProperties.getRetryBackoffMillis() << Math.min(attempt - 1, 20);
+        try {
+            Thread.sleep(Math.min(millis, ftpProperties.getMaxRetryBackoffMillis()));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 下载文件并直接写入调用方提供的通道，不落地到本地磁盘
+     *
+     * @param path     ftp服务器文件路径
+     * @param fileName 文件名称
+     * @param channel  写入的目标通道，由调用方负责关闭
+     */
+    @Override
+    public boolean downloadFile(String path, String fileName, WritableByteChannel channel) {
+        return downloadFileWithResult(path, fileName, channel).isSuccess();
+    }
+
+    /**
+     * 下载文件并直接写入调用方提供的通道，返回传输字节数、耗时和返回码
+     *
+     * @param path     ftp服务器文件路径
+     * @param fileName 文件名称
+     * @param channel  写入的目标通道，由调用方负责关闭
+     */
+    @Override
+    public TransferResult downloadFileWithResult(String path, String fileName, WritableByteChannel channel) {
+        return downloadFileWithResult(path, fileName, channel, ftpProperties.getCompression());
+    }
+
+    /**
+     * 下载文件并直接写入调用方提供的通道，传输过程中按指定方式解压
+     *
+     * @param path        ftp服务器文件路径
+     * @param fileName    文件名称
+     * @param channel     写入的目标通道，由调用方负责关闭
+     * @param compression 压缩方式
+     */
+    @Override
+    public TransferResult downloadFileWithResult(String path, String fileName, WritableByteChannel channel, TransferCompression compression) {
+        TransferResult result = retrieveFile(path, fileName, channel, compression);
+        metrics.recordTransfer("download", result);
+        return result;
+    }
+
+    /**
+     * 下载文件并写入通道，配置了多个服务器时，尚未写入数据前的连接异常会换一个服务器重试
+     *
+     * @param path        ftp服务器文件路径
+     * @param fileName    文件名称
+     * @param channel     写入的目标通道
+     * @param compression 压缩方式
+     */
+    private TransferResult retrieveFile(String path, String fileName, WritableByteChannel channel, TransferCompression compression) {
+        long startTime = System.nanoTime();
+        TransferResult result = null;
+        //已经尝试过的服务器，换服务器重试时不再选择
+        Set<String> tried = new HashSet<>();
+        for (int attempt = 0; attempt < readAttempts(); attempt++) {
+            //数据一旦开始写入通道就不能再重试，否则会写入重复的数据
+            boolean started = false;
+            RemoteFileClient ftpClient;
+            try {
+                ftpClient = getFtpClient(tried);
+            } catch (RuntimeException e) {
+                //没有其他服务器可以重试时返回上一次的结果
+                if (null == result) {
+                    throw e;
+                }
+                break;
+            }
+            tried.add(endpointOf(ftpClient));
+            try {
+                ftpClient.changeWorkingDirectory(path);
+                boolean modeZ = compression == TransferCompression.MODE_Z && enableModeZ(ftpClient);
+                InputStream inputStream = ftpClient.openRead(fileName, 0);
+                if (null == inputStream) {
+                    int replyCode = ftpClient.getReplyCode();
+                    log.error("打开ftp下载流失败，返回码：" + replyCode);
+                    resetTransferMode(modeZ, ftpClient);
+                    releaseFtpClient(ftpClient);
+                    return TransferResult.failure(0, elapsedMillis(startTime), replyCode, "打开ftp下载流失败");
+                }
+                started = true;
+                StreamingChecksum checksum = ftpProperties.getChecksumAlgorithm().newChecksum();
+                long bytes;
+                try (ReadableByteChannel source = Channels.newChannel(decompress(throttle(inputStream, ftpClient), compression, modeZ))) {
+                    bytes = transfer(source, channel, checksum);
+                }
+                //必须等服务器确认传输完成后才能归还客户端，否则下一个使用者会读到残留的应答
+                boolean flag = ftpClient.completeTransfer();
+                int replyCode = ftpClient.getReplyCode();
+                resetTransferMode(modeZ, ftpClient);
+                result = flag ? TransferResult.success(bytes, elapsedMillis(startTime), replyCode)
+                        : TransferResult.failure(bytes, elapsedMillis(startTime), replyCode, "服务器未确认传输完成");
+                if (flag) {
+                    //gzip下载时服务器上是压缩后的文件，无法与解压后的数据比较
+                    result = verify(result, fileName, checksum, compression != TransferCompression.GZIP, ftpClient);
+                }
+                releaseFtpClient(ftpClient);
+                return result;
+            } catch (IOException e) {
+                log.error("下载文件出错！", (Object) e.getStackTrace());
+                invalidateFtpClient(ftpClient);
+                result = TransferResult.failure(0, elapsedMillis(startTime), 0, e.getMessage());
+                if (started) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 幂等的读操作最多尝试的次数，每个服务器尝试一次
+     */
+    private int readAttempts() {
+        return Math.max(1, ftpProperties.getEndpoints().size());
+    }
+
+    /**
+     * 分段并行下载文件，每个分段使用一个独立的ftp客户端通过REST偏移量下载，直接写入本地文件的对应位置
+     *
+     * @param path      ftp服务器文件路径
+     * @param fileName  文件名称
+     * @param localPath 下载后的路径
+     */
+    @Override
+    public boolean downloadFileSegmented(String path, String fileName, String localPath) {
+        long size;
+        RemoteFileClient ftpClient = getFtpClient();
+        try {
+            ftpClient.changeWorkingDirectory(path);
+            size = ftpClient.fileSize(fileName);
+            releaseFtpClient(ftpClient);
+        } catch (IOException e) {
+            log.error("获取文件大小出错！", (Object) e.getStackTrace());
+            invalidateFtpClient(ftpClient);
+            return false;
+        }
+        int segments = segmentCount(size);
+        if (segments <= 1 || null == transferExecutor) {
+            return downloadFile(path, fileName, localPath);
+        }
+        long startTime = System.nanoTime();
+        File localFile = new File(localPath + "/" + fileName);
         boolean flag = false;
-        FTPClient ftpClient = getFtpClient();
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(localFile, "rw");
+             FileChannel fileChannel = randomAccessFile.getChannel()) {
+            randomAccessFile.setLength(size);
+            long segmentSize = (size + segments - 1) / segments;
+            List<Future<Boolean>> futures = new ArrayList<>(segments);
+            //任一分段失败时通知其他分段停止
+            AtomicBoolean aborted = new AtomicBoolean(false);
+            //分段在传输线程中执行，需要带上调用方的租户和优先级
+            TransferContext context = TransferContext.current();
+            for (int i = 0; i < segments; i++) {
+                long start = i * segmentSize;
+                long length = Math.min(segmentSize, size - start);
+                boolean last = i == segments - 1;
+                futures.add(transferExecutor.submit(() -> context.call(() ->
+                        downloadSegment(path, fileName, start, length, last, fileChannel, aborted))));
+            }
+            flag = awaitSegments(futures, aborted);
+            metrics.recordTransfer("download.segmented", flag ? TransferResult.success(size, elapsedMillis(startTime), 0)
+                    : TransferResult.failure(size, elapsedMillis(startTime), 0, "分段下载失败"));
+        } catch (IOException e) {
+            log.error("分段下载文件出错！", (Object) e.getStackTrace());
+        }
+        //预先按文件大小分配了空间，失败时本地文件的内容不完整
+        if (!flag) {
+            try {
+                Files.deleteIfExists(localFile.toPath());
+            } catch (IOException e) {
+                log.warn("删除下载失败的文件[" + localFile + "]失败：" + e.getMessage());
+            }
+        }
+        return flag;
+    }
+
+    /**
+     * 等待所有分段结束，任一分段失败或等待被中断时通知其余分段停止，尚未开始的分段直接返回，
+     * 正在下载的分段在下一次读取前停止并作废自己的连接。
+     * 不使用Future.cancel，取消后无法再等待正在执行的分段结束，返回前必须确保所有分段都不再写入本地文件
+     *
+     * @param futures 各分段的执行结果
+     * @param aborted 停止标志
+     */
+    private boolean awaitSegments(List<Future<Boolean>> futures, AtomicBoolean aborted) {
+        boolean flag = true;
+        boolean interrupted = false;
+        for (Future<Boolean> future : futures) {
+            while (true) {
+                try {
+                    flag &= future.get();
+                    break;
+                } catch (ExecutionException e) {
+                    log.error("分段下载文件出错！", (Object) e.getCause().getStackTrace());
+                    flag = false;
+                    break;
+                } catch (InterruptedException e) {
+                    log.error("分段下载文件被中断！", (Object) e.getStackTrace());
+                    interrupted = true;
+                    flag = false;
+                } finally {
+                    if (!flag) {
+                        aborted.set(true);
+                    }
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return flag;
+    }
+
+    /**
+     * 下载文件的一个分段
+     *
+     * @param path        ftp服务器文件路径
+     * @param fileName    文件名称
+     * @param start       分段起始偏移量
+     * @param length      分段长度
+     * @param last        是否最后一个分段
+     * @param fileChannel 本地文件通道
+     * @param aborted     其他分段失败时的停止标志
+     */
+    private boolean downloadSegment(String path, String fileName, long start, long length, boolean last,
+                                    FileChannel fileChannel, AtomicBoolean aborted) {
+        if (aborted.get()) {
+            return false;
+        }
+        RemoteFileClient ftpClient = getFtpClient();
+        ByteBuffer buffer = bufferPool.acquireDirect();
         try {
-            ftpClient.setFileType(FTPClient.BINARY_FILE_TYPE);
-            createDirectory(path, ftpClient);
-            ftpClient.makeDirectory(path);
             ftpClient.changeWorkingDirectory(path);
-            ftpClient.storeFile(fileName, inputStream);
-            inputStream.close();
+            InputStream inputStream = ftpClient.openRead(fileName, start);
+            if (null == inputStream) {
+                log.error("打开分段下载流失败，返回码：" + ftpClient.getReplyCode());
+                releaseFtpClient(ftpClient);
+                return false;
+            }
+            long position = start;
+            long remaining = length;
+            try (ReadableByteChannel source = Channels.newChannel(throttle(inputStream, ftpClient))) {
+                while (remaining > 0 && !aborted.get()) {
+                    buffer.clear();
+                    if (remaining < buffer.capacity()) {
+                        buffer.limit((int) remaining);
+                    }
+                    int len = source.read(buffer);
+                    if (len == -1) {
+                        break;
+                    }
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        position += fileChannel.write(buffer, position);
+                    }
+                    remaining -= len;
+                }
+            }
+            if (last && remaining == 0) {
+                boolean flag = ftpClient.completeTransfer();
+                releaseFtpClient(ftpClient);
+                return flag;
+            }
+            //非最后一个分段或中途停止的分段提前关闭了数据连接，中止传输后连接可以归还，中止失败时不再复用
+            if (abortTransfer(ftpClient)) {
+                releaseFtpClient(ftpClient);
+            } else {
+                invalidateFtpClient(ftpClient);
+            }
+            return remaining == 0;
+        } catch (IOException | RuntimeException e) {
+            log.error("下载文件分段[" + start + "]出错！", (Object) e.getStackTrace());
+            invalidateFtpClient(ftpClient);
+            return false;
+        } finally {
+            bufferPool.releaseDirect(buffer);
+        }
+    }
+
+    /**
+     * 中止提前关闭了数据流的传输
+     *
+     * @param ftpClient ftp客户端
+     * @return 是否中止成功，中止失败时返回false
+     */
+    private boolean abortTransfer(RemoteFileClient ftpClient) {
+        try {
+            if (ftpClient.abortTransfer()) {
+                return true;
+            }
+            log.warn("中止分段下载失败，返回码：" + ftpClient.getReplyCode());
+        } catch (IOException e) {
+            log.warn("中止分段下载失败：" + e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * 根据文件大小计算分段数
+     *
+     * @param size 文件大小
+     */
+    private int segmentCount(long size) {
+        if (size <= 0) {
+            return 1;
+        }
+        long bySize = size / Math.max(1L, ftpProperties.getMinSegmentSize());
+        return (int) Math.max(1L, Math.min(ftpProperties.getSegmentCount(), bySize));
+    }
+
+    /**
+     * 通过SIZE和MDTM命令获取ftp文件状态，不需要列出整个目录
+     *
+     * @param path     ftp服务器文件路径
+     * @param fileName 文件名称
+     * @return 文件状态，文件不存在或服务器两个命令都不支持时返回null
+     */
+    @Override
+    public RemoteFileStat statFile(String path, String fileName) throws IOException {
+        long startTime = System.nanoTime();
+        boolean flag = false;
+        RemoteFileClient ftpClient = getFtpClient();
+        try {
+            ftpClient.changeWorkingDirectory(path);
+            RemoteFileStat stat = ftpClient.statFile(fileName);
+            releaseFtpClient(ftpClient);
             flag = true;
-        } catch (Exception e) {
-            log.error("上传文件出错！", (Object) e.getStackTrace());
+            return stat;
+        } catch (IOException e) {
+            invalidateFtpClient(ftpClient);
+            throw e;
+        } finally {
+            metrics.recordOperation("stat", System.nanoTime() - startTime, flag);
+        }
+    }
+
+    /**
+     * 获取ftp文件的输入流，关闭输入流时确认传输完成并归还ftp客户端，调用方必须关闭该流
+     *
+     * @param path     ftp服务器文件路径
+     * @param fileName 文件名称
+     */
+    @Override
+    public InputStream retrieveFileStream(String path, String fileName) throws IOException {
+        RemoteFileClient ftpClient = getFtpClient();
+        InputStream inputStream;
+        try {
+            ftpClient.changeWorkingDirectory(path);
+            inputStream = ftpClient.openRead(fileName, 0);
+        } catch (IOException e) {
+            invalidateFtpClient(ftpClient);
+            throw e;
+        }
+        return completingStream(inputStream, ftpClient);
+    }
+
+    /**
+     * 包装ftp下载流，关闭时确认传输完成并归还ftp客户端
+     *
+     * @param inputStream ftp下载流，为null时说明打开失败
+     * @param ftpClient   ftp客户端
+     */
+    private InputStream completingStream(InputStream inputStream, RemoteFileClient ftpClient) throws IOException {
+        if (null == inputStream) {
+            int replyCode = ftpClient.getReplyCode();
+            releaseFtpClient(ftpClient);
+            throw new FileNotFoundException("打开ftp下载流失败，返回码：" + replyCode);
+        }
+        return new FilterInputStream(throttle(inputStream, ftpClient)) {
+
+            private boolean closed = false;
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                try {
+                    super.close();
+                    if (!ftpClient.completeTransfer()) {
+                        log.warn("ftp下载未正常完成，返回码：" + ftpClient.getReplyCode());
+                    }
+                    releaseFtpClient(ftpClient);
+                } catch (IOException e) {
+                    invalidateFtpClient(ftpClient);
+                    throw e;
+                }
+            }
+        };
+    }
+
+    /**
+     * 删除文件
+     *
+     * @param path     ftp文件路径
+     * @param fileName 文件名
+     */
+    @Override
+    public boolean deleteFile(String path, String fileName) {
+        long startTime = System.nanoTime();
+        boolean flag = false;
+        RemoteFileClient ftpClient = getFtpClient();
+        try {
+            //删除后连接保持登录状态归还连接池，不能再退出登录
+            flag = ftpClient.changeWorkingDirectory(path) && ftpClient.deleteFile(fileName);
+            releaseFtpClient(ftpClient);
+        } catch (IOException e) {
+            invalidateFtpClient(ftpClient);
+            log.error("删除文件出错！", (Object) e.getStackTrace());
+        }
+        metrics.recordOperation("delete", System.nanoTime() - startTime, flag);
+        return flag;
+    }
+
+    /**
+     * 批量删除同一目录下的文件，在同一个连接上流水线发送DELE
+     *
+     * @param path      ftp文件路径
+     * @param fileNames 文件名
+     * @return 删除成功的文件数
+     */
+    @Override
+    public int deleteFiles(String path, Collection<String> fileNames) {
+        long startTime = System.nanoTime();
+        int deleted = 0;
+        RemoteFileClient ftpClient = getFtpClient();
+        try {
+            if (ftpClient.changeWorkingDirectory(path)) {
+                deleted = deleteAll(new ArrayList<>(fileNames), ftpClient);
+            } else {
+                log.error("进入文件夹：" + path + "错误！");
+            }
+            releaseFtpClient(ftpClient);
+        } catch (IOException e) {
+            invalidateFtpClient(ftpClient);
+            log.error("批量删除文件出错！", (Object) e.getStackTrace());
+        }
+        metrics.recordOperation("delete", System.nanoTime() - startTime, deleted == fileNames.size());
+        return deleted;
+    }
+
+    /**
+     * 递归删除目录及其中的所有文件，所有命令都在同一个连接上完成，同一目录下的文件流水线删除
+     *
+     * @param remote 要删除的目录
+     */
+    @Override
+    public boolean deleteDirectory(String remote) {
+        long startTime = System.nanoTime();
+        boolean flag = false;
+        RemoteFileClient ftpClient = getFtpClient();
+        try {
+            flag = deleteDirectory(encodingPath(remote), ftpClient);
+            releaseFtpClient(ftpClient);
+        } catch (IOException e) {
+            invalidateFtpClient(ftpClient);
+            log.error("删除文件夹" + remote + "出错！", (Object) e.getStackTrace());
+        } finally {
+            directoryCache.invalidate(remote);
+        }
+        metrics.recordOperation("rmdir", System.nanoTime() - startTime, flag);
+        return flag;
+    }
+
+    /**
+     * 递归删除目录，只使用绝对路径，不进入要删除的目录
+     *
+     * @param directory 已编码的目录
+     * @param ftpClient ftp客户端
+     */
+    private boolean deleteDirectory(String directory, RemoteFileClient ftpClient) throws IOException {
+        String prefix = directory.endsWith("/") ? directory : directory + "/";
+        Iterator<RemoteFile> entries = ftpClient.listEntries(directory, ftpProperties.getListPageSize());
+        List<String> files = new ArrayList<>();
+        boolean flag = true;
+        while (entries.hasNext()) {
+            RemoteFile entry = entries.next();
+            //符号链接按文件删除，不进入链接指向的目录
+            if (entry.isDirectory()) {
+                flag &= deleteDirectory(prefix + entry.getName(), ftpClient);
+            } else {
+                files.add(prefix + entry.getName());
+            }
+        }
+        flag &= deleteAll(files, ftpClient) == files.size();
+        if (!flag) {
+            log.warn("文件夹[" + directory + "]中有文件删除失败");
+            return false;
+        }
+        return ftpClient.removeDirectory(directory);
+    }
+
+    /**
+     * 删除多个文件，客户端支持时流水线发送DELE，否则逐个删除
+     *
+     * @param arguments 文件名或路径
+     * @param ftpClient ftp客户端
+     * @return 删除成功的文件数
+     */
+    private int deleteAll(List<String> arguments, RemoteFileClient ftpClient) throws IOException {
+        int succeeded = 0;
+        if (ftpClient instanceof CommandPipeline && ftpProperties.getPipelineWindow() > 1) {
+            int[] replies = ((CommandPipeline) ftpClient).pipeline("DELE", arguments, ftpProperties.getPipelineWindow());
+            for (int i = 0; i < replies.length; i++) {
+                if (FTPReply.isPositiveCompletion(replies[i])) {
+                    succeeded++;
+                } else {
+                    log.warn("删除[" + arguments.get(i) + "]失败，返回码：" + replies[i]);
+                }
+            }
+            return succeeded;
+        }
+        for (String argument : arguments) {
+            if (ftpClient.deleteFile(argument)) {
+                succeeded++;
+            } else {
+                log.warn("删除[" + argument + "]失败，返回码：" + ftpClient.getReplyCode());
+            }
+        }
+        return succeeded;
+    }
+
+    /**
+     * 在服务器上重命名或移动文件（RNFR/RNTO），不经过本地传输数据
+     *
+     * @param from 原路径
+     * @param to   新路径，所在目录必须已存在
+     */
+    @Override
+    public boolean rename(String from, String to) {
+        long startTime = System.nanoTime();
+        boolean flag = false;
+        RemoteFileClient ftpClient = getFtpClient();
+        try {
+            flag = ftpClient.rename(from, to);
+            if (!flag) {
+                log.warn("重命名[" + from + "]为[" + to + "]失败，返回码：" + ftpClient.getReplyCode());
+            }
+            releaseFtpClient(ftpClient);
+        } catch (IOException e) {
+            invalidateFtpClient(ftpClient);
+            log.error("重命名文件出错！", (Object) e.getStackTrace());
         } finally {
-            releaseFtpClient(ftpClient);
+            //被改名的可能是目录
+            directoryCache.invalidate(from);
         }
+        metrics.recordOperation("rename", System.nanoTime() - startTime, flag);
         return flag;
     }
 
     /**
-     * 下载文件
+     * 把文件移动到另一个目录，目标目录不存在时先创建
      *
-     * @param path      ftp服务器文件路径
-     * @param fileName  文件名称
-     * @param localPath 下载后的路径
+     * @param path       ftp文件路径
+     * @param fileName   文件名
+     * @param targetPath 目标目录
      */
     @Override
-    public boolean downloadFile(String path, String fileName, String localPath) {
+    public boolean moveFile(String path, String fileName, String targetPath) {
+        long startTime = System.nanoTime();
         boolean flag = false;
-        OutputStream outputStream = null;
-        FTPClient ftpClient = getFtpClient();
+        RemoteFileClient ftpClient = getFtpClient();
         try {
-            ftpClient.changeWorkingDirectory(path);
-            FTPFile[] files = ftpClient.listFiles();
-            for (FTPFile file : files) {
-                if (fileName.equalsIgnoreCase(file.getName())) {
-                    File localFile = new File(localPath + "/" + file.getName());
-                    outputStream = new FileOutputStream(localFile);
-                    ftpClient.retrieveFile(file.getName(), outputStream);
-                    outputStream.close();
-                }
+            //准备目录后工作目录位于目标目录，源文件需要转换为绝对路径，借用时工作目录为根目录
+            String directory = path.startsWith("/") ? path : "/" + path;
+            String from = directory.endsWith("/") ? directory + fileName : directory + "/" + fileName;
+            flag = prepareDirectory(targetPath, ftpClient) && ftpClient.rename(from, fileName);
+            if (!flag) {
+                log.warn("移动[" + from + "]到[" + targetPath + "]失败，返回码：" + ftpClient.getReplyCode());
             }
-            flag = true;
-        } catch (IOException e) {
-            log.error("下载文件出错！", (Object) e.getStackTrace());
-        } finally {
             releaseFtpClient(ftpClient);
-            if (null != outputStream) {
-                try {
-                    outputStream.close();
-                } catch (IOException e) {
-                    log.error("关闭输出流出错！", (Object) e.getStackTrace());
-                }
-            }
+        } catch (IOException e) {
+            invalidateFtpClient(ftpClient);
+            log.error("移动文件出错！", (Object) e.getStackTrace());
         }
+        metrics.recordOperation("rename", System.nanoTime() - startTime, flag);
         return flag;
     }
 
     /**
-     * 删除文件
+     * 创建多层目录，如果ftp服务器已存在该目录，则不创建，如果没有，则创建
      *
-     * @param path     ftp文件路径
-     * @param fileName 文件名
+     * @param remote 创建的目录
      */
     @Override
-    public boolean deleteFile(String path, String fileName) {
-        boolean flag = false;
-        FTPClient ftpClient = getFtpClient();
+    public boolean createDirectory(String remote) throws IOException {
+        RemoteFileClient ftpClient = getFtpClient();
         try {
-            ftpClient.changeWorkingDirectory(path);
-            ftpClient.dele(fileName);
-            ftpClient.logout();
-            flag = true;
-        } catch (IOException e) {
-            log.error("删除文件出错！", (Object) e.getStackTrace());
-        } finally {
+            boolean flag = createDirectory(remote, ftpClient);
             releaseFtpClient(ftpClient);
+            if (flag) {
+                directoryCache.put(remote);
+            }
+            return flag;
+        } catch (IOException e) {
+            invalidateFtpClient(ftpClient);
+            throw e;
         }
-        return flag;
     }
 
     /**
-     * 创建多层目录，如果ftp服务器已存在该目录，则不创建，如果没有，则创建
+     * 创建多层目录，如果ftp服务器已存在该目录，则不创建，如果没有，则创建，完成后工作目录位于该目录
      *
      * @param remote    创建的目录
      * @param ftpClient
      */
-    @Override
-    public boolean createDirectory(String remote, FTPClient ftpClient) throws IOException {
+    public boolean createDirectory(String remote, RemoteFileClient ftpClient) throws IOException {
         String directory = remote + "/";
-        //如果远程目录不存在，则递归创建远程目录
-        if (!directory.equalsIgnoreCase("/") && !changeWorkingDirectory(directory, ftpClient)) {
-            int start = 0;
-            int end = 0;
-            if (directory.startsWith("/")) {
-                start = 1;
-            }
-            end = directory.indexOf("/", start);
-            String path = "";
-            String paths = "";
-            do {
-                String subDirectory = new String(remote.substring(start, end).getBytes(ftpProperties.getEncoding()), FtpConstants.DEFAULT_FTP_PATH_ENCODING);
-                path = path + "/" + subDirectory;
-                if (!existFile(path, ftpClient)) {
-                    if (makeDirectory(subDirectory, ftpClient)) {
-                        changeWorkingDirectory(subDirectory, ftpClient);
-                    } else {
-                        log.warn("创建目录[" + subDirectory + "]失败");
-                        changeWorkingDirectory(subDirectory, ftpClient);
-                    }
-                } else {
-                    changeWorkingDirectory(subDirectory, ftpClient);
-                }
-                paths = paths + "/" + subDirectory;
-                start = end + 1;
-                end = directory.indexOf("/", start);
-            } while (end <= start);
+        //如果远程目录已存在，一次CWD即可完成
+        if (directory.equalsIgnoreCase("/") || changeWorkingDirectory(directory, ftpClient)) {
+            return true;
+        }
+        if (directory.startsWith("/") && !changeWorkingDirectory("/", ftpClient)) {
+            return false;
+        }
+        //逐级进入目录，进入失败时才创建，不再通过LIST判断目录是否存在
+        for (String segment : remote.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            String subDirectory = new String(segment.getBytes(ftpProperties.getEncoding()), FtpConstants.DEFAULT_FTP_PATH_ENCODING);
+            if (changeWorkingDirectory(subDirectory, ftpClient)) {
+                continue;
+            }
+            if (!makeDirectory(subDirectory, ftpClient)) {
+                log.warn("创建目录[" + subDirectory + "]失败");
+            }
+            if (!changeWorkingDirectory(subDirectory, ftpClient)) {
+                return false;
+            }
         }
         return true;
     }
 
+    /**
+     * 准备上传目录，已缓存的目录直接进入，否则逐级创建后加入缓存
+     *
+     * @param path      ftp服务器保存地址
+     * @param ftpClient ftp客户端
+     * @return 工作目录是否已位于该目录
+     */
+    private boolean prepareDirectory(String path, RemoteFileClient ftpClient) throws IOException {
+        if (directoryCache.contains(path)) {
+            if (ftpClient.changeWorkingDirectory(path)) {
+                return true;
+            }
+            directoryCache.invalidate(path);
+        }
+        if (createDirectory(path, ftpClient)) {
+            directoryCache.put(path);
+            return true;
+        }
+        log.error("进入上传目录[" + path + "]失败！");
+        return false;
+    }
+
     /**
      * 判断ftp服务器的路径或文件是否存在
      *
+     * @param path 路径
+     */
+    @Override
+    public boolean existFile(String path) throws IOException {
+        RemoteFileClient ftpClient = getFtpClient();
+        try {
+            boolean flag = existFile(path, ftpClient);
+            releaseFtpClient(ftpClient);
+            return flag;
+        } catch (IOException e) {
+            invalidateFtpClient(ftpClient);
+            throw e;
+        }
+    }
+
+    /**
+     * 判断ftp服务器的路径或文件是否存在，列表中不含自身和上级目录的条目，空目录需要再通过进入目录判断
+     *
      * @param path
      * @param ftpClient
      */
+    public boolean existFile(String path, RemoteFileClient ftpClient) throws IOException {
+        return ftpClient.listEntries(path, 1).hasNext() || ftpClient.changeWorkingDirectory(path);
+    }
+
+    /**
+     * 创建目录，上级目录必须已存在
+     *
+     * @param directory 目录
+     */
     @Override
-    public boolean existFile(String path, FTPClient ftpClient) throws IOException {
-        boolean flag = false;
-        FTPFile[] files = ftpClient.listFiles(path);
-        if (files.length > 0) {
-            flag = true;
+    public boolean makeDirectory(String directory) {
+        RemoteFileClient ftpClient = getFtpClient();
+        try {
+            return makeDirectory(directory, ftpClient);
+        } finally {
+            releaseFtpClient(ftpClient);
         }
-        return flag;
     }
 
     /**
@@ -224,13 +1157,12 @@ public class DefaultFtpProcessor implements FtpProcessor {
      * @param directory
      * @param ftpClient
      */
-    @Override
-    public boolean makeDirectory(String directory, FTPClient ftpClient) {
+    public boolean makeDirectory(String directory, RemoteFileClient ftpClient) {
         boolean flag = true;
         try {
             flag = ftpClient.makeDirectory(directory);
             if (flag) {
-                log.info("创建文件夹：" + directory);
+                log.debug("创建文件夹：" + directory);
             }
         } catch (IOException e) {
             log.error("创建文件夹" + directory + "失败！", (Object) e.getStackTrace());
@@ -244,12 +1176,12 @@ public class DefaultFtpProcessor implements FtpProcessor {
      * @param directory 要切换的目录
      * @param ftpClient ftp客户端
      */
-    public boolean changeWorkingDirectory(String directory, FTPClient ftpClient) {
+    public boolean changeWorkingDirectory(String directory, RemoteFileClient ftpClient) {
         boolean flag = true;
         try {
             flag = ftpClient.changeWorkingDirectory(directory);
             if (flag) {
-                log.info("进入文件夹：" + directory);
+                log.debug("进入文件夹：" + directory);
             }
         } catch (IOException e) {
             log.error("进入文件夹："+directory+"错误！", (Object) e.getStackTrace());
@@ -258,35 +1190,103 @@ public class DefaultFtpProcessor implements FtpProcessor {
     }
 
     /**
-     * 按行读取FTP文件
+     * 按行读取FTP文件，去掉首尾空白和空行
      *
      * @param remoteFilePath ftp路径
      */
     public List<String> readFileByLine(String remoteFilePath) throws IOException {
-        FTPClient ftpClient = getFtpClient();
-        try (InputStream inputStream = ftpClient.retrieveFileStream(encodingPath(remoteFilePath));
-             BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
-            return reader.lines()
-                    .map(line -> StringUtils.trimToEmpty(line))
-                    .filter(line -> StringUtils.isNotEmpty(line))
+        try (Stream<String> lines = lines(remoteFilePath)) {
+            return lines.map(StringUtils::trimToEmpty)
+                    .filter(StringUtils::isNotEmpty)
                     .collect(Collectors.toList());
-        } finally {
-            ftpClient.completePendingCommand();
-            releaseFtpClient(ftpClient);
         }
     }
 
+    /**
+     * 以流的方式按行读取FTP文件，读到文件末尾或关闭流时归还ftp客户端，调用方应在try-with-resources中使用
+     *
+     * @param remoteFilePath ftp路径
+     */
+    @Override
+    public Stream<String> lines(String remoteFilePath) throws IOException {
+        RemoteFileClient ftpClient = getFtpClient();
+        InputStream inputStream;
+        try {
+            inputStream = ftpClient.openRead(encodingPath(remoteFilePath), 0);
+        } catch (IOException e) {
+            invalidateFtpClient(ftpClient);
+            throw e;
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(completingStream(inputStream, ftpClient),
+                Charset.forName(ftpProperties.getFileEncoding())), ftpProperties.getReadBufferSize());
+        Spliterator<String> spliterator = new Spliterators.AbstractSpliterator<String>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+
+            @Override
+            public boolean tryAdvance(Consumer<? super String> action) {
+                try {
+                    String line = reader.readLine();
+                    if (null == line) {
+                        //读完后立即归还ftp客户端，不必等调用方关闭流
+                        reader.close();
+                        return false;
+                    }
+                    action.accept(line);
+                    return true;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * 按行分批读取FTP文件，每读满一批回调一次，适合批量入库等场景
+     *
+     * @param remoteFilePath ftp路径
+     * @param batchSize      每批的行数
+     * @param consumer       每批数据的回调
+     * @return 读取的总行数
+     */
+    @Override
+    public long readLines(String remoteFilePath, int batchSize, Consumer<List<String>> consumer) throws IOException {
+        Assert.isTrue(batchSize > 0, "batchSize必须大于0");
+        long count = 0;
+        try (Stream<String> lines = lines(remoteFilePath)) {
+            List<String> batch = new ArrayList<>(batchSize);
+            Iterator<String> iterator = lines.iterator();
+            while (iterator.hasNext()) {
+                batch.add(iterator.next());
+                count++;
+                if (batch.size() >= batchSize) {
+                    consumer.accept(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                consumer.accept(batch);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return count;
+    }
+
     /**
      * 获取指定路径下的ftp文件
      *
      * @param remotePath 指定路径
      */
-    public FTPFile[] retrieveFtpFiles(String remotePath) throws IOException {
-        FTPClient ftpClient = getFtpClient();
-        try {
-            return ftpClient.listFiles(encodingPath(remotePath + "/"), file -> file != null && file.getSize() > 0);
-        } finally {
-            releaseFtpClient(ftpClient);
+    public RemoteFile[] retrieveFtpFiles(String remotePath) throws IOException {
+        try (Stream<RemoteFile> files = listFiles(remotePath + "/")) {
+            return files.filter(file -> file.getSize() > 0).toArray(RemoteFile[]::new);
         }
     }
 
@@ -297,11 +1297,339 @@ public class DefaultFtpProcessor implements FtpProcessor {
      */
     @Override
     public List<String> retrieveFileNames(String remotePath) throws IOException {
-        FTPFile[] files = retrieveFtpFiles(remotePath);
-        if (ArrayUtils.isEmpty(files)) {
-            return new ArrayList<>();
+        try (Stream<RemoteFile> files = listFiles(remotePath + "/")) {
+            return files.filter(file -> file.getSize() > 0).map(RemoteFile::getName).collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * 以流的方式获取指定路径下的ftp文件，不含自身和上级目录的条目，ftp服务器支持MLSD时使用MLSD，否则使用LIST，
+     * 列表传输完成后立即归还ftp客户端，条目按页转换，不会一次性生成所有RemoteFile对象。
+     * 注意commons-net在返回前会把整个列表的原始文本逐行读入内存，内存占用仍与目录下的条目数成正比，
+     * 分页只减少同时存在的条目对象，对条目数极多的目录应按子目录拆分后再获取
+     *
+     * @param remotePath 指定路径
+     */
+    @Override
+    public Stream<RemoteFile> listFiles(String remotePath) throws IOException {
+        long startTime = System.nanoTime();
+        Iterator<RemoteFile> entries;
+        RemoteFileClient ftpClient = getFtpClient();
+        try {
+            entries = ftpClient.listEntries(encodingPath(remotePath), ftpProperties.getListPageSize());
+            releaseFtpClient(ftpClient);
+        } catch (IOException e) {
+            invalidateFtpClient(ftpClient);
+            metrics.recordOperation("list", System.nanoTime() - startTime, false);
+            throw e;
+        }
+        metrics.recordOperation("list", System.nanoTime() - startTime, true);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(entries, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * 以流的方式上传文件，数据经固定大小的缓冲区直接写入数据连接，不会把整个文件读入内存
+     *
+     * @param fileName    上传到ftp的文件名
+     * @param inputStream 文件流
+     * @param append      是否追加到服务器上已有的文件末尾（APPE）
+     * @param compression 压缩方式
+     * @param ftpClient   ftp客户端
+     * @return 传输结果，服务器确认传输完成时才算成功，传输字节数为压缩前的字节数
+     */
+    private TransferResult storeFile(String fileName, InputStream inputStream, boolean append, TransferCompression compression,
+                                     RemoteFileClient ftpClient) throws IOException {
+        long startTime = System.nanoTime();
+        boolean modeZ = compression == TransferCompression.MODE_Z && enableModeZ(ftpClient);
+        try {
+            OutputStream outputStream = ftpClient.openWrite(fileName, append);
+            if (null == outputStream) {
+                int replyCode = ftpClient.getReplyCode();
+                log.error("打开ftp上传流失败，返回码：" + replyCode);
+                TransferResult result = TransferResult.failure(0, elapsedMillis(startTime), replyCode, "打开ftp上传流失败");
+                metrics.recordTransfer("upload", result);
+                return result;
+            }
+            StreamingChecksum checksum = ftpProperties.getChecksumAlgorithm().newChecksum();
+            long bytes;
+            try (OutputStream out = compress(throttle(outputStream, ftpClient), compression, modeZ)) {
+                bytes = transfer(inputStream, out, checksum);
+            }
+            boolean flag = ftpClient.completeTransfer();
+            int replyCode = ftpClient.getReplyCode();
+            TransferResult result = flag ? TransferResult.success(bytes, elapsedMillis(startTime), replyCode)
+                    : TransferResult.failure(bytes, elapsedMillis(startTime), replyCode, "服务器未确认传输完成");
+            if (flag) {
+                //追加上传时服务器上是整个文件，gzip上传时服务器上是压缩后的文件，都无法与本次传输的数据比较
+                result = verify(result, fileName, checksum, !append && compression != TransferCompression.GZIP, ftpClient);
+            }
+            metrics.recordTransfer("upload", result);
+            return result;
+        } finally {
+            resetTransferMode(modeZ, ftpClient);
+        }
+    }
+
+    /**
+     * 校验传输结果，附加数据摘要，远程文件内容与传输的数据一致时比较远程文件大小和服务器计算的摘要，
+     * 服务器不支持相应命令时跳过该项校验
+     *
+     * @param result     服务器已确认完成的传输结果
+     * @param fileName   文件名称
+     * @param checksum   传输过程中计算的摘要，未开启校验时为null
+     * @param comparable 远程文件内容是否与传输的数据一致
+     * @param ftpClient  ftp客户端
+     */
+    private TransferResult verify(TransferResult result, String fileName, StreamingChecksum checksum, boolean comparable,
+                                  RemoteFileClient ftpClient) throws IOException {
+        if (null != checksum) {
+            result = result.withDigest(checksum.getHex());
+        }
+        if (!comparable) {
+            return result;
+        }
+        if (ftpProperties.getVerifySize()) {
+            long remoteSize = ftpClient.fileSize(fileName);
+            if (remoteSize >= 0 && remoteSize != result.getBytes()) {
+                log.warn("文件[" + fileName + "]大小" + remoteSize + "与传输字节数" + result.getBytes() + "不一致");
+                return result.corrupted("远程文件大小与传输字节数不一致");
+            }
+        }
+        if (null != checksum) {
+            String remoteChecksum = remoteChecksum(fileName, ftpProperties.getChecksumAlgorithm(), ftpClient);
+            if (null != remoteChecksum && !checksum.matches(remoteChecksum)) {
+                log.warn("文件[" + fileName + "]服务器摘要" + remoteChecksum + "与传输数据摘要" + checksum.getHex() + "不一致");
+                return result.corrupted("远程文件摘要与传输数据摘要不一致");
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获取服务器计算的文件摘要，优先使用HASH命令，不支持时使用XCRC/XMD5扩展命令，sftp没有摘要命令
+     *
+     * @param fileName  文件名称
+     * @param algorithm 摘要算法
+     * @param client    ftp客户端
+     * @return 十六进制摘要，服务器不支持时返回null
+     */
+    private String remoteChecksum(String fileName, ChecksumAlgorithm algorithm, RemoteFileClient client) throws IOException {
+        if (!(client instanceof FTPClient)) {
+            log.debug("sftp服务器没有摘要命令，跳过摘要校验");
+            return null;
+        }
+        FTPClient ftpClient = (FTPClient) client;
+        if ((ftpClient.hasFeature("HASH")
+                && FTPReply.isPositiveCompletion(ftpClient.sendCommand("OPTS", "HASH " + algorithm.getHashName()))
+                && FTPReply.isPositiveCompletion(ftpClient.sendCommand("HASH", fileName)))
+                || (null != algorithm.getLegacyCommand()
+                && FTPReply.isPositiveCompletion(ftpClient.sendCommand(algorithm.getLegacyCommand(), fileName)))) {
+            return findChecksum(ftpClient.getReplyStrings()[0], algorithm);
+        }
+        log.debug("ftp服务器不支持" + algorithm.getHashName() + "摘要命令，跳过摘要校验");
+        return null;
+    }
+
+    /**
+     * 从应答中找出摘要，各服务器的应答格式不同，如“213 SHA-256 0-49 摘要 文件名”、“250 摘要”、“251 文件名 摘要”，
+     * 按长度与算法的摘要长度一致的十六进制串查找，CRC允许省略前导0
+     *
+     * @param reply     应答
+     * @param algorithm 摘要算法
+     * @return 十六进制摘要，找不到时返回null
+     */
+    private static String findChecksum(String reply, ChecksumAlgorithm algorithm) {
+        String candidate = null;
+        for (String part : reply.substring(4).trim().split("\\s+")) {
+            if (part.length() > algorithm.getHexLength() || !part.matches("[0-9a-fA-F]+")) {
+                continue;
+            }
+            if (part.length() == algorithm.getHexLength()) {
+                return part;
+            }
+            candidate = part;
+        }
+        return algorithm == ChecksumAlgorithm.CRC32 ? candidate : null;
+    }
+
+    /**
+     * 按当前服务器和租户的限速包装ftp数据流
+     *
+     * @param inputStream ftp数据流
+     * @param ftpClient   ftp客户端
+     */
+    private InputStream throttle(InputStream inputStream, RemoteFileClient ftpClient) {
+        return null == bandwidthLimiter ? inputStream
+                : bandwidthLimiter.wrap(inputStream, endpointOf(ftpClient), TransferContext.current().getTenant());
+    }
+
+    /**
+     * 按当前服务器和租户的限速包装ftp数据流
+     *
+     * @param outputStream ftp数据流
+     * @param ftpClient    ftp客户端
+     */
+    private OutputStream throttle(OutputStream outputStream, RemoteFileClient ftpClient) {
+        return null == bandwidthLimiter ? outputStream
+                : bandwidthLimiter.wrap(outputStream, endpointOf(ftpClient), TransferContext.current().getTenant());
+    }
+
+    /**
+     * ftp客户端所属的服务器，单服务器时为配置的ip:port
+     *
+     * @param ftpClient ftp客户端
+     */
+    private String endpointOf(RemoteFileClient ftpClient) {
+        String endpoint = ftpClientPool instanceof EndpointAware ? ((EndpointAware) ftpClientPool).endpointOf(ftpClient) : null;
+        return null == endpoint ? ftpProperties.getIp() + ":" + ftpProperties.getPort() : endpoint;
+    }
+
+    /**
+     * 服务器支持时开启MODE Z压缩传输
+     * commons-net没有内置MODE Z的数据流处理，这里直接发送MODE命令，由compress/decompress负责数据流的deflate编解码
+     *
+     * @param client ftp客户端
+     * @return 是否已开启，sftp不支持
+     */
+    private boolean enableModeZ(RemoteFileClient client) throws IOException {
+        if (client instanceof FTPClient && ((FTPClient) client).hasFeature("MODE", "Z")
+                && FTPReply.isPositiveCompletion(((FTPClient) client).sendCommand("MODE", "Z"))) {
+            return true;
+        }
+        log.debug("ftp服务器不支持MODE Z，按不压缩传输");
+        return false;
+    }
+
+    /**
+     * 恢复默认的流传输模式，避免影响连接池中该客户端的下一个使用者
+     *
+     * @param modeZ     是否开启了MODE Z
+     * @param ftpClient ftp客户端
+     */
+    private void resetTransferMode(boolean modeZ, RemoteFileClient ftpClient) throws IOException {
+        //只有ftp客户端能开启MODE Z
+        if (modeZ && ftpClient.isConnected()) {
+            ((FTPClient) ftpClient).sendCommand("MODE", "S");
+        }
+    }
+
+    /**
+     * 按压缩方式包装上传数据流
+     *
+     * @param outputStream ftp数据流
+     * @param compression  压缩方式
+     * @param modeZ        是否开启了MODE Z
+     */
+    private OutputStream compress(OutputStream outputStream, TransferCompression compression, boolean modeZ) throws IOException {
+        if (compression == TransferCompression.GZIP) {
+            return new GZIPOutputStream(outputStream, bufferPool.getBufferSize());
+        }
+        if (modeZ) {
+            return new DeflaterOutputStream(outputStream);
+        }
+        return outputStream;
+    }
+
+    /**
+     * 按压缩方式包装下载数据流
+     *
+     * @param inputStream ftp数据流
+     * @param compression 压缩方式
+     * @param modeZ       是否开启了MODE Z
+     */
+    private InputStream decompress(InputStream inputStream, TransferCompression compression, boolean modeZ) throws IOException {
+        if (compression == TransferCompression.GZIP) {
+            return new GZIPInputStream(inputStream, bufferPool.getBufferSize());
+        }
+        if (modeZ) {
+            return new InflaterInputStream(inputStream);
+        }
+        return inputStream;
+    }
+
+    /**
+     * 计算从开始时间到现在经过的毫秒数
+     *
+     * @param startTime 开始时间（System.nanoTime）
+     */
+    private static long elapsedMillis(long startTime) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+    }
+
+    /**
+     * 使用缓冲区池中的缓冲区拷贝数据
+     *
+     * @param inputStream  输入流
+     * @param outputStream 输出流
+     * @return 拷贝的字节数
+     */
+    private long transfer(InputStream inputStream, OutputStream outputStream) throws IOException {
+        return transfer(inputStream, outputStream, null);
+    }
+
+    /**
+     * 使用缓冲区池中的缓冲区拷贝数据，同时计算摘要
+     *
+     * @param inputStream  输入流
+     * @param outputStream 输出流
+     * @param checksum     摘要计算器，为null时不计算
+     * @return 拷贝的字节数
+     */
+    private long transfer(InputStream inputStream, OutputStream outputStream, StreamingChecksum checksum) throws IOException {
+        byte[] buffer = bufferPool.acquire();
+        try {
+            long total = 0;
+            int len;
+            while ((len = inputStream.read(buffer)) != -1) {
+                if (null != checksum) {
+                    checksum.update(buffer, 0, len);
+                }
+                outputStream.write(buffer, 0, len);
+                total += len;
+            }
+            return total;
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * 使用缓冲区池中的直接缓冲区在通道之间拷贝数据
+     *
+     * @param source 源通道
+     * @param target 目标通道
+     * @return 拷贝的字节数
+     */
+    private long transfer(ReadableByteChannel source, WritableByteChannel target) throws IOException {
+        return transfer(source, target, null);
+    }
+
+    /**
+     * 使用缓冲区池中的直接缓冲区在通道之间拷贝数据，同时计算摘要
+     *
+     * @param source   源通道
+     * @param target   目标通道
+     * @param checksum 摘要计算器，为null时不计算
+     * @return 拷贝的字节数
+     */
+    private long transfer(ReadableByteChannel source, WritableByteChannel target, StreamingChecksum checksum) throws IOException {
+        ByteBuffer buffer = bufferPool.acquireDirect();
+        try {
+            long total = 0;
+            while (source.read(buffer) != -1) {
+                buffer.flip();
+                if (null != checksum) {
+                    checksum.update(buffer);
+                }
+                while (buffer.hasRemaining()) {
+                    total += target.write(buffer);
+                }
+                buffer.clear();
+            }
+            return total;
+        } finally {
+            bufferPool.releaseDirect(buffer);
         }
-        return Arrays.stream(files).filter(Objects::nonNull).map(FTPFile::getName).collect(Collectors.toList());
     }
 
     /**
@@ -315,16 +1643,32 @@ public class DefaultFtpProcessor implements FtpProcessor {
     /**
      * 获取ftp客户端
      */
-    private FTPClient getFtpClient() {
+    private RemoteFileClient getFtpClient() {
+        return getFtpClient(Collections.emptySet());
+    }
+
+    /**
+     * 获取不属于指定服务器的ftp客户端，连接池不能识别服务器时忽略
+     *
+     * @param excluded 已经尝试过的服务器
+     */
+    private RemoteFileClient getFtpClient(Set<String> excluded) {
         checkFtpClientPoolAvailable();
-        FTPClient ftpClient = null;
+        RemoteFileClient ftpClient = null;
         Exception exception = null;
         //获取连接，做多尝试n次
         try {
             for (int i = 0; i < ftpProperties.getRetryCount(); i++) {
-                ftpClient = ftpClientPool.borrowObject();
-                ftpClient.enterLocalPassiveMode();//设置为被动模式
-                ftpClient.changeWorkingDirectory("/");
+                long startTime = System.nanoTime();
+                ftpClient = excluded.isEmpty() || !(ftpClientPool instanceof EndpointAware) ? ftpClientPool.borrowObject()
+                        : ((EndpointAware) ftpClientPool).borrowObject(excluded);
+                metrics.recordBorrow(System.nanoTime() - startTime);
+                //被动模式已在创建连接时设置，借用时只需回到根目录
+                if (ftpClient instanceof SessionAware) {
+                    ((SessionAware) ftpClient).resetWorkingDirectory();
+                } else {
+                    ftpClient.changeWorkingDirectory("/");
+                }
                 break;
             }
         } catch (Exception e) {
@@ -342,7 +1686,7 @@ public class DefaultFtpProcessor implements FtpProcessor {
      *
      * @param ftpClient
      */
-    private void releaseFtpClient(FTPClient ftpClient) {
+    private void releaseFtpClient(RemoteFileClient ftpClient) {
         if (null != ftpClient) {
             try {
                 //从ftp连接池中移除ftp客户端
@@ -350,7 +1694,7 @@ public class DefaultFtpProcessor implements FtpProcessor {
             } catch (Exception e) {
                 try {
                     //判断客户端是否可用
-                    if (ftpClient.isAvailable()) {
+                    if (ftpClient.isConnected()) {
                         //销毁连接
                         ftpClient.disconnect();
                     }
@@ -362,6 +1706,21 @@ public class DefaultFtpProcessor implements FtpProcessor {
         }
     }
 
+    /**
+     * 作废ftp客户端，传输中途出错的连接状态不可信，不能再归还到连接池中复用
+     *
+     * @param ftpClient
+     */
+    private void invalidateFtpClient(RemoteFileClient ftpClient) {
+        if (null != ftpClient) {
+            try {
+                ftpClientPool.invalidateObject(ftpClient);
+            } catch (Exception e) {
+                log.error("作废ftp客户端失败！", (Object) e.getStackTrace());
+            }
+        }
+    }
+
     /**
      * 检查ftp连接池是否可用
      */
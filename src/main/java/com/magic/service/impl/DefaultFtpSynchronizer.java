@@ -0,0 +1,297 @@
+package com.magic.service.impl;
+
+import com.magic.service.FtpProcessor;
+import com.magic.service.FtpSynchronizer;
+import com.magic.support.RemoteFile;
+import com.magic.support.SyncReport;
+import com.magic.support.TransferContext;
+import com.magic.support.TransferPriority;
+import com.magic.support.UploadResult;
+import com.magic.support.UploadTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 默认的目录同步实现，本地和远程目录树在工作窃取线程池中并行扫描，
+ * 上传通过批量上传接口按目录分组复用连接，下载由线程池中的工作线程并行执行
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname DefaultFtpSynchronizer
+ * @date 2021/6/9 : 15:40
+ */
+public class DefaultFtpSynchronizer implements FtpSynchronizer {
+
+    private Logger log = LoggerFactory.getLogger(DefaultFtpSynchronizer.class);
+
+    private final FtpProcessor ftpProcessor;
+
+    private final ForkJoinPool workerPool;
+
+    public DefaultFtpSynchronizer(FtpProcessor ftpProcessor, ForkJoinPool workerPool) {
+        this.ftpProcessor = ftpProcessor;
+        this.workerPool = workerPool;
+    }
+
+    /**
+     * 把本地目录同步到ftp服务器，本地文件不存在于远程、大小不同或比远程新时上传
+     *
+     * @param localRoot  本地根目录
+     * @param remoteRoot ftp根目录
+     * @param dryRun     是否只生成报告不传输
+     */
+    @Override
+    public SyncReport upload(String localRoot, String remoteRoot, boolean dryRun) throws IOException {
+        long startTime = System.nanoTime();
+        Path root = Paths.get(localRoot);
+        Map<String, FileState> remote = new ConcurrentHashMap<>();
+        CompletableFuture<Map<String, FileState>> local = CompletableFuture.supplyAsync(() -> scanLocal(root), workerPool);
+        scanRemote(remoteRoot, remote);
+        Map<String, FileState> localFiles = join(local);
+        List<String> changed = localFiles.entrySet().stream()
+                .filter(entry -> entry.getValue().isNewerThan(remote.get(entry.getKey())))
+                .map(Map.Entry::getKey)
+                .sorted()
+                .collect(Collectors.toList());
+        List<String> failed = new ArrayList<>();
+        long bytes = 0;
+        if (!dryRun && !changed.isEmpty()) {
+            List<UploadTask> tasks = changed.stream()
+                    .map(relative -> UploadTask.of(remoteDirectory(remoteRoot, relative), fileName(relative),
+                            root.resolve(relative).toString()))
+                    .collect(Collectors.toList());
+            List<UploadResult> results = bulkContext().call(() -> ftpProcessor.uploadAll(tasks));
+            for (int i = 0; i < results.size(); i++) {
+                if (results.get(i).isSuccess()) {
+                    bytes += localFiles.get(changed.get(i)).size;
+                } else {
+                    failed.add(changed.get(i));
+                }
+            }
+        }
+        SyncReport report = new SyncReport(dryRun, localFiles.size(), remote.size(), changed, failed, bytes,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        log.info("上传同步[" + localRoot + " -> " + remoteRoot + "]：" + report);
+        return report;
+    }
+
+    /**
+     * 把ftp目录同步到本地，远程文件不存在于本地、大小不同或比本地新时下载，下载后本地修改时间设为远程修改时间
+     *
+     * @param remoteRoot ftp根目录
+     * @param localRoot  本地根目录
+     * @param dryRun     是否只生成报告不传输
+     */
+    @Override
+    public SyncReport download(String remoteRoot, String localRoot, boolean dryRun) throws IOException {
+        long startTime = System.nanoTime();
+        Path root = Paths.get(localRoot);
+        Map<String, FileState> remote = new ConcurrentHashMap<>();
+        CompletableFuture<Map<String, FileState>> local = CompletableFuture.supplyAsync(() -> scanLocal(root), workerPool);
+        scanRemote(remoteRoot, remote);
+        Map<String, FileState> localFiles = join(local);
+        List<String> changed = remote.entrySet().stream()
+                .filter(entry -> entry.getValue().isNewerThan(localFiles.get(entry.getKey())))
+                .map(Map.Entry::getKey)
+                .sorted()
+                .collect(Collectors.toList());
+        List<String> failed = new ArrayList<>();
+        long bytes = 0;
+        if (!dryRun && !changed.isEmpty()) {
+            Map<String, Boolean> results;
+            TransferContext context = bulkContext();
+            try {
+                results = workerPool.submit(() -> changed.parallelStream()
+                        .collect(Collectors.toMap(relative -> relative,
+                                relative -> context.call(() -> downloadFile(remoteRoot, root, relative, remote.get(relative)))))).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("下载同步被中断", e);
+            } catch (ExecutionException e) {
+                throw new IOException("下载同步出错", e.getCause());
+            }
+            for (String relative : changed) {
+                if (results.get(relative)) {
+                    bytes += remote.get(relative).size;
+                } else {
+                    failed.add(relative);
+                }
+            }
+        }
+        SyncReport report = new SyncReport(dryRun, localFiles.size(), remote.size(), changed, failed, bytes,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        log.info("下载同步[" + remoteRoot + " -> " + localRoot + "]：" + report);
+        return report;
+    }
+
+    /**
+     * 下载单个文件并同步修改时间
+     */
+    private boolean downloadFile(String remoteRoot, Path root, String relative, FileState state) {
+        Path target = root.resolve(relative);
+        try {
+            Files.createDirectories(target.getParent());
+        } catch (IOException e) {
+            log.error("创建本地目录[" + target.getParent() + "]失败！", (Object) e.getStackTrace());
+            return false;
+        }
+        if (!ftpProcessor.downloadFile(remoteDirectory(remoteRoot, relative), fileName(relative), target.getParent().toString())) {
+            return false;
+        }
+        if (state.modified > 0) {
+            try {
+                Files.setLastModifiedTime(target, FileTime.fromMillis(state.modified));
+            } catch (IOException e) {
+                log.warn("设置文件[" + target + "]修改时间失败：" + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 扫描本地目录树
+     *
+     * @param root 本地根目录
+     * @return 相对路径 -> 文件状态
+     */
+    private Map<String, FileState> scanLocal(Path root) {
+        Map<String, FileState> files = new ConcurrentHashMap<>();
+        if (!Files.isDirectory(root)) {
+            return files;
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.filter(Files::isRegularFile).forEach(path -> {
+                try {
+                    files.put(root.relativize(path).toString().replace('\\', '/'),
+                            new FileState(Files.size(path), Files.getLastModifiedTime(path).toMillis()));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return files;
+    }
+
+    /**
+     * 并行扫描远程目录树，每个目录一个任务，子目录由空闲的工作线程窃取执行
+     *
+     * @param remoteRoot ftp根目录
+     * @param files      相对路径 -> 文件状态
+     */
+    private void scanRemote(String remoteRoot, Map<String, FileState> files) throws IOException {
+        try {
+            workerPool.invoke(new RemoteScanTask(remoteRoot, "", files));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 同步传输按批量任务的优先级借用连接，租户沿用调用方的租户
+     */
+    private static TransferContext bulkContext() {
+        return TransferContext.of(TransferContext.current().getTenant(), TransferPriority.BULK);
+    }
+
+    private <T> T join(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static String remoteDirectory(String remoteRoot, String relative) {
+        int index = relative.lastIndexOf('/');
+        return index < 0 ? remoteRoot : remoteRoot + "/" + relative.substring(0, index);
+    }
+
+    private static String fileName(String relative) {
+        return relative.substring(relative.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * 扫描单个远程目录的任务
+     */
+    private class RemoteScanTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String remoteRoot;
+        //相对根目录的路径，根目录为空字符串
+        private final String relative;
+        private final Map<String, FileState> files;
+
+        RemoteScanTask(String remoteRoot, String relative, Map<String, FileState> files) {
+            this.remoteRoot = remoteRoot;
+            this.relative = relative;
+            this.files = files;
+        }
+
+        @Override
+        protected void compute() {
+            String prefix = relative.isEmpty() ? "" : relative + "/";
+            List<RemoteScanTask> subTasks = new ArrayList<>();
+            //列表中不含自身和上级目录的条目，不会递归到目录之外
+            try (Stream<RemoteFile> entries = ftpProcessor.listFiles(remoteRoot + "/" + relative)) {
+                entries.forEach(file -> {
+                    if (file.isDirectory()) {
+                        subTasks.add(new RemoteScanTask(remoteRoot, prefix + file.getName(), files));
+                    } else if (file.isFile()) {
+                        files.put(prefix + file.getName(), new FileState(file.getSize(), file.getModifiedTime()));
+                    }
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            invokeAll(subTasks);
+        }
+    }
+
+    /**
+     * 文件状态，用于比较两端文件是否有变化
+     */
+    private static class FileState {
+
+        private final long size;
+        private final long modified;
+
+        FileState(long size, long modified) {
+            this.size = size;
+            this.modified = modified;
+        }
+
+        /**
+         * 对端不存在、大小不同或本端修改时间更晚时认为需要传输
+         *
+         * @param other 对端文件状态
+         */
+        boolean isNewerThan(FileState other) {
+            return null == other || size != other.size || modified > other.modified;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.magic.support;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 传输限速，全局、每个ftp服务器、每个租户各有一个令牌桶，传输的每个缓冲区依次从三个令牌桶获取令牌，
+ * 所有限速都可以在运行时调整。
+ * 未单独配置限速的租户按默认限速各自使用一个令牌桶，这类令牌桶的数量有上限，
+ * 超过上限时淘汰最久未使用的令牌桶，避免租户名不断变化时令牌桶无限增长
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname BandwidthLimiter
+ * @date 2021/6/25 : 10:45
+ */
+public class BandwidthLimiter {
+
+    private final TokenBucket global;
+
+    //服务器 -> 令牌桶
+    private final Map<String, TokenBucket> servers = new ConcurrentHashMap<>();
+    //单独配置过限速的租户 -> 令牌桶
+    private final Map<String, TokenBucket> tenants = new ConcurrentHashMap<>();
+    //未单独配置限速的租户 -> 按默认限速的令牌桶
+    private final Map<String, DefaultTenantBucket> defaultTenants = new ConcurrentHashMap<>();
+    //未单独配置限速的租户的令牌桶数量上限
+    private final int maxDefaultTenants;
+    //单独配置过限速的服务器，调整默认限速时不受影响
+    private final Set<String> customServers = ConcurrentHashMap.newKeySet();
+
+    //服务器的默认限速
+    private volatile long defaultServerRate;
+    //租户的默认限速
+    private volatile long defaultTenantRate;
+
+    /**
+     * @param globalRate        全局限速（字节/秒），小于等于0时不限速
+     * @param defaultServerRate 每个服务器的默认限速
+     * @param defaultTenantRate 未单独配置的租户各自的默认限速
+     * @param maxDefaultTenants 未单独配置的租户的令牌桶数量上限
+     */
+    public BandwidthLimiter(long globalRate, long defaultServerRate, long defaultTenantRate, int maxDefaultTenants) {
+        this.global = new TokenBucket(globalRate);
+        this.defaultServerRate = defaultServerRate;
+        this.defaultTenantRate = defaultTenantRate;
+        this.maxDefaultTenants = Math.max(maxDefaultTenants, 1);
+    }
+
+    /**
+     * 获取传输字节数对应的令牌，任意一个令牌桶不足时阻塞
+     *
+     * @param server 服务器
+     * @param tenant 租户
+     * @param bytes  字节数
+     */
+    public void acquire(String server, String tenant, long bytes) throws IOException {
+        global.acquire(bytes);
+        servers.computeIfAbsent(server, key -> new TokenBucket(defaultServerRate)).acquire(bytes);
+        TokenBucket tenantBucket = tenants.get(tenant);
+        (null == tenantBucket ? defaultTenantBucket(tenant) : tenantBucket).acquire(bytes);
+    }
+
+    /**
+     * 未单独配置限速的租户的令牌桶，数量达到上限时先淘汰最久未使用的令牌桶
+     *
+     * @param tenant 租户
+     */
+    private TokenBucket defaultTenantBucket(String tenant) {
+        DefaultTenantBucket bucket = defaultTenants.get(tenant);
+        if (null == bucket) {
+            while (defaultTenants.size() >= maxDefaultTenants) {
+                defaultTenants.entrySet().stream()
+                        .min(Comparator.comparingLong(entry -> entry.getValue().lastUsed))
+                        .ifPresent(eldest -> defaultTenants.remove(eldest.getKey(), eldest.getValue()));
+            }
+            bucket = defaultTenants.computeIfAbsent(tenant, key -> new DefaultTenantBucket(defaultTenantRate));
+        }
+        bucket.lastUsed = System.nanoTime();
+        return bucket.bucket;
+    }
+
+    /**
+     * 包装输入流，每次读取后按读取的字节数限速
+     *
+     * @param inputStream 输入流
+     * @param server      服务器
+     * @param tenant      租户
+     */
+    public InputStream wrap(InputStream inputStream, String server, String tenant) {
+        return new FilterInputStream(inputStream) {
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) {
+                    acquire(server, tenant, 1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    acquire(server, tenant, n);
+                }
+                return n;
+            }
+        };
+    }
+
+    /**
+     * 包装输出流，每次写入前按写入的字节数限速
+     *
+     * @param outputStream 输出流
+     * @param server       服务器
+     * @param tenant       租户
+     */
+    public OutputStream wrap(OutputStream outputStream, String server, String tenant) {
+        return new FilterOutputStream(outputStream) {
+
+            @Override
+            public void write(int b) throws IOException {
+                acquire(server, tenant, 1);
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                acquire(server, tenant, len);
+                out.write(b, off, len);
+            }
+        };
+    }
+
+    public void setGlobalRate(long rate) {
+        global.setRate(rate);
+    }
+
+    public void setServerRate(String server, long rate) {
+        customServers.add(server);
+        servers.computeIfAbsent(server, key -> new TokenBucket(rate)).setRate(rate);
+    }
+
+    public void setTenantRate(String tenant, long rate) {
+        defaultTenants.remove(tenant);
+        tenants.computeIfAbsent(tenant, key -> new TokenBucket(rate)).setRate(rate);
+    }
+
+    /**
+     * 租户是否单独配置过限速，包括配置文件和运行时通过监控端点配置的租户
+     *
+     * @param tenant 租户
+     */
+    public boolean isConfiguredTenant(String tenant) {
+        return tenants.containsKey(tenant);
+    }
+
+    /**
+     * 调整服务器的默认限速，单独配置过的服务器不受影响
+     *
+     * @param rate 每秒字节数，小于等于0时不限速
+     */
+    public void setDefaultServerRate(long rate) {
+        defaultServerRate = rate;
+        servers.forEach((server, bucket) -> {
+            if (!customServers.contains(server)) {
+                bucket.setRate(rate);
+            }
+        });
+    }
+
+    /**
+     * 调整未单独配置的租户的默认限速，单独配置过的租户不受影响
+     *
+     * @param rate 每秒字节数，小于等于0时不限速
+     */
+    public void setDefaultTenantRate(long rate) {
+        defaultTenantRate = rate;
+        defaultTenants.values().forEach(bucket -> bucket.bucket.setRate(rate));
+    }
+
+    /**
+     * 当前的限速配置
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("global", global.getRate());
+        snapshot.put("defaultServer", defaultServerRate);
+        snapshot.put("defaultTenant", defaultTenantRate);
+        snapshot.put("defaultTenantBuckets", defaultTenants.size());
+        Map<String, Long> serverRates = new LinkedHashMap<>();
+        servers.forEach((server, bucket) -> serverRates.put(server, bucket.getRate()));
+        snapshot.put("servers", serverRates);
+        Map<String, Long> tenantRates = new LinkedHashMap<>();
+        tenants.forEach((tenant, bucket) -> tenantRates.put(tenant, bucket.getRate()));
+        snapshot.put("tenants", tenantRates);
+        return snapshot;
+    }
+
+    /**
+     * 未单独配置限速的租户的令牌桶，记录最近使用时间用于淘汰
+     */
+    private static class DefaultTenantBucket {
+
+        private final TokenBucket bucket;
+        //最近使用的时间（System.nanoTime）
+        private volatile long lastUsed = System.nanoTime();
+
+        private DefaultTenantBucket(long rate) {
+            this.bucket = new TokenBucket(rate);
+        }
+    }
+}
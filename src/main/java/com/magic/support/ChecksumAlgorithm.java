@@ -0,0 +1,80 @@
+package com.magic.support;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+/**
+ * 传输校验使用的摘要算法，传输过程中边读边计算，并与服务器HASH或XCRC/XMD5命令的结果比较
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname ChecksumAlgorithm
+ * @date 2021/6/23 : 9:50
+ */
+public enum ChecksumAlgorithm {
+
+    /**
+     * 不计算摘要
+     */
+    NONE(null, null, 0),
+
+    /**
+     * CRC32，服务器不支持HASH时使用XCRC命令
+     */
+    CRC32("CRC32", "XCRC", 8),
+
+    /**
+     * MD5，服务器不支持HASH时使用XMD5命令
+     */
+    MD5("MD5", "XMD5", 32),
+
+    /**
+     * SHA-256，只能通过HASH命令校验
+     */
+    SHA_256("SHA-256", null, 64);
+
+    //HASH命令和MessageDigest使用的算法名
+    private final String hashName;
+    //服务器不支持HASH时使用的扩展命令
+    private final String legacyCommand;
+    //十六进制摘要的长度
+    private final int hexLength;
+
+    ChecksumAlgorithm(String hashName, String legacyCommand, int hexLength) {
+        this.hashName = hashName;
+        this.legacyCommand = legacyCommand;
+        this.hexLength = hexLength;
+    }
+
+    public String getHashName() {
+        return hashName;
+    }
+
+    public String getLegacyCommand() {
+        return legacyCommand;
+    }
+
+    public int getHexLength() {
+        return hexLength;
+    }
+
+    /**
+     * 创建新的摘要计算器
+     *
+     * @return 摘要计算器，不计算摘要时返回null
+     */
+    public StreamingChecksum newChecksum() {
+        if (this == NONE) {
+            return null;
+        }
+        if (this == CRC32) {
+            return new StreamingChecksum(new CRC32());
+        }
+        try {
+            return new StreamingChecksum(MessageDigest.getInstance(hashName));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("不支持的摘要算法：" + hashName, e);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.magic.support;
+
+import org.apache.commons.net.ftp.FTPClient;
+
+/**
+ * ftp数据连接方式，只改变客户端的本地设置，不会向服务器发送命令，建立数据连接时才生效
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname DataConnectionMode
+ * @date 2021/7/6 : 9:40
+ */
+public enum DataConnectionMode {
+
+    /**
+     * 被动模式（PASV），客户端连接服务器在应答中返回的地址和端口
+     */
+    PASSIVE {
+        @Override
+        public void apply(FTPClient ftpClient) {
+            ftpClient.setUseEPSVwithIPv4(false);
+            ftpClient.enterLocalPassiveMode();
+        }
+    },
+
+    /**
+     * 扩展被动模式（EPSV），应答中只有端口，客户端连接控制连接的地址，不受服务器返回内网地址的影响，
+     * 服务器不支持EPSV时退回PASV
+     */
+    EXTENDED_PASSIVE {
+        @Override
+        public void apply(FTPClient ftpClient) {
+            ftpClient.setUseEPSVwithIPv4(true);
+            ftpClient.enterLocalPassiveMode();
+        }
+    },
+
+    /**
+     * 主动模式（PORT/EPRT），客户端监听端口等待服务器连接，客户端需要能被服务器访问
+     */
+    ACTIVE {
+        @Override
+        public void apply(FTPClient ftpClient) {
+            ftpClient.setUseEPSVwithIPv4(false);
+            ftpClient.enterLocalActiveMode();
+        }
+    };
+
+    /**
+     * 设置ftp客户端的数据连接方式
+     *
+     * @param ftpClient ftp客户端
+     */
+    public abstract void apply(FTPClient ftpClient);
+}
@@ -0,0 +1,80 @@
+package com.magic.support;
+
+import lombok.Getter;
+
+/**
+ * 队列中的上传任务，待上传的数据已保存到本地磁盘，进程重启后可以重新执行
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname FtpJob
+ * @date 2021/7/12 : 9:40
+ */
+@Getter
+public class FtpJob {
+
+    //任务id
+    private final String id;
+    //ftp服务器保存地址
+    private final String path;
+    //上传到ftp的文件名
+    private final String fileName;
+    //提交任务的租户
+    private final String tenant;
+    //优先级
+    private final TransferPriority priority;
+    //提交时间
+    private final long submitTime;
+    //状态
+    private volatile FtpJobState state = FtpJobState.QUEUED;
+    //开始执行的时间，未开始时为0
+    private volatile long startTime;
+    //结束时间，未结束时为0
+    private volatile long finishTime;
+    //传输的字节数
+    private volatile long bytes;
+    //失败原因
+    private volatile String message;
+
+    public FtpJob(String id, String path, String fileName, String tenant, TransferPriority priority, long submitTime) {
+        this.id = id;
+        this.path = path;
+        this.fileName = fileName;
+        this.tenant = tenant;
+        this.priority = priority;
+        this.submitTime = submitTime;
+    }
+
+    public void start(long startTime) {
+        this.startTime = startTime;
+        this.state = FtpJobState.RUNNING;
+    }
+
+    /**
+     * 记录执行结果
+     *
+     * @param finishTime 结束时间
+     * @param success    是否成功
+     * @param bytes      传输的字节数
+     * @param message    失败原因
+     */
+    public void finish(long finishTime, boolean success, long bytes, String message) {
+        this.finishTime = finishTime;
+        this.bytes = bytes;
+        this.message = message;
+        this.state = success ? FtpJobState.SUCCEEDED : FtpJobState.FAILED;
+    }
+
+    /**
+     * 重启后任务回到排队状态
+     */
+    public void requeue() {
+        this.startTime = 0;
+        this.state = FtpJobState.QUEUED;
+    }
+
+    @Override
+    public String toString() {
+        return id + "[" + path + "/" + fileName + "]";
+    }
+}
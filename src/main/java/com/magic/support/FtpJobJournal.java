@@ -0,0 +1,230 @@
+package com.magic.support;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 传输任务的追加日志，提交和结束各追加一行，重启时按日志恢复未结束的任务。
+ * 待上传的数据在提交时保存到日志目录下，任务结束后删除
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname FtpJobJournal
+ * @date 2021/7/12 : 10:50
+ */
+public class FtpJobJournal implements Closeable {
+
+    private Logger log = LoggerFactory.getLogger(FtpJobJournal.class);
+
+    private static final String JOURNAL = "journal.log";
+    private static final String DATA_SUFFIX = ".data";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    //提交记录：S id priority tenant submitTime path fileName
+    private static final String SUBMIT = "S";
+    //结束记录：D id state finishTime bytes message
+    private static final String DONE = "D";
+    private static final String SEPARATOR = "\t";
+
+    //日志和数据文件目录
+    private final Path directory;
+    //每条记录和每份数据写入后是否强制刷盘
+    private final boolean fsync;
+
+    private FileChannel channel;
+
+    public FtpJobJournal(String directory, boolean fsync) throws IOException {
+        this.directory = Paths.get(directory);
+        this.fsync = fsync;
+        Files.createDirectories(this.directory);
+    }
+
+    /**
+     * 读取日志中的全部任务，按提交顺序排列，已结束的任务带有结束状态。
+     * 进程崩溃时最后一行可能不完整，无法解析的行直接跳过
+     */
+    public synchronized List<FtpJob> replay() throws IOException {
+        Map<String, FtpJob> jobs = new LinkedHashMap<>();
+        Path file = directory.resolve(JOURNAL);
+        if (!Files.exists(file)) {
+            return new ArrayList<>();
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while (null != (line = reader.readLine())) {
+                try {
+                    String[] fields = line.split(SEPARATOR, -1);
+                    if (SUBMIT.equals(fields[0])) {
+                        jobs.put(decode(fields[1]), new FtpJob(decode(fields[1]), decode(fields[5]), decode(fields[6]),
+                                decode(fields[3]), TransferPriority.valueOf(fields[2]), Long.parseLong(fields[4])));
+                    } else if (DONE.equals(fields[0])) {
+                        FtpJob job = jobs.get(decode(fields[1]));
+                        if (null != job) {
+                            String message = decode(fields[5]);
+                            job.finish(Long.parseLong(fields[3]), FtpJobState.valueOf(fields[2]) == FtpJobState.SUCCEEDED,
+                                    Long.parseLong(fields[4]), message.isEmpty() ? null : message);
+                        }
+                    } else {
+                        throw new IllegalArgumentException(fields[0]);
+                    }
+                } catch (RuntimeException e) {
+                    log.warn("跳过无法解析的任务日志：" + line);
+                }
+            }
+        }
+        return new ArrayList<>(jobs.values());
+    }
+
+    /**
+     * 用未结束的任务重写日志，先写临时文件再替换，之后的记录追加到新日志
+     *
+     * @param pending 未结束的任务
+     */
+    public synchronized void compact(Collection<FtpJob> pending) throws IOException {
+        Path temp = directory.resolve(JOURNAL + TEMP_SUFFIX);
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (FtpJob job : pending) {
+                write(out, submitRecord(job));
+            }
+            out.force(false);
+        }
+        if (null != channel) {
+            channel.close();
+        }
+        Files.move(temp, directory.resolve(JOURNAL), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(directory.resolve(JOURNAL), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    public synchronized void appendSubmit(FtpJob job) throws IOException {
+        append(submitRecord(job));
+    }
+
+    public synchronized void appendDone(FtpJob job) throws IOException {
+        append(String.join(SEPARATOR, DONE, encode(job.getId()), job.getState().name(), String.valueOf(job.getFinishTime()),
+                String.valueOf(job.getBytes()), encode(null == job.getMessage() ? "" : job.getMessage())));
+    }
+
+    /**
+     * 把待上传的数据保存到日志目录，先写临时文件再改名，改名前不会被当作完整的数据
+     *
+     * @param id          任务id
+     * @param inputStream 数据
+     * @return 数据大小
+     */
+    public long spool(String id, InputStream inputStream) throws IOException {
+        Path temp = directory.resolve(id + TEMP_SUFFIX);
+        long size;
+        try (InputStream in = inputStream) {
+            size = Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (fsync) {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                out.force(true);
+            }
+        }
+        Files.move(temp, dataFile(id), StandardCopyOption.ATOMIC_MOVE);
+        return size;
+    }
+
+    public Path dataFile(String id) {
+        return directory.resolve(id + DATA_SUFFIX);
+    }
+
+    public void removeData(String id) {
+        try {
+            Files.deleteIfExists(dataFile(id));
+        } catch (IOException e) {
+            log.warn("删除任务数据[" + id + "]失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 删除不属于任何未结束任务的数据文件，如提交到一半时进程崩溃留下的数据，只能在启动时调用
+     *
+     * @param pendingIds 未结束的任务id
+     */
+    public void removeOrphanData(Set<String> pendingIds) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*{" + DATA_SUFFIX + "," + TEMP_SUFFIX + "}")) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(JOURNAL)) {
+                    continue;
+                }
+                if (name.endsWith(TEMP_SUFFIX) || !pendingIds.contains(name.substring(0, name.length() - DATA_SUFFIX.length()))) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (null != channel) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private String submitRecord(FtpJob job) {
+        return String.join(SEPARATOR, SUBMIT, encode(job.getId()), job.getPriority().name(), encode(job.getTenant()),
+                String.valueOf(job.getSubmitTime()), encode(job.getPath()), encode(job.getFileName()));
+    }
+
+    private void append(String record) throws IOException {
+        if (null == channel) {
+            throw new IOException("任务日志已关闭");
+        }
+        write(channel, record);
+        if (fsync) {
+            channel.force(false);
+        }
+    }
+
+    private static void write(FileChannel out, String record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap((record + "\n").getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
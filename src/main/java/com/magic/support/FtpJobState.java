@@ -0,0 +1,36 @@
+package com.magic.support;
+
+/**
+ * 传输任务的状态
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname FtpJobState
+ * @date 2021/7/12 : 9:30
+ */
+public enum FtpJobState {
+
+    /**
+     * 排队中，包括重启后从日志中恢复的任务
+     */
+    QUEUED,
+
+    /**
+     * 执行中
+     */
+    RUNNING,
+
+    /**
+     * 执行成功
+     */
+    SUCCEEDED,
+
+    /**
+     * 执行失败，不会再重试
+     */
+    FAILED;
+
+    public boolean isFinished() {
+        return this == SUCCEEDED || this == FAILED;
+    }
+}
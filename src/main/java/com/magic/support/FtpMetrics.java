@@ -0,0 +1,268 @@
+package com.magic.support;
+
+import com.magic.pool.BurstPrefiller;
+import com.magic.pool.PriorityFtpClientPool;
+import com.magic.pool.StallWatchdog;
+import com.magic.service.FtpFileCache;
+import com.magic.service.FtpJobQueue;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ftp连接池和传输的监控指标，通过Micrometer发布，由Spring Boot Actuator对外暴露
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname FtpMetrics
+ * @date 2021/5/24 : 16:40
+ */
+public class FtpMetrics {
+
+    //未配置MeterRegistry时使用，不记录任何指标
+    public static final FtpMetrics NOOP = new FtpMetrics(new CompositeMeterRegistry());
+
+    private final MeterRegistry registry;
+
+    private final Counter connectionCreated;
+    private final Counter connectionCreateFailed;
+    private final Counter connectionDestroyed;
+    private final Counter validationFailed;
+    private final Timer borrowTimer;
+    private final Counter cacheHit;
+    private final Counter cacheMiss;
+    private final Counter cacheCoalesced;
+    private final Counter cacheEvicted;
+
+    public FtpMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.connectionCreated = Counter.builder("ftp.connection.created")
+                .description("创建的ftp连接数").register(registry);
+        this.connectionCreateFailed = Counter.builder("ftp.connection.create.failed")
+                .description("创建失败的ftp连接数").register(registry);
+        this.connectionDestroyed = Counter.builder("ftp.connection.destroyed")
+                .description("销毁的ftp连接数").register(registry);
+        this.validationFailed = Counter.builder("ftp.connection.validation.failed")
+                .description("验证失败的ftp连接数").register(registry);
+        this.borrowTimer = Timer.builder("ftp.pool.borrow")
+                .description("从连接池借用ftp客户端的等待时间")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.cacheHit = Counter.builder("ftp.cache.requests").tag("result", "hit")
+                .description("文件缓存的请求数").register(registry);
+        this.cacheMiss = Counter.builder("ftp.cache.requests").tag("result", "miss")
+                .description("文件缓存的请求数").register(registry);
+        this.cacheCoalesced = Counter.builder("ftp.cache.requests").tag("result", "coalesced")
+                .description("文件缓存的请求数").register(registry);
+        this.cacheEvicted = Counter.builder("ftp.cache.evictions")
+                .description("文件缓存淘汰的文件数").register(registry);
+    }
+
+    /**
+     * 注册连接池状态指标
+     *
+     * @param pool 连接池
+     * @param tags 区分多个连接池的标签
+     */
+    public void bindPool(GenericObjectPool<?> pool, Tags tags) {
+        Gauge.builder("ftp.pool.active", pool, GenericObjectPool::getNumActive)
+                .description("借出中的连接数").tags(tags).register(registry);
+        Gauge.builder("ftp.pool.idle", pool, GenericObjectPool::getNumIdle)
+                .description("空闲的连接数").tags(tags).register(registry);
+        Gauge.builder("ftp.pool.max", pool, GenericObjectPool::getMaxTotal)
+                .description("最大连接数").tags(tags).register(registry);
+        Gauge.builder("ftp.pool.borrow.wait.mean", pool, GenericObjectPool::getMeanBorrowWaitTimeMillis)
+                .description("平均借用等待时间").baseUnit("milliseconds").tags(tags).register(registry);
+        Gauge.builder("ftp.pool.borrow.wait.max", pool, GenericObjectPool::getMaxBorrowWaitTimeMillis)
+                .description("最大借用等待时间").baseUnit("milliseconds").tags(tags).register(registry);
+    }
+
+    /**
+     * 注册按优先级借用的连接池状态指标，连接耗尽时借用者在该连接池按优先级排队，被包装的各连接池上不会有等待者
+     *
+     * @param pool 按优先级借用的连接池
+     */
+    public void bindPriorityPool(PriorityFtpClientPool pool) {
+        Gauge.builder("ftp.pool.waiting", pool, PriorityFtpClientPool::getNumWaiters)
+                .description("按优先级排队等待借用连接的线程数").register(registry);
+    }
+
+    /**
+     * 注册突发借用时预建连接的状态指标
+     *
+     * @param prefiller 连接预建器
+     */
+    public void bindPrefiller(BurstPrefiller prefiller) {
+        Gauge.builder("ftp.pool.prefill.pending", prefiller, BurstPrefiller::getPending)
+                .description("后台正在预建的连接数").register(registry);
+    }
+
+    /**
+     * 注册传输看门狗的状态指标
+     *
+     * @param watchdog 传输看门狗
+     */
+    public void bindWatchdog(StallWatchdog watchdog) {
+        Gauge.builder("ftp.transfer.stalled.aborted", watchdog, StallWatchdog::getNumAborted)
+                .description("已中止连接但借用者尚未归还的客户端数").register(registry);
+    }
+
+    /**
+     * 注册文件缓存状态指标
+     *
+     * @param cache 文件缓存
+     */
+    public void bindFileCache(FtpFileCache cache) {
+        Gauge.builder("ftp.cache.files", cache, FtpFileCache::size)
+                .description("缓存的文件数").register(registry);
+        Gauge.builder("ftp.cache.size", cache, FtpFileCache::getUsedBytes)
+                .description("缓存文件的总大小").baseUnit("bytes").register(registry);
+    }
+
+    /**
+     * 注册传输任务队列状态指标
+     *
+     * @param queue 任务队列
+     */
+    public void bindJobQueue(FtpJobQueue queue) {
+        Gauge.builder("ftp.job.queued", queue, FtpJobQueue::getQueued)
+                .description("排队中的传输任务数").register(registry);
+        Gauge.builder("ftp.job.running", queue, FtpJobQueue::getRunning)
+                .description("执行中的传输任务数").register(registry);
+    }
+
+    public void connectionCreated() {
+        connectionCreated.increment();
+    }
+
+    public void connectionCreateFailed() {
+        connectionCreateFailed.increment();
+    }
+
+    public void connectionDestroyed() {
+        connectionDestroyed.increment();
+    }
+
+    public void validationFailed() {
+        validationFailed.increment();
+    }
+
+    /**
+     * 记录一次传输停滞的处理
+     *
+     * @param server 服务器，未知时为null
+     * @param action 处理方式，abort表示中止连接，reclaim表示从连接池回收
+     */
+    public void transferStalled(String server, String action) {
+        Counter.builder("ftp.transfer.stalled")
+                .description("停滞的ftp传输数")
+                .tags("server", null == server ? "unknown" : server, "action", action)
+                .register(registry)
+                .increment();
+    }
+
+    public void cacheHit() {
+        cacheHit.increment();
+    }
+
+    public void cacheMiss() {
+        cacheMiss.increment();
+    }
+
+    /**
+     * 等待其他请求正在进行的下载，既不是命中也没有触发下载
+     */
+    public void cacheCoalesced() {
+        cacheCoalesced.increment();
+    }
+
+    public void cacheEvicted() {
+        cacheEvicted.increment();
+    }
+
+    /**
+     * 记录借用ftp客户端的等待时间
+     *
+     * @param nanos 等待时间（纳秒）
+     */
+    public void recordBorrow(long nanos) {
+        borrowTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 记录一次传输的耗时、字节数和吞吐量
+     *
+     * @param operation 操作名称，如upload、download
+     * @param result    传输结果
+     */
+    public void recordTransfer(String operation, TransferResult result) {
+        Tags tags = Tags.of("operation", operation, "outcome", result.isSuccess() ? "success" : "failure");
+        Timer.builder("ftp.transfer")
+                .description("ftp传输耗时")
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(result.getDurationMillis(), TimeUnit.MILLISECONDS);
+        DistributionSummary.builder("ftp.transfer.bytes")
+                .description("ftp传输字节数")
+                .baseUnit("bytes")
+                .tags(tags)
+                .register(registry)
+                .record(result.getBytes());
+        if (result.isSuccess() && result.getBytes() > 0) {
+            DistributionSummary.builder("ftp.transfer.throughput")
+                    .description("ftp传输吞吐量")
+                    .baseUnit("bytes/second")
+                    .tags(tags)
+                    .publishPercentileHistogram()
+                    .register(registry)
+                    .record(result.getBytesPerSecond());
+        }
+    }
+
+    /**
+     * 记录一个传输任务的排队时间和总耗时
+     *
+     * @param success       是否成功
+     * @param waitMillis    提交到开始执行的时间（毫秒）
+     * @param latencyMillis 提交到结束的时间（毫秒）
+     */
+    public void recordJob(boolean success, long waitMillis, long latencyMillis) {
+        Tags tags = Tags.of("outcome", success ? "success" : "failure");
+        Timer.builder("ftp.job.wait")
+                .description("传输任务的排队时间")
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(waitMillis, TimeUnit.MILLISECONDS);
+        Timer.builder("ftp.job.latency")
+                .description("传输任务从提交到结束的时间")
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(latencyMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 记录一次非传输操作的耗时
+     *
+     * @param operation 操作名称，如delete、list
+     * @param nanos     耗时（纳秒）
+     * @param success   是否成功
+     */
+    public void recordOperation(String operation, long nanos, boolean success) {
+        Timer.builder("ftp.operation")
+                .description("ftp操作耗时")
+                .tags("operation", operation, "outcome", success ? "success" : "failure")
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,39 @@
+package com.magic.support;
+
+/**
+ * 文件传输协议
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname FtpTransport
+ * @date 2021/6/29 : 09:30
+ */
+public enum FtpTransport {
+
+    /**
+     * 明文ftp
+     */
+    FTP,
+
+    /**
+     * 显式ftps，连接后通过AUTH TLS升级为加密连接
+     */
+    FTPS,
+
+    /**
+     * 隐式ftps，连接建立后直接进行TLS握手，服务器端口一般为990
+     */
+    FTPS_IMPLICIT,
+
+    /**
+     * 基于ssh的sftp，读写请求流水线发送，不需要单独的数据连接
+     */
+    SFTP;
+
+    /**
+     * 是否基于TLS的ftp
+     */
+    public boolean isFtps() {
+        return this == FTPS || this == FTPS_IMPLICIT;
+    }
+}
@@ -0,0 +1,61 @@
+package com.magic.support;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 最近若干次耗时的滑动窗口，用于在状态端点上直接给出百分位数，不依赖监控系统
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname LatencyWindow
+ * @date 2021/7/12 : 10:20
+ */
+public class LatencyWindow {
+
+    private final long[] samples;
+    //下一个写入的位置
+    private int next = 0;
+    //已记录的样本数，不超过窗口大小
+    private int count = 0;
+
+    public LatencyWindow(int size) {
+        this.samples = new long[Math.max(1, size)];
+    }
+
+    public synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+    }
+
+    /**
+     * 窗口内耗时的p50、p90、p99和最大值（毫秒），没有样本时返回空
+     */
+    public Map<String, Long> snapshot() {
+        long[] sorted;
+        synchronized (this) {
+            sorted = Arrays.copyOf(samples, count);
+        }
+        Map<String, Long> snapshot = new LinkedHashMap<>();
+        if (sorted.length == 0) {
+            return snapshot;
+        }
+        Arrays.sort(sorted);
+        snapshot.put("p50", percentile(sorted, 0.5));
+        snapshot.put("p90", percentile(sorted, 0.9));
+        snapshot.put("p99", percentile(sorted, 0.99));
+        snapshot.put("max", sorted[sorted.length - 1]);
+        snapshot.put("samples", (long) sorted.length);
+        return snapshot;
+    }
+
+    /**
+     * 按最近秩法取百分位数
+     */
+    private static long percentile(long[] sorted, double percentile) {
+        int rank = (int) Math.ceil(percentile * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
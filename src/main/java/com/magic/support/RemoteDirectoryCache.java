@@ -0,0 +1,86 @@
+package com.magic.support;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 远程目录缓存，记录已确认存在的ftp目录，所有连接池中的客户端共享，避免每次上传都逐级检查和创建目录
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname RemoteDirectoryCache
+ * @date 2021/5/14 : 9:48
+ */
+public class RemoteDirectoryCache {
+
+    //目录 -> 过期时间
+    private final Map<String, Long> directories = new ConcurrentHashMap<>();
+    //最大缓存数量，小于等于0时不缓存
+    private final int maxSize;
+    //缓存有效期（毫秒）
+    private final long ttlMillis;
+
+    public RemoteDirectoryCache(int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * 判断目录是否已确认存在
+     *
+     * @param directory 目录
+     */
+    public boolean contains(String directory) {
+        Long expireTime = directories.get(directory);
+        if (null == expireTime) {
+            return false;
+        }
+        if (expireTime < System.currentTimeMillis()) {
+            directories.remove(directory, expireTime);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 记录已确认存在的目录，缓存已满时先清理过期的目录，仍然满时淘汰最早过期的目录
+     *
+     * @param directory 目录
+     */
+    public void put(String directory) {
+        if (maxSize <= 0 || ttlMillis <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (directories.size() >= maxSize && !directories.containsKey(directory)) {
+            directories.values().removeIf(expireTime -> expireTime < now);
+            while (directories.size() >= maxSize) {
+                directories.entrySet().stream()
+                        .min(Map.Entry.comparingByValue())
+                        .ifPresent(eldest -> directories.remove(eldest.getKey(), eldest.getValue()));
+            }
+        }
+        directories.put(directory, now + ttlMillis);
+    }
+
+    /**
+     * 使目录及其子目录的缓存失效，传输失败或目录被删除时调用
+     *
+     * @param directory 目录
+     */
+    public void invalidate(String directory) {
+        String prefix = directory.endsWith("/") ? directory : directory + "/";
+        directories.keySet().removeIf(key -> key.equals(directory) || key.startsWith(prefix));
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        directories.clear();
+    }
+
+    public int size() {
+        return directories.size();
+    }
+}
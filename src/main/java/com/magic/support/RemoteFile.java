@@ -0,0 +1,58 @@
+package com.magic.support;
+
+import lombok.Getter;
+
+/**
+ * 远程目录中的一个条目，由ftp的MLSD/LIST列表或sftp的目录列表转换而来，不包含代表目录自身和上级目录的条目
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname RemoteFile
+ * @date 2021/7/15 : 16:00
+ */
+@Getter
+public class RemoteFile {
+
+    /**
+     * 条目类型
+     */
+    public enum Type {
+        FILE,
+        DIRECTORY,
+        SYMBOLIC_LINK,
+        UNKNOWN
+    }
+
+    //名称，不含路径
+    private final String name;
+    //类型
+    private final Type type;
+    //大小，未知时为-1
+    private final long size;
+    //修改时间（毫秒），未知时为0
+    private final long modifiedTime;
+
+    public RemoteFile(String name, Type type, long size, long modifiedTime) {
+        this.name = name;
+        this.type = type;
+        this.size = size;
+        this.modifiedTime = modifiedTime;
+    }
+
+    public boolean isFile() {
+        return type == Type.FILE;
+    }
+
+    public boolean isDirectory() {
+        return type == Type.DIRECTORY;
+    }
+
+    public boolean isSymbolicLink() {
+        return type == Type.SYMBOLIC_LINK;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
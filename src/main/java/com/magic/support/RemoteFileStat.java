@@ -0,0 +1,37 @@
+package com.magic.support;
+
+import lombok.Getter;
+
+import java.util.Objects;
+
+/**
+ * 通过SIZE和MDTM命令获取的ftp文件状态，用于判断远程文件是否变化
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname RemoteFileStat
+ * @date 2021/6/18 : 9:35
+ */
+@Getter
+public class RemoteFileStat {
+
+    //文件大小，服务器不支持SIZE时为-1
+    private final long size;
+    //修改时间，MDTM应答中的时间戳，服务器不支持MDTM时为null
+    private final String modifyTime;
+
+    public RemoteFileStat(long size, String modifyTime) {
+        this.size = size;
+        this.modifyTime = modifyTime;
+    }
+
+    /**
+     * 大小和修改时间都能获取且与另一个状态一致时，认为文件没有变化
+     *
+     * @param other 另一个文件状态
+     */
+    public boolean isSameAs(RemoteFileStat other) {
+        return null != other && size >= 0 && null != modifyTime
+                && size == other.size && Objects.equals(modifyTime, other.modifyTime);
+    }
+}
@@ -0,0 +1,90 @@
+package com.magic.support;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.zip.CRC32;
+
+/**
+ * 流式摘要计算器，随传输的每个缓冲区增量更新，文件不需要读取第二遍
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname StreamingChecksum
+ * @date 2021/6/23 : 10:15
+ */
+public class StreamingChecksum {
+
+    private final CRC32 checksum;
+
+    private final MessageDigest digest;
+
+    //计算完成的十六进制摘要
+    private String hex;
+
+    StreamingChecksum(CRC32 checksum) {
+        this.checksum = checksum;
+        this.digest = null;
+    }
+
+    StreamingChecksum(MessageDigest digest) {
+        this.checksum = null;
+        this.digest = digest;
+    }
+
+    public void update(byte[] buffer, int offset, int length) {
+        if (null != checksum) {
+            checksum.update(buffer, offset, length);
+        } else {
+            digest.update(buffer, offset, length);
+        }
+    }
+
+    /**
+     * 使用缓冲区中剩余的数据更新摘要，不改变缓冲区的位置
+     *
+     * @param buffer 缓冲区
+     */
+    public void update(ByteBuffer buffer) {
+        ByteBuffer data = buffer.duplicate();
+        if (null != checksum) {
+            checksum.update(data);
+        } else {
+            digest.update(data);
+        }
+    }
+
+    /**
+     * 获取十六进制摘要，获取后不能再更新
+     */
+    public String getHex() {
+        if (null == hex) {
+            if (null != checksum) {
+                hex = String.format("%08x", checksum.getValue());
+            } else {
+                StringBuilder builder = new StringBuilder();
+                for (byte b : digest.digest()) {
+                    builder.append(String.format("%02x", b & 0xff));
+                }
+                hex = builder.toString();
+            }
+        }
+        return hex;
+    }
+
+    /**
+     * 比较服务器返回的摘要，忽略大小写和前导0（部分服务器返回的CRC不补0）
+     *
+     * @param remote 服务器返回的十六进制摘要
+     */
+    public boolean matches(String remote) {
+        return strip(getHex()).equalsIgnoreCase(strip(remote.trim()));
+    }
+
+    private static String strip(String hex) {
+        int i = 0;
+        while (i < hex.length() - 1 && hex.charAt(i) == '0') {
+            i++;
+        }
+        return hex.substring(i);
+    }
+}
@@ -0,0 +1,68 @@
+package com.magic.support;
+
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * 目录同步报告，演练模式下只包含需要传输的文件，不实际传输
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname SyncReport
+ * @date 2021/6/9 : 15:12
+ */
+@Getter
+public class SyncReport {
+
+    //是否演练
+    private final boolean dryRun;
+    //扫描的本地文件数
+    private final int localFiles;
+    //扫描的远程文件数
+    private final int remoteFiles;
+    //有变化需要传输的文件（相对路径）
+    private final List<String> changedFiles;
+    //传输失败的文件（相对路径）
+    private final List<String> failedFiles;
+    //成功传输的字节数
+    private final long bytes;
+    //耗时（毫秒），包括扫描和传输
+    private final long durationMillis;
+
+    public SyncReport(boolean dryRun, int localFiles, int remoteFiles, List<String> changedFiles,
+                      List<String> failedFiles, long bytes, long durationMillis) {
+        this.dryRun = dryRun;
+        this.localFiles = localFiles;
+        this.remoteFiles = remoteFiles;
+        this.changedFiles = changedFiles;
+        this.failedFiles = failedFiles;
+        this.bytes = bytes;
+        this.durationMillis = durationMillis;
+    }
+
+    /**
+     * 成功传输的文件数
+     */
+    public int getTransferredFiles() {
+        return dryRun ? 0 : changedFiles.size() - failedFiles.size();
+    }
+
+    public boolean isSuccess() {
+        return failedFiles.isEmpty();
+    }
+
+    /**
+     * 吞吐量（字节/秒）
+     */
+    public double getBytesPerSecond() {
+        return durationMillis <= 0 ? bytes * 1000d : bytes * 1000d / durationMillis;
+    }
+
+    @Override
+    public String toString() {
+        return (dryRun ? "[演练]" : "") + "本地文件" + localFiles + "个，远程文件" + remoteFiles + "个，需要传输" + changedFiles.size()
+                + "个，成功" + getTransferredFiles() + "个，失败" + failedFiles.size() + "个，传输" + bytes + "字节，耗时"
+                + durationMillis + "毫秒，吞吐量" + String.format("%.2f", getBytesPerSecond() / 1024 / 1024) + "MB/s";
+    }
+}
@@ -0,0 +1,78 @@
+package com.magic.support;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 令牌桶限速器，每秒补充的令牌数即限速的字节数，桶容量为一秒的令牌数。
+ * 获取令牌时允许透支，透支的线程按透支量等待，并发请求因此按到达顺序分摊带宽
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname TokenBucket
+ * @date 2021/6/25 : 9:30
+ */
+public class TokenBucket {
+
+    //每秒补充的令牌数（字节），小于等于0时不限速
+    private volatile long rate;
+    //当前可用的令牌数，透支时为负数
+    private double available;
+    //上次补充令牌的时间（System.nanoTime）
+    private long lastRefillTime = System.nanoTime();
+
+    public TokenBucket(long rate) {
+        this.rate = rate;
+    }
+
+    public long getRate() {
+        return rate;
+    }
+
+    /**
+     * 调整限速，对传输中的请求立即生效
+     *
+     * @param rate 每秒字节数，小于等于0时不限速
+     */
+    public synchronized void setRate(long rate) {
+        refill(System.nanoTime());
+        this.rate = rate;
+        available = Math.min(available, Math.max(rate, 0));
+    }
+
+    /**
+     * 获取令牌，令牌不足时阻塞到补足透支的部分
+     *
+     * @param permits 令牌数（字节）
+     */
+    public void acquire(long permits) throws InterruptedIOException {
+        if (rate <= 0) {
+            return;
+        }
+        long waitNanos;
+        synchronized (this) {
+            long currentRate = rate;
+            if (currentRate <= 0) {
+                return;
+            }
+            refill(System.nanoTime());
+            available -= permits;
+            waitNanos = available >= 0 ? 0 : (long) (-available * TimeUnit.SECONDS.toNanos(1) / currentRate);
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("等待传输限速时被中断");
+            }
+        }
+    }
+
+    private void refill(long now) {
+        if (rate > 0) {
+            available = Math.min(rate, available + (double) (now - lastRefillTime) * rate / TimeUnit.SECONDS.toNanos(1));
+        }
+        lastRefillTime = now;
+    }
+}
@@ -0,0 +1,78 @@
+package com.magic.support;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 传输缓冲区池，复用固定大小的缓冲区，避免每次传输都重新分配内存
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname TransferBufferPool
+ * @date 2021/5/8 : 10:12
+ */
+public class TransferBufferPool {
+
+    //单个缓冲区大小
+    private final int bufferSize;
+    //空闲的堆内缓冲区，数量上限即为池容量
+    private final BlockingQueue<byte[]> heapBuffers;
+    //空闲的直接缓冲区，直接内存分配代价较高，必须复用
+    private final BlockingQueue<ByteBuffer> directBuffers;
+
+    public TransferBufferPool(int bufferSize, int capacity) {
+        if (bufferSize <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("缓冲区大小和池容量必须大于0");
+        }
+        this.bufferSize = bufferSize;
+        this.heapBuffers = new ArrayBlockingQueue<>(capacity);
+        this.directBuffers = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * 获取一个堆内缓冲区，池中没有空闲缓冲区时新建一个
+     */
+    public byte[] acquire() {
+        byte[] buffer = heapBuffers.poll();
+        return null == buffer ? new byte[bufferSize] : buffer;
+    }
+
+    /**
+     * 归还堆内缓冲区，池已满时直接丢弃交给GC回收
+     *
+     * @param buffer 缓冲区
+     */
+    public void release(byte[] buffer) {
+        if (null != buffer && buffer.length == bufferSize) {
+            heapBuffers.offer(buffer);
+        }
+    }
+
+    /**
+     * 获取一个直接缓冲区，池中没有空闲缓冲区时新建一个
+     */
+    public ByteBuffer acquireDirect() {
+        ByteBuffer buffer = directBuffers.poll();
+        if (null == buffer) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * 归还直接缓冲区，池已满时直接丢弃
+     *
+     * @param buffer 缓冲区
+     */
+    public void releaseDirect(ByteBuffer buffer) {
+        if (null != buffer && buffer.isDirect() && buffer.capacity() == bufferSize) {
+            directBuffers.offer(buffer);
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+}
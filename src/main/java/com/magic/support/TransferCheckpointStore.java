@@ -0,0 +1,108 @@
+package com.magic.support;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.DigestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * 断点续传检查点存储，每个传输在本地目录下保存一个小文件，记录已确认的字节偏移量
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname TransferCheckpointStore
+ * @date 2021/5/12 : 14:36
+ */
+public class TransferCheckpointStore {
+
+    private Logger log = LoggerFactory.getLogger(TransferCheckpointStore.class);
+
+    private static final String OFFSET = "offset";
+    private static final String SIZE = "size";
+
+    //检查点文件目录
+    private final Path directory;
+
+    public TransferCheckpointStore(String directory) {
+        this.directory = Paths.get(directory);
+    }
+
+    /**
+     * 根据传输的各个组成部分生成检查点的key
+     *
+     * @param parts 传输方向、远程路径、本地路径等
+     */
+    public static String key(String... parts) {
+        return DigestUtils.md5DigestAsHex(String.join("|", parts).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 读取已确认的偏移量
+     *
+     * @param key  检查点key
+     * @param size 文件总大小，与记录的大小不一致时说明文件已变化，检查点作废
+     * @return 已确认的偏移量，没有可用的检查点时返回-1
+     */
+    public long load(String key, long size) {
+        Path file = directory.resolve(key);
+        if (!Files.exists(file)) {
+            return -1;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+            if (Long.parseLong(properties.getProperty(SIZE, "-1")) != size) {
+                return -1;
+            }
+            return Long.parseLong(properties.getProperty(OFFSET, "-1"));
+        } catch (IOException | NumberFormatException e) {
+            log.warn("读取检查点[" + key + "]失败：" + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * 保存已确认的偏移量，先写临时文件再替换，避免进程崩溃时留下不完整的检查点
+     *
+     * @param key    检查点key
+     * @param offset 已确认的偏移量
+     * @param size   文件总大小
+     */
+    public void save(String key, long offset, long size) {
+        Properties properties = new Properties();
+        properties.setProperty(OFFSET, String.valueOf(offset));
+        properties.setProperty(SIZE, String.valueOf(size));
+        try {
+            Files.createDirectories(directory);
+            Path temp = directory.resolve(key + ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                properties.store(out, null);
+            }
+            Files.move(temp, directory.resolve(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("保存检查点[" + key + "]失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 删除检查点，传输完成后调用
+     *
+     * @param key 检查点key
+     */
+    public void remove(String key) {
+        try {
+            Files.deleteIfExists(directory.resolve(key));
+        } catch (IOException e) {
+            log.warn("删除检查点[" + key + "]失败：" + e.getMessage());
+        }
+    }
+}
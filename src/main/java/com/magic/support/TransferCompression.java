@@ -0,0 +1,27 @@
+package com.magic.support;
+
+/**
+ * 传输压缩方式
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname TransferCompression
+ * @date 2021/6/16 : 10:20
+ */
+public enum TransferCompression {
+
+    /**
+     * 不压缩
+     */
+    NONE,
+
+    /**
+     * 上传时边读边gzip压缩，服务器上保存的是压缩后的文件；下载时边读边解压，要求服务器上的文件是gzip格式
+     */
+    GZIP,
+
+    /**
+     * 使用MODE Z在数据连接上压缩，服务器上保存的是原始文件，服务器不支持时按不压缩传输
+     */
+    MODE_Z
+}
@@ -0,0 +1,69 @@
+package com.magic.support;
+
+import java.util.function.Supplier;
+
+/**
+ * 当前线程的传输上下文，记录调用方的租户和优先级，用于按租户限速和按优先级借用连接
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname TransferContext
+ * @date 2021/6/25 : 10:20
+ */
+public class TransferContext {
+
+    public static final String DEFAULT_TENANT = "default";
+
+    private static final TransferContext DEFAULT = new TransferContext(DEFAULT_TENANT, TransferPriority.NORMAL);
+
+    private static final ThreadLocal<TransferContext> CURRENT = new ThreadLocal<>();
+
+    //租户
+    private final String tenant;
+    //优先级
+    private final TransferPriority priority;
+
+    private TransferContext(String tenant, TransferPriority priority) {
+        this.tenant = tenant;
+        this.priority = priority;
+    }
+
+    public static TransferContext of(String tenant, TransferPriority priority) {
+        return new TransferContext(null == tenant ? DEFAULT_TENANT : tenant, null == priority ? TransferPriority.NORMAL : priority);
+    }
+
+    /**
+     * 当前线程的传输上下文，没有设置时为默认租户和普通优先级
+     */
+    public static TransferContext current() {
+        TransferContext context = CURRENT.get();
+        return null == context ? DEFAULT : context;
+    }
+
+    /**
+     * 在该上下文中执行操作，完成后恢复原来的上下文，异步执行时可用于把调用方的上下文传递到工作线程
+     *
+     * @param action 操作
+     */
+    public <T> T call(Supplier<T> action) {
+        TransferContext previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return action.get();
+        } finally {
+            if (null == previous) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public TransferPriority getPriority() {
+        return priority;
+    }
+}
@@ -0,0 +1,51 @@
+package com.magic.support;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 传输线程池工厂
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname TransferExecutors
+ * @date 2021/5/20 : 14:18
+ */
+public final class TransferExecutors {
+
+    private static final Logger log = LoggerFactory.getLogger(TransferExecutors.class);
+
+    private TransferExecutors() {
+    }
+
+    /**
+     * 创建传输线程池，运行时支持虚拟线程且开启时使用虚拟线程，否则使用固定大小的平台线程池
+     *
+     * @param threadNamePrefix 线程名前缀
+     * @param threads          平台线程数
+     * @param virtualThreads   是否优先使用虚拟线程
+     */
+    public static ExecutorService newExecutor(String threadNamePrefix, int threads, boolean virtualThreads) {
+        if (virtualThreads) {
+            try {
+                //编译目标为Java 8，通过反射调用Java 21的虚拟线程API
+                Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) method.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                log.warn("当前运行时不支持虚拟线程，使用平台线程池");
+            }
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new CustomizableThreadFactory(threadNamePrefix));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
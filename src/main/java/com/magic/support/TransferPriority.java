@@ -0,0 +1,27 @@
+package com.magic.support;
+
+/**
+ * 传输优先级，连接池耗尽时高优先级的请求先获得连接
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname TransferPriority
+ * @date 2021/6/25 : 10:10
+ */
+public enum TransferPriority {
+
+    /**
+     * 交互式请求，如用户在页面上下载文件
+     */
+    INTERACTIVE,
+
+    /**
+     * 普通请求
+     */
+    NORMAL,
+
+    /**
+     * 批量任务，如目录同步和批量上传
+     */
+    BULK
+}
@@ -0,0 +1,89 @@
+package com.magic.support;
+
+import lombok.Getter;
+
+/**
+ * 单次传输的结果，包含传输字节数、耗时和服务器返回码
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname TransferResult
+ * @date 2021/5/20 : 11:05
+ */
+@Getter
+public class TransferResult {
+
+    //是否传输成功
+    private final boolean success;
+    //传输的字节数
+    private final long bytes;
+    //耗时（毫秒）
+    private final long durationMillis;
+    //服务器最后的返回码，未与服务器交互时为0
+    private final int replyCode;
+    //失败原因
+    private final String message;
+    //传输数据的十六进制摘要，未开启校验时为null
+    private final String digest;
+    //传输完成但校验不一致，数据可能已损坏
+    private final boolean corrupted;
+
+    private TransferResult(boolean success, long bytes, long durationMillis, int replyCode, String message) {
+        this(success, bytes, durationMillis, replyCode, message, null, false);
+    }
+
+    private TransferResult(boolean success, long bytes, long durationMillis, int replyCode, String message,
+                           String digest, boolean corrupted) {
+        this.success = success;
+        this.bytes = bytes;
+        this.durationMillis = durationMillis;
+        this.replyCode = replyCode;
+        this.message = message;
+        this.digest = digest;
+        this.corrupted = corrupted;
+    }
+
+    public static TransferResult success(long bytes, long durationMillis, int replyCode) {
+        return new TransferResult(true, bytes, durationMillis, replyCode, null);
+    }
+
+    public static TransferResult failure(long bytes, long durationMillis, int replyCode, String message) {
+        return new TransferResult(false, bytes, durationMillis, replyCode, message);
+    }
+
+    public static TransferResult failure(String message) {
+        return new TransferResult(false, 0, 0, 0, message);
+    }
+
+    /**
+     * 附加传输数据的摘要
+     *
+     * @param digest 十六进制摘要
+     */
+    public TransferResult withDigest(String digest) {
+        return new TransferResult(success, bytes, durationMillis, replyCode, message, digest, corrupted);
+    }
+
+    /**
+     * 标记为校验失败
+     *
+     * @param message 不一致的原因
+     */
+    public TransferResult corrupted(String message) {
+        return new TransferResult(false, bytes, durationMillis, replyCode, message, digest, true);
+    }
+
+    /**
+     * 吞吐量（字节/秒）
+     */
+    public double getBytesPerSecond() {
+        return durationMillis <= 0 ? bytes * 1000d : bytes * 1000d / durationMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "TransferResult{success=" + success + ", bytes=" + bytes + ", durationMillis=" + durationMillis
+                + ", replyCode=" + replyCode + (null == digest ? "" : ", digest=" + digest)
+                + (null == message ? "" : ", message=" + message) + "}";
+    }
+}
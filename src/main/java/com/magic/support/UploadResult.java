@@ -0,0 +1,36 @@
+package com.magic.support;
+
+import lombok.Getter;
+
+/**
+ * 批量上传中单个任务的结果
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname UploadResult
+ * @date 2021/5/17 : 15:32
+ */
+@Getter
+public class UploadResult {
+
+    //上传任务
+    private final UploadTask task;
+    //是否上传成功
+    private final boolean success;
+    //失败原因
+    private final String message;
+
+    private UploadResult(UploadTask task, boolean success, String message) {
+        this.task = task;
+        this.success = success;
+        this.message = message;
+    }
+
+    public static UploadResult success(UploadTask task) {
+        return new UploadResult(task, true, null);
+    }
+
+    public static UploadResult failure(UploadTask task, String message) {
+        return new UploadResult(task, false, message);
+    }
+}
@@ -0,0 +1,55 @@
+package com.magic.support;
+
+import lombok.Getter;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 批量上传中的单个上传任务，文件来源为本地文件或输入流二选一
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname UploadTask
+ * @date 2021/5/17 : 15:20
+ */
+@Getter
+public class UploadTask {
+
+    //ftp服务器保存地址
+    private final String path;
+    //上传到ftp的文件名
+    private final String fileName;
+    //等待上传的文件名（绝对地址或路径）
+    private final String originFileName;
+    //文件流
+    private final InputStream inputStream;
+
+    private UploadTask(String path, String fileName, String originFileName, InputStream inputStream) {
+        this.path = path;
+        this.fileName = fileName;
+        this.originFileName = originFileName;
+        this.inputStream = inputStream;
+    }
+
+    public static UploadTask of(String path, String fileName, String originFileName) {
+        return new UploadTask(path, fileName, originFileName, null);
+    }
+
+    public static UploadTask of(String path, String fileName, InputStream inputStream) {
+        return new UploadTask(path, fileName, null, inputStream);
+    }
+
+    /**
+     * 打开待上传的数据流，本地文件在真正上传时才打开，避免批量任务同时占用大量文件句柄
+     */
+    public InputStream openStream() throws IOException {
+        return null != inputStream ? inputStream : new FileInputStream(originFileName);
+    }
+
+    @Override
+    public String toString() {
+        return path + "/" + fileName;
+    }
+}
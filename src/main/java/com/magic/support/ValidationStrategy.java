@@ -0,0 +1,48 @@
+package com.magic.support;
+
+import com.magic.factory.RemoteFileClient;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPReply;
+
+import java.io.IOException;
+
+/**
+ * ftp连接验证策略
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname ValidationStrategy
+ * @date 2021/5/26 : 10:15
+ */
+public enum ValidationStrategy {
+
+    /**
+     * 发送NOOP命令，不改变连接状态，服务器处理代价最小
+     */
+    NOOP {
+        @Override
+        public boolean validate(RemoteFileClient ftpClient) throws IOException {
+            return ftpClient.sendNoOp();
+        }
+    },
+
+    /**
+     * 切换到根目录，兼容不支持NOOP的服务器，直接发送命令，避免被会话状态跳过。sftp没有CWD请求，按NOOP验证
+     */
+    CWD {
+        @Override
+        public boolean validate(RemoteFileClient ftpClient) throws IOException {
+            if (!(ftpClient instanceof FTPClient)) {
+                return ftpClient.sendNoOp();
+            }
+            return FTPReply.isPositiveCompletion(((FTPClient) ftpClient).cwd("/"));
+        }
+    };
+
+    /**
+     * 验证ftp连接是否可用
+     *
+     * @param ftpClient ftp客户端
+     */
+    public abstract boolean validate(RemoteFileClient ftpClient) throws IOException;
+}
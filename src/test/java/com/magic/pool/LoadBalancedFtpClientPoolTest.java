@@ -0,0 +1,101 @@
+package com.magic.pool;
+
+import com.magic.embedded.EmbeddedFtpServer;
+import com.magic.factory.FtpClientPooledObjectFactory;
+import com.magic.factory.RemoteFileClient;
+import com.magic.properties.FtpProperties;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 多服务器连接池的测试，一个服务器的连接耗尽时立即改用其他服务器，耗尽不触发熔断，换服务器重试时不再选择已尝试的服务器
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname LoadBalancedFtpClientPoolTest
+ * @date 2021/7/13 : 16:40
+ */
+class LoadBalancedFtpClientPoolTest {
+
+    //借用的最大等待时间，耗尽的服务器不应该等待这么久
+    private static final long MAX_WAIT_MILLIS = 3000;
+
+    private final List<EmbeddedFtpServer> servers = new ArrayList<>();
+
+    private final List<FtpEndpointNode> nodes = new ArrayList<>();
+
+    private LoadBalancedFtpClientPool pool;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            EmbeddedFtpServer server = new EmbeddedFtpServer();
+            server.start();
+            servers.add(server);
+            FtpProperties ftpProperties = new FtpProperties();
+            ftpProperties.setIp("127.0.0.1");
+            ftpProperties.setPort(String.valueOf(server.getPort()));
+            ftpProperties.setUsername(EmbeddedFtpServer.USERNAME);
+            ftpProperties.setPassword(EmbeddedFtpServer.PASSWORD);
+            GenericObjectPoolConfig<RemoteFileClient> poolConfig = new GenericObjectPoolConfig<>();
+            poolConfig.setMaxTotal(1);
+            poolConfig.setMaxWaitMillis(MAX_WAIT_MILLIS);
+            //连续失败一次即熔断
+            nodes.add(new FtpEndpointNode("127.0.0.1:" + server.getPort(),
+                    new GenericObjectPool<>(new FtpClientPooledObjectFactory(ftpProperties), poolConfig), 1, 1, 60000));
+        }
+        pool = new LoadBalancedFtpClientPool(nodes, LoadBalancePolicy.ROUND_ROBIN);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        pool.close();
+        for (EmbeddedFtpServer server : servers) {
+            server.stop();
+        }
+    }
+
+    @Test
+    void exhaustedNodeIsSkippedWithoutWaiting() throws Exception {
+        RemoteFileClient first = pool.borrowObject();
+        //轮询到下一个服务器后归还，下一次借用时轮询顺序又从已耗尽的服务器开始
+        pool.returnObject(pool.borrowObject());
+        long startTime = System.currentTimeMillis();
+        RemoteFileClient second = pool.borrowObject();
+        assertTrue(System.currentTimeMillis() - startTime < MAX_WAIT_MILLIS, "在耗尽的服务器上等待了");
+        assertNotEquals(pool.endpointOf(first), pool.endpointOf(second));
+        //两个服务器都耗尽时按最大等待时间等待后失败，但不计入失败
+        assertThrows(NoSuchElementException.class, pool::borrowObject);
+        nodes.forEach(node -> assertTrue(node.isAvailable(), node.getName() + "被熔断"));
+        pool.returnObject(first);
+        pool.returnObject(second);
+        assertEquals(2, pool.getNumIdle());
+    }
+
+    @Test
+    void excludedNodeIsNotSelected() throws Exception {
+        String excluded = nodes.get(0).getName();
+        for (int i = 0; i < 4; i++) {
+            RemoteFileClient ftpClient = pool.borrowObject(Collections.singleton(excluded));
+            assertEquals(nodes.get(1).getName(), pool.endpointOf(ftpClient));
+            pool.returnObject(ftpClient);
+        }
+        assertThrows(NoSuchElementException.class, () -> pool.borrowObject(
+                new HashSet<>(Arrays.asList(nodes.get(0).getName(), nodes.get(1).getName()))));
+    }
+}
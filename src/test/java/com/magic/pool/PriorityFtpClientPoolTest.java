@@ -0,0 +1,75 @@
+package com.magic.pool;
+
+import com.magic.embedded.EmbeddedFtpServer;
+import com.magic.factory.FtpClientPooledObjectFactory;
+import com.magic.factory.RemoteFileClient;
+import com.magic.properties.FtpProperties;
+import org.apache.commons.pool2.impl.AbandonedConfig;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 按优先级借用的连接池的测试，被包装的连接池回收废弃连接后许可被释放，借用者之后再归还时忽略
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname PriorityFtpClientPoolTest
+ * @date 2021/7/14 : 15:20
+ */
+class PriorityFtpClientPoolTest {
+
+    private EmbeddedFtpServer server;
+
+    private GenericObjectPool<RemoteFileClient> delegate;
+
+    private PriorityFtpClientPool pool;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new EmbeddedFtpServer();
+        server.start();
+        FtpProperties ftpProperties = new FtpProperties();
+        ftpProperties.setIp("127.0.0.1");
+        ftpProperties.setPort(String.valueOf(server.getPort()));
+        ftpProperties.setUsername(EmbeddedFtpServer.USERNAME);
+        ftpProperties.setPassword(EmbeddedFtpServer.PASSWORD);
+        FtpClientPooledObjectFactory factory = new FtpClientPooledObjectFactory(ftpProperties);
+        GenericObjectPoolConfig<RemoteFileClient> poolConfig = new GenericObjectPoolConfig<>();
+        poolConfig.setMaxTotal(1);
+        poolConfig.setTimeBetweenEvictionRunsMillis(100);
+        //借出超过1秒即作为废弃连接回收，不启用看门狗
+        AbandonedConfig abandonedConfig = new AbandonedConfig();
+        abandonedConfig.setRemoveAbandonedTimeout(1);
+        abandonedConfig.setRemoveAbandonedOnMaintenance(true);
+        delegate = new GenericObjectPool<>(factory, poolConfig, abandonedConfig);
+        pool = new PriorityFtpClientPool(delegate, 1, 5000);
+        factory.setAbandonedListener(pool::abandoned);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        pool.close();
+        server.stop();
+    }
+
+    @Test
+    void abandonedClientReleasesPermit() throws Exception {
+        RemoteFileClient abandoned = pool.borrowObject();
+        //许可在废弃连接被回收后释放，否则等待5秒后借用失败
+        RemoteFileClient ftpClient = pool.borrowObject();
+        assertNotSame(abandoned, ftpClient);
+        assertEquals(1, delegate.getDestroyedCount());
+        //借用者之后再归还被回收的连接时忽略
+        pool.returnObject(abandoned);
+        pool.returnObject(ftpClient);
+        assertTrue(pool.getBorrowed().isEmpty());
+        assertEquals(1, pool.getNumIdle());
+    }
+}
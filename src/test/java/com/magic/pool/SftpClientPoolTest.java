@@ -0,0 +1,108 @@
+package com.magic.pool;
+
+import com.magic.embedded.EmbeddedFtpServer;
+import com.magic.embedded.EmbeddedSftpServer;
+import com.magic.factory.FtpClientPooledObjectFactory;
+import com.magic.factory.RemoteFileClient;
+import com.magic.properties.FtpProperties;
+import com.magic.support.FtpTransport;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * sftp客户端经过多服务器连接池、优先级排队和传输看门狗的测试，一个服务器停止时改用其他服务器，
+ * 停滞的sftp连接被看门狗中止并回收，许可释放后可以再借用
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname SftpClientPoolTest
+ * @date 2021/7/14 : 19:40
+ */
+class SftpClientPoolTest {
+
+    //没有进展超过该时间（毫秒）视为停滞
+    private static final long STALL_TIMEOUT_MILLIS = 200;
+
+    private final List<EmbeddedSftpServer> servers = new ArrayList<>();
+
+    private final List<FtpEndpointNode> nodes = new ArrayList<>();
+
+    private PriorityFtpClientPool pool;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            EmbeddedSftpServer server = new EmbeddedSftpServer();
+            server.start();
+            servers.add(server);
+            FtpProperties ftpProperties = new FtpProperties();
+            ftpProperties.setIp("127.0.0.1");
+            ftpProperties.setPort(String.valueOf(server.getPort()));
+            ftpProperties.setUsername(EmbeddedFtpServer.USERNAME);
+            ftpProperties.setPassword(EmbeddedFtpServer.PASSWORD);
+            ftpProperties.setTransport(FtpTransport.SFTP);
+            ftpProperties.getSftp().setKnownHosts(server.writeKnownHosts().toString());
+            GenericObjectPoolConfig<RemoteFileClient> poolConfig = new GenericObjectPoolConfig<>();
+            poolConfig.setMaxTotal(1);
+            poolConfig.setMaxWaitMillis(3000);
+            nodes.add(new FtpEndpointNode("127.0.0.1:" + server.getPort(),
+                    new GenericObjectPool<>(new FtpClientPooledObjectFactory(ftpProperties), poolConfig), 1, 1, 60000));
+        }
+        //只有一个许可，停滞的连接不释放许可时无法再借用
+        pool = new PriorityFtpClientPool(new LoadBalancedFtpClientPool(nodes, LoadBalancePolicy.ROUND_ROBIN), 1, 3000);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        pool.close();
+        for (EmbeddedSftpServer server : servers) {
+            server.stop();
+        }
+    }
+
+    @Test
+    void stoppedServerIsSkipped() throws Exception {
+        servers.get(0).stop();
+        for (int i = 0; i < 2; i++) {
+            RemoteFileClient ftpClient = pool.borrowObject();
+            assertEquals(nodes.get(1).getName(), pool.endpointOf(ftpClient));
+            assertTrue(ftpClient.sendNoOp());
+            pool.returnObject(ftpClient);
+        }
+        assertFalse(nodes.get(0).isAvailable());
+        //停止的服务器的目录已删除，避免关闭时重复删除
+        servers.remove(0);
+    }
+
+    @Test
+    void stalledClientIsAbortedAndReclaimed() throws Exception {
+        StallWatchdog watchdog = new StallWatchdog(pool, STALL_TIMEOUT_MILLIS);
+        RemoteFileClient stalled = pool.borrowObject();
+        Thread.sleep(STALL_TIMEOUT_MILLIS * 2);
+        watchdog.run();
+        assertEquals(1, watchdog.getNumAborted());
+        assertFalse(stalled.isConnected());
+        //中止后仍未归还的连接在下一次检查时回收，许可释放
+        watchdog.run();
+        assertEquals(0, watchdog.getNumAborted());
+        assertTrue(pool.getBorrowed().isEmpty());
+        RemoteFileClient ftpClient = pool.borrowObject();
+        assertNotSame(stalled, ftpClient);
+        assertTrue(ftpClient.sendNoOp());
+        pool.returnObject(ftpClient);
+        //借用者之后再归还被回收的连接时忽略
+        pool.returnObject(stalled);
+        assertEquals(1, pool.getNumIdle());
+    }
+}
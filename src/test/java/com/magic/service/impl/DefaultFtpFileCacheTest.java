@@ -0,0 +1,63 @@
+package com.magic.service.impl;
+
+import com.magic.support.FtpMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 文件缓存的测试，命中后打开的文件被其他下载淘汰时仍可读完
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname DefaultFtpFileCacheTest
+ * @date 2021/7/15 : 15:00
+ */
+class DefaultFtpFileCacheTest extends EmbeddedFtpTestSupport {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private Path cacheDirectory;
+
+    private DefaultFtpFileCache cache;
+
+    @BeforeEach
+    void prepare() throws IOException {
+        Path remote = Files.createDirectories(server.getHome().resolve("cache"));
+        Files.write(remote.resolve("a.bin"), new byte[]{1, 2, 3});
+        Files.write(remote.resolve("b.bin"), new byte[]{4, 5, 6});
+        cacheDirectory = Files.createTempDirectory("ftp-cache");
+        //只能缓存一个文件，下载第二个文件时淘汰第一个
+        cache = new DefaultFtpFileCache(processor, cacheDirectory.toString(), 1024, 1);
+        cache.setMetrics(new FtpMetrics(registry));
+    }
+
+    @AfterEach
+    void cleanUp() throws IOException {
+        cache.clear();
+        Files.delete(cacheDirectory);
+    }
+
+    @Test
+    void evictedFileStaysReadable() throws IOException {
+        cache.retrieveFileStream("/cache", "a.bin").close();
+        try (InputStream in = cache.retrieveFileStream("/cache", "a.bin")) {
+            cache.retrieveFileStream("/cache", "b.bin").close();
+            assertEquals(1, cache.size());
+            assertArrayEquals(new byte[]{1, 2, 3}, StreamUtils.copyToByteArray(in));
+        }
+        assertEquals(1, registry.get("ftp.cache.requests").tag("result", "hit").counter().count());
+        assertEquals(2, registry.get("ftp.cache.requests").tag("result", "miss").counter().count());
+        assertEquals(1, registry.get("ftp.cache.evictions").counter().count());
+    }
+}
@@ -0,0 +1,83 @@
+package com.magic.service.impl;
+
+import com.magic.embedded.EmbeddedFtpServer;
+import org.apache.ftpserver.ftplet.DataConnection;
+import org.apache.ftpserver.ftplet.DefaultFtpReply;
+import org.apache.ftpserver.ftplet.DefaultFtplet;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.ftplet.FtpSession;
+import org.apache.ftpserver.ftplet.FtpletResult;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 递归删除目录的测试，服务器按MLSD返回以完整路径命名的cdir/pdir条目和符号链接条目，
+ * 删除时跳过cdir/pdir，符号链接按文件删除，不会删到目录之外
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname DefaultFtpProcessorDeleteDirectoryTest
+ * @date 2021/7/14 : 17:10
+ */
+class DefaultFtpProcessorDeleteDirectoryTest extends EmbeddedFtpTestSupport {
+
+    //服务器对/tree返回的MLSD列表，pdir条目指向根目录，符号链接指向/keep
+    private static final String TREE_LISTING = "type=cdir;perm=flcdmpe; /tree\r\n"
+            + "type=pdir;perm=flcdmpe; /\r\n"
+            + "type=file;size=1;perm=adfrw; a.txt\r\n"
+            + "type=dir;perm=flcdmpe; sub\r\n"
+            + "type=OS.unix=slink:/keep;perm=adfrw; link\r\n";
+
+    @Override
+    protected void configureServer(EmbeddedFtpServer server) {
+        server.addFtplet("mlsd", new DefaultFtplet() {
+            @Override
+            public FtpletResult beforeCommand(FtpSession session, FtpRequest request) throws FtpException, IOException {
+                if ("FEAT".equals(request.getCommand())) {
+                    //内置服务器的FEAT不包含MLSD
+                    session.write(new DefaultFtpReply(FtpReply.REPLY_211_SYSTEM_STATUS_REPLY,
+                            new String[]{"Extensions supported", " MLST Size;Modify;Type;Perm;", " MLSD", "End"}));
+                    return FtpletResult.SKIP;
+                }
+                if ("MLSD".equals(request.getCommand()) && "/tree".equals(request.getArgument())) {
+                    session.write(new DefaultFtpReply(FtpReply.REPLY_150_FILE_STATUS_OKAY, "Opening data connection"));
+                    try {
+                        DataConnection connection = session.getDataConnection().openConnection();
+                        connection.transferToClient(session, TREE_LISTING);
+                    } catch (Exception e) {
+                        throw new IOException(e);
+                    } finally {
+                        session.getDataConnection().closeDataConnection();
+                    }
+                    session.write(new DefaultFtpReply(FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "Transfer complete"));
+                    return FtpletResult.SKIP;
+                }
+                return FtpletResult.DEFAULT;
+            }
+        });
+    }
+
+    @Test
+    void skipsSelfAndParentAndDeletesLinksAsFiles() throws IOException {
+        Path home = server.getHome();
+        Files.createDirectories(home.resolve("tree").resolve("sub"));
+        Files.write(home.resolve("tree").resolve("a.txt"), new byte[1]);
+        Files.write(home.resolve("tree").resolve("sub").resolve("b.txt"), new byte[1]);
+        //服务器上的符号链接在本地用普通文件代替，列表中标记为符号链接
+        Files.write(home.resolve("tree").resolve("link"), new byte[1]);
+        Files.createDirectories(home.resolve("keep"));
+        Files.write(home.resolve("keep").resolve("c.txt"), new byte[1]);
+
+        assertTrue(processor.deleteDirectory("/tree"));
+        assertFalse(Files.exists(home.resolve("tree")));
+        assertTrue(Files.exists(home.resolve("keep").resolve("c.txt")));
+    }
+}
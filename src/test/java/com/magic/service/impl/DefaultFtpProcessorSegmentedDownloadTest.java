@@ -0,0 +1,106 @@
+package com.magic.service.impl;
+
+import com.magic.embedded.EmbeddedFtpServer;
+import com.magic.properties.FtpProperties;
+import org.apache.ftpserver.ftplet.DefaultFtplet;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.ftplet.FtpSession;
+import org.apache.ftpserver.ftplet.FtpletResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 分段下载的测试，任一分段失败时其余分段停止，所有连接都归还或作废，并删除预先分配的本地文件
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname DefaultFtpProcessorSegmentedDownloadTest
+ * @date 2021/7/13 : 14:20
+ */
+class DefaultFtpProcessorSegmentedDownloadTest extends EmbeddedFtpTestSupport {
+
+    private static final int SEGMENT_SIZE = 1024 * 1024;
+
+    private ExecutorService executor;
+
+    private Path localDirectory;
+
+    private byte[] content;
+
+    //是否模拟第三个分段下载失败
+    private volatile boolean failSegment = false;
+
+    @Override
+    protected void configureServer(EmbeddedFtpServer server) {
+        //从第三个分段的偏移量开始下载时服务器断开连接
+        server.addFtplet("failSegment", new DefaultFtplet() {
+            @Override
+            public FtpletResult beforeCommand(FtpSession session, FtpRequest request) {
+                if ("REST".equals(request.getCommand())) {
+                    session.setAttribute("fail", failSegment && String.valueOf(2 * SEGMENT_SIZE).equals(request.getArgument()));
+                } else if ("RETR".equals(request.getCommand()) && Boolean.TRUE.equals(session.getAttribute("fail"))) {
+                    return FtpletResult.DISCONNECT;
+                }
+                return FtpletResult.DEFAULT;
+            }
+        });
+    }
+
+    @Override
+    protected void configure(FtpProperties ftpProperties) {
+        ftpProperties.setSegmentCount(4);
+        ftpProperties.setMinSegmentSize((long) SEGMENT_SIZE);
+    }
+
+    @BeforeEach
+    void prepare() throws IOException {
+        executor = Executors.newFixedThreadPool(4);
+        processor.setTransferExecutor(executor);
+        localDirectory = Files.createTempDirectory("ftp-segmented");
+        content = new byte[4 * SEGMENT_SIZE];
+        new Random(1).nextBytes(content);
+        Files.createDirectories(server.getHome().resolve("download"));
+        Files.write(server.getHome().resolve("download").resolve("file.bin"), content);
+    }
+
+    @AfterEach
+    void cleanUp() throws IOException {
+        executor.shutdownNow();
+        Files.deleteIfExists(localDirectory.resolve("file.bin"));
+        Files.delete(localDirectory);
+    }
+
+    @Test
+    void downloadsAllSegments() throws IOException {
+        assertTrue(processor.downloadFileSegmented("/download", "file.bin", localDirectory.toString()));
+        assertArrayEquals(content, Files.readAllBytes(localDirectory.resolve("file.bin")));
+        assertEquals(0, pool.getNumActive());
+        //提前结束的分段中止传输后归还连接，不销毁
+        assertEquals(0, pool.getDestroyedCount());
+    }
+
+    @Test
+    void failedSegmentRemovesLocalFile() {
+        failSegment = true;
+        assertFalse(processor.downloadFileSegmented("/download", "file.bin", localDirectory.toString()));
+        assertFalse(new File(localDirectory.toFile(), "file.bin").exists());
+        assertEquals(0, pool.getNumActive());
+        //失败后连接池仍可正常使用
+        failSegment = false;
+        assertTrue(processor.downloadFileSegmented("/download", "file.bin", localDirectory.toString()));
+    }
+}
@@ -0,0 +1,80 @@
+package com.magic.service.impl;
+
+import com.magic.embedded.EmbeddedFtpServer;
+import com.magic.properties.FtpProperties;
+import org.apache.ftpserver.ftplet.DefaultFtplet;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.ftplet.FtpSession;
+import org.apache.ftpserver.ftplet.FtpletResult;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 目录缓存和会话状态的测试，在服务器端统计同一个连接上重复上传时收到的命令数
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname DefaultFtpProcessorSessionTest
+ * @date 2021/7/13 : 15:30
+ */
+class DefaultFtpProcessorSessionTest extends EmbeddedFtpTestSupport {
+
+    private static final int UPLOADS = 10;
+
+    //服务器收到的各命令数
+    private final Map<String, AtomicInteger> commands = new ConcurrentHashMap<>();
+
+    @Override
+    protected void configureServer(EmbeddedFtpServer server) {
+        server.addFtplet("countCommands", new DefaultFtplet() {
+            @Override
+            public FtpletResult beforeCommand(FtpSession session, FtpRequest request) {
+                commands.computeIfAbsent(request.getCommand(), command -> new AtomicInteger()).incrementAndGet();
+                return FtpletResult.DEFAULT;
+            }
+        });
+    }
+
+    @Override
+    protected void configure(FtpProperties ftpProperties) {
+        //只有一个连接，所有上传使用同一个会话
+        ftpProperties.getPool().setMaxTotal(1);
+    }
+
+    /**
+     * 第一次上传创建目录后，之后重复上传到同一目录总共最多一次CWD，不再发送TYPE、MKD和列目录的命令
+     */
+    @Test
+    void repeatedUploadsReuseSession() {
+        upload("first.txt");
+        assertTrue(count("MKD") > 0);
+        commands.clear();
+        for (int i = 0; i < UPLOADS; i++) {
+            upload("file" + i + ".txt");
+        }
+        assertEquals(UPLOADS, count("STOR"));
+        assertTrue(count("CWD") <= 1, "CWD：" + count("CWD"));
+        assertEquals(0, count("TYPE"));
+        assertEquals(0, count("MKD"));
+        assertEquals(0, count("LIST") + count("MLSD") + count("NLST"));
+        assertEquals(1, pool.getCreatedCount());
+    }
+
+    private void upload(String fileName) {
+        assertTrue(processor.uploadFile("/a/b/c", fileName,
+                new ByteArrayInputStream(fileName.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    private int count(String command) {
+        AtomicInteger count = commands.get(command);
+        return null == count ? 0 : count.get();
+    }
+}
@@ -0,0 +1,130 @@
+package com.magic.service.impl;
+
+import com.magic.embedded.EmbeddedFtpServer;
+import com.magic.embedded.EmbeddedSftpServer;
+import com.magic.factory.FtpClientPooledObjectFactory;
+import com.magic.factory.RemoteFileClient;
+import com.magic.properties.FtpProperties;
+import com.magic.support.FtpTransport;
+import com.magic.support.RemoteFile;
+import com.magic.support.RemoteFileStat;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * sftp经过默认处理器的测试，上传、下载、列表、状态、重命名、递归删除和分段下载都与ftp使用同一套逻辑
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname DefaultFtpProcessorSftpTest
+ * @date 2021/7/14 : 19:10
+ */
+class DefaultFtpProcessorSftpTest {
+
+    private static final int SEGMENT_SIZE = 1024 * 1024;
+
+    private EmbeddedSftpServer server;
+
+    private GenericObjectPool<RemoteFileClient> pool;
+
+    private DefaultFtpProcessor processor;
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new EmbeddedSftpServer();
+        server.start();
+        FtpProperties ftpProperties = new FtpProperties();
+        ftpProperties.setIp("127.0.0.1");
+        ftpProperties.setPort(String.valueOf(server.getPort()));
+        ftpProperties.setUsername(EmbeddedFtpServer.USERNAME);
+        ftpProperties.setPassword(EmbeddedFtpServer.PASSWORD);
+        ftpProperties.setTransport(FtpTransport.SFTP);
+        ftpProperties.getSftp().setKnownHosts(server.writeKnownHosts().toString());
+        ftpProperties.setSegmentCount(4);
+        ftpProperties.setMinSegmentSize((long) SEGMENT_SIZE);
+        GenericObjectPoolConfig<RemoteFileClient> poolConfig = new GenericObjectPoolConfig<>();
+        poolConfig.setMaxTotal(4);
+        poolConfig.setMaxWaitMillis(5000);
+        poolConfig.setTestOnBorrow(true);
+        pool = new GenericObjectPool<>(new FtpClientPooledObjectFactory(ftpProperties), poolConfig);
+        executor = Executors.newFixedThreadPool(4);
+        processor = new DefaultFtpProcessor(ftpProperties);
+        processor.setFtpClientPool(pool);
+        processor.setTransferExecutor(executor);
+        processor.setHasInit(true);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        executor.shutdownNow();
+        pool.close();
+        server.stop();
+    }
+
+    @Test
+    void managesFilesThroughSharedProcessor() throws Exception {
+        byte[] content = "sftp content".getBytes("UTF-8");
+        assertTrue(processor.uploadFile("/upload/sub", "a.txt", new ByteArrayInputStream(content)));
+        assertArrayEquals(content, Files.readAllBytes(server.getHome().resolve("upload/sub/a.txt")));
+
+        RemoteFileStat stat = processor.statFile("/upload/sub", "a.txt");
+        assertEquals(content.length, stat.getSize());
+        assertNull(processor.statFile("/upload/sub", "missing.txt"));
+        assertTrue(processor.existFile("/upload/sub/a.txt"));
+        assertFalse(processor.existFile("/upload/sub/missing.txt"));
+        try (Stream<RemoteFile> files = processor.listFiles("/upload")) {
+            RemoteFile sub = files.filter(file -> "sub".equals(file.getName())).findFirst().orElse(null);
+            assertTrue(null != sub && sub.isDirectory());
+        }
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        assertTrue(processor.downloadFile("/upload/sub", "a.txt", Channels.newChannel(outputStream)));
+        assertArrayEquals(content, outputStream.toByteArray());
+
+        assertTrue(processor.rename("/upload/sub/a.txt", "/upload/sub/b.txt"));
+        assertEquals("b.txt", processor.retrieveFileNames("/upload/sub").stream().collect(Collectors.joining(",")));
+
+        assertTrue(processor.deleteDirectory("/upload"));
+        assertFalse(Files.exists(server.getHome().resolve("upload")));
+        assertEquals(0, pool.getNumActive());
+    }
+
+    @Test
+    void downloadsAllSegments() throws Exception {
+        byte[] content = new byte[4 * SEGMENT_SIZE];
+        new Random(1).nextBytes(content);
+        Files.createDirectories(server.getHome().resolve("download"));
+        Files.write(server.getHome().resolve("download").resolve("file.bin"), content);
+        Path localDirectory = Files.createTempDirectory("sftp-segmented");
+        try {
+            assertTrue(processor.downloadFileSegmented("/download", "file.bin", localDirectory.toString()));
+            assertArrayEquals(content, Files.readAllBytes(localDirectory.resolve("file.bin")));
+            assertEquals(0, pool.getNumActive());
+        } finally {
+            Files.deleteIfExists(localDirectory.resolve("file.bin"));
+            Files.delete(localDirectory);
+        }
+    }
+}
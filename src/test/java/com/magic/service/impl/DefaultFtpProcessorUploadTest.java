@@ -0,0 +1,122 @@
+package com.magic.service.impl;
+
+import com.magic.properties.FtpProperties;
+import com.magic.support.TransferResult;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 流式上传的测试，上传时堆内存的占用不随文件大小增长，传输中途出错的连接不再归还连接池
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname DefaultFtpProcessorUploadTest
+ * @date 2021/7/13 : 10:30
+ */
+class DefaultFtpProcessorUploadTest extends EmbeddedFtpTestSupport {
+
+    private static final long MB = 1024 * 1024;
+
+    @Override
+    protected void configure(FtpProperties ftpProperties) {
+        ftpProperties.setBufferSize(64 * 1024);
+    }
+
+    /**
+     * 上传线程分配的内存远小于文件大小，且16MB和256MB的文件分配的内存基本相同
+     */
+    @Test
+    void uploadAllocatesIndependentOfFileSize() throws IOException {
+        //预热，排除建立连接和加载类的分配
+        upload("warmup.bin", MB);
+        long small = upload("small.bin", 16 * MB);
+        long large = upload("large.bin", 256 * MB);
+        assertTrue(large < 8 * MB, "上传256MB分配了" + large + "字节");
+        assertTrue(large - small < 4 * MB, "16MB分配" + small + "字节，256MB分配" + large + "字节");
+    }
+
+    /**
+     * 输入流中途出错时作废连接，下一次上传使用新的连接
+     */
+    @Test
+    void failedTransferInvalidatesClient() throws IOException {
+        TransferResult result = processor.uploadFileWithResult("/upload", "broken.bin", new PatternInputStream(4 * MB) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (getRemaining() < 2 * MB) {
+                    throw new IOException("读取本地文件出错");
+                }
+                return super.read(b, off, len);
+            }
+        });
+        assertFalse(result.isSuccess());
+        assertEquals(0, pool.getNumActive());
+        assertEquals(0, pool.getNumIdle());
+        assertEquals(1, pool.getDestroyedCount());
+        upload("next.bin", MB);
+        assertEquals(1, pool.getNumIdle());
+    }
+
+    /**
+     * 上传指定大小的文件
+     *
+     * @return 上传线程分配的字节数
+     */
+    private long upload(String fileName, long size) throws IOException {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        TransferResult result = processor.uploadFileWithResult("/upload", fileName, new PatternInputStream(size));
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+        assertTrue(result.isSuccess(), result.getMessage());
+        Path file = server.getHome().resolve("upload").resolve(fileName);
+        assertEquals(size, Files.size(file));
+        return allocated;
+    }
+
+    /**
+     * 按固定规律生成数据的输入流，不在内存中保存文件内容
+     */
+    private static class PatternInputStream extends InputStream {
+
+        private long remaining;
+
+        PatternInputStream(long size) {
+            this.remaining = size;
+        }
+
+        long getRemaining() {
+            return remaining;
+        }
+
+        @Override
+        public int read() {
+            if (remaining <= 0) {
+                return -1;
+            }
+            return (int) (remaining-- & 0xFF);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = (int) Math.min(len, remaining);
+            for (int i = 0; i < n; i++) {
+                b[off + i] = (byte) (remaining - i);
+            }
+            remaining -= n;
+            return n;
+        }
+    }
+}
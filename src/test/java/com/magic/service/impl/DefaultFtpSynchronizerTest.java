@@ -0,0 +1,102 @@
+package com.magic.service.impl;
+
+import com.magic.embedded.EmbeddedFtpServer;
+import com.magic.support.SyncReport;
+import org.apache.ftpserver.ftplet.DataConnection;
+import org.apache.ftpserver.ftplet.DefaultFtpReply;
+import org.apache.ftpserver.ftplet.DefaultFtplet;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.FtpReply;
+import org.apache.ftpserver.ftplet.FtpRequest;
+import org.apache.ftpserver.ftplet.FtpSession;
+import org.apache.ftpserver.ftplet.FtpletResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 目录同步的测试，服务器按MLSD返回以完整路径命名的cdir/pdir条目时，扫描不会递归到同步目录之外
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname DefaultFtpSynchronizerTest
+ * @date 2021/7/15 : 10:20
+ */
+class DefaultFtpSynchronizerTest extends EmbeddedFtpTestSupport {
+
+    //服务器对/tree返回的MLSD列表，pdir条目指向根目录
+    private static final String TREE_LISTING = "type=cdir;perm=flcdmpe; /tree\r\n"
+            + "type=pdir;perm=flcdmpe; /\r\n"
+            + "type=file;size=1;modify=20210715000000;perm=adfrw; a.txt\r\n"
+            + "type=dir;perm=flcdmpe; sub\r\n";
+
+    private ForkJoinPool workerPool;
+
+    private DefaultFtpSynchronizer synchronizer;
+
+    @Override
+    protected void configureServer(EmbeddedFtpServer server) {
+        server.addFtplet("mlsd", new DefaultFtplet() {
+            @Override
+            public FtpletResult beforeCommand(FtpSession session, FtpRequest request) throws FtpException, IOException {
+                if ("FEAT".equals(request.getCommand())) {
+                    //内置服务器的FEAT不包含MLSD
+                    session.write(new DefaultFtpReply(FtpReply.REPLY_211_SYSTEM_STATUS_REPLY,
+                            new String[]{"Extensions supported", " MLST Size;Modify;Type;Perm;", " MLSD", "End"}));
+                    return FtpletResult.SKIP;
+                }
+                if ("MLSD".equals(request.getCommand()) && Arrays.asList("/tree", "/tree/").contains(request.getArgument())) {
+                    session.write(new DefaultFtpReply(FtpReply.REPLY_150_FILE_STATUS_OKAY, "Opening data connection"));
+                    try {
+                        DataConnection connection = session.getDataConnection().openConnection();
+                        connection.transferToClient(session, TREE_LISTING);
+                    } catch (Exception e) {
+                        throw new IOException(e);
+                    } finally {
+                        session.getDataConnection().closeDataConnection();
+                    }
+                    session.write(new DefaultFtpReply(FtpReply.REPLY_226_CLOSING_DATA_CONNECTION, "Transfer complete"));
+                    return FtpletResult.SKIP;
+                }
+                return FtpletResult.DEFAULT;
+            }
+        });
+    }
+
+    @BeforeEach
+    void prepare() throws IOException {
+        workerPool = new ForkJoinPool(2);
+        synchronizer = new DefaultFtpSynchronizer(processor, workerPool);
+        Path home = server.getHome();
+        Files.createDirectories(home.resolve("tree").resolve("sub"));
+        Files.write(home.resolve("tree").resolve("a.txt"), new byte[1]);
+        Files.write(home.resolve("tree").resolve("sub").resolve("b.txt"), new byte[1]);
+        //同步目录之外的文件，递归到根目录时会被计入
+        Files.write(home.resolve("outside.txt"), new byte[1]);
+    }
+
+    @AfterEach
+    void shutdown() {
+        workerPool.shutdownNow();
+    }
+
+    @Test
+    void scanSkipsSelfAndParent() throws IOException {
+        Path localRoot = Files.createTempDirectory("ftp-sync");
+        try {
+            SyncReport report = synchronizer.download("/tree", localRoot.toString(), true);
+            assertEquals(2, report.getRemoteFiles());
+            assertEquals(Arrays.asList("a.txt", "sub/b.txt"), report.getChangedFiles());
+        } finally {
+            Files.delete(localRoot);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.magic.service.impl;
+
+import com.magic.embedded.EmbeddedFtpServer;
+import com.magic.factory.FtpClientPooledObjectFactory;
+import com.magic.factory.RemoteFileClient;
+import com.magic.properties.FtpProperties;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+
+/**
+ * 使用进程内ftp服务器的测试的公共部分，每个测试方法启动一个服务器，并按与FtpConfig相同的方式创建连接池和处理器
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname EmbeddedFtpTestSupport
+ * @date 2021/7/13 : 10:10
+ */
+abstract class EmbeddedFtpTestSupport {
+
+    protected EmbeddedFtpServer server;
+
+    protected FtpProperties ftpProperties;
+
+    protected GenericObjectPool<RemoteFileClient> pool;
+
+    protected DefaultFtpProcessor processor;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = new EmbeddedFtpServer();
+        configureServer(server);
+        server.start();
+        ftpProperties = new FtpProperties();
+        ftpProperties.setIp("127.0.0.1");
+        ftpProperties.setPort(String.valueOf(server.getPort()));
+        ftpProperties.setUsername(EmbeddedFtpServer.USERNAME);
+        ftpProperties.setPassword(EmbeddedFtpServer.PASSWORD);
+        configure(ftpProperties);
+        GenericObjectPoolConfig<RemoteFileClient> poolConfig = new GenericObjectPoolConfig<>();
+        poolConfig.setMaxTotal(ftpProperties.getPool().getMaxTotal());
+        poolConfig.setMaxWaitMillis(5000);
+        poolConfig.setTestOnBorrow(true);
+        pool = new GenericObjectPool<>(newFactory(ftpProperties), poolConfig);
+        processor = new DefaultFtpProcessor(ftpProperties);
+        processor.setFtpClientPool(pool);
+        processor.setHasInit(true);
+    }
+
+    @AfterEach
+    void stopServer() throws Exception {
+        pool.close();
+        server.stop();
+    }
+
+    /**
+     * 启动服务器之前添加ftplet等
+     *
+     * @param server 进程内ftp服务器
+     */
+    protected void configureServer(EmbeddedFtpServer server) {
+    }
+
+    /**
+     * 创建连接池之前调整配置
+     *
+     * @param ftpProperties ftp配置
+     */
+    protected void configure(FtpProperties ftpProperties) {
+    }
+
+    protected FtpClientPooledObjectFactory newFactory(FtpProperties ftpProperties) {
+        return new FtpClientPooledObjectFactory(ftpProperties);
+    }
+}
@@ -0,0 +1,71 @@
+package com.magic.support;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 传输限速的测试，未单独配置的租户各自限速，令牌桶数量不超过上限
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname BandwidthLimiterTest
+ * @date 2021/7/14 : 9:40
+ */
+class BandwidthLimiterTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void unknownTenantBucketsAreBounded() throws IOException {
+        BandwidthLimiter limiter = new BandwidthLimiter(0, 0, 0, 100);
+        limiter.setTenantRate("batch", 1024);
+        for (int i = 0; i < 10000; i++) {
+            limiter.acquire("127.0.0.1:21", "tenant-" + i, 1);
+        }
+        Map<String, Object> snapshot = limiter.snapshot();
+        assertEquals(100, snapshot.get("defaultTenantBuckets"));
+        Map<String, Long> tenants = (Map<String, Long>) snapshot.get("tenants");
+        assertEquals(1, tenants.size());
+        assertEquals(1024L, (long) tenants.get("batch"));
+    }
+
+    @Test
+    void unknownTenantsDoNotShareBucket() throws Exception {
+        BandwidthLimiter limiter = new BandwidthLimiter(0, 0, 1024, 100);
+        //租户a透支几秒的令牌，共用令牌桶时租户b也要等待
+        limiter.acquire("127.0.0.1:21", "a", 1);
+        Thread overdraft = new Thread(() -> {
+            try {
+                limiter.acquire("127.0.0.1:21", "a", 4096);
+            } catch (IOException ignored) {
+            }
+        });
+        overdraft.start();
+        try {
+            while (overdraft.getState() != Thread.State.TIMED_WAITING) {
+                Thread.sleep(10);
+            }
+            long start = System.nanoTime();
+            limiter.acquire("127.0.0.1:21", "b", 1);
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+        } finally {
+            overdraft.interrupt();
+            overdraft.join();
+        }
+    }
+
+    @Test
+    void defaultTenantRateDoesNotChangeConfiguredTenants() {
+        BandwidthLimiter limiter = new BandwidthLimiter(0, 0, 2048, 100);
+        limiter.setTenantRate("batch", 1024);
+        limiter.setDefaultTenantRate(4096);
+        Map<String, Object> snapshot = limiter.snapshot();
+        assertEquals(4096L, snapshot.get("defaultTenant"));
+        assertEquals(1024L, ((Map<?, ?>) snapshot.get("tenants")).get("batch"));
+    }
+}
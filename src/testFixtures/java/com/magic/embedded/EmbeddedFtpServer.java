@@ -0,0 +1,154 @@
+package com.magic.embedded;
+
+import com.magic.support.FtpTransport;
+import org.apache.ftpserver.ConnectionConfigFactory;
+import org.apache.ftpserver.FtpServer;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.ftplet.FtpException;
+import org.apache.ftpserver.ftplet.Ftplet;
+import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.listener.ListenerFactory;
+import org.apache.ftpserver.ssl.SslConfigurationFactory;
+import org.apache.ftpserver.usermanager.PropertiesUserManagerFactory;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.ftpserver.usermanager.impl.WritePermission;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * 测试和基准测试使用的进程内ftp服务器，监听本机随机端口，根目录为临时目录，停止时删除，
+ * ftps使用启动时通过keytool生成的自签名证书，客户端需要信任所有证书
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname EmbeddedFtpServer
+ * @date 2021/6/21 : 9:40
+ */
+public class EmbeddedFtpServer {
+
+    public static final String USERNAME = "benchmark";
+    public static final String PASSWORD = "benchmark";
+
+    //ftp根目录
+    private final Path home;
+    //监听端口
+    private final int port;
+
+    //ftps证书，明文ftp时为null
+    private final Path keystore;
+
+    private final FtpServerFactory serverFactory;
+
+    //启动时创建
+    private FtpServer server;
+
+    public EmbeddedFtpServer() throws IOException, FtpException {
+        this(FtpTransport.FTP);
+    }
+
+    /**
+     * @param transport 传输协议，只支持ftp和ftps
+     */
+    public EmbeddedFtpServer(FtpTransport transport) throws IOException, FtpException {
+        this.home = Files.createTempDirectory("ftp-benchmark");
+        this.port = freePort();
+        this.serverFactory = new FtpServerFactory();
+        ListenerFactory listenerFactory = new ListenerFactory();
+        listenerFactory.setServerAddress("127.0.0.1");
+        listenerFactory.setPort(port);
+        if (transport.isFtps()) {
+            keystore = generateKeystore();
+            SslConfigurationFactory sslConfigurationFactory = new SslConfigurationFactory();
+            sslConfigurationFactory.setKeystoreFile(keystore.toFile());
+            sslConfigurationFactory.setKeystorePassword(PASSWORD);
+            sslConfigurationFactory.setKeyPassword(PASSWORD);
+            listenerFactory.setSslConfiguration(sslConfigurationFactory.createSslConfiguration());
+            listenerFactory.setImplicitSsl(transport == FtpTransport.FTPS_IMPLICIT);
+        } else {
+            keystore = null;
+        }
+        serverFactory.addListener("default", listenerFactory.createListener());
+        //并发借用连接的基准测试需要较多的同时登录数
+        ConnectionConfigFactory connectionConfigFactory = new ConnectionConfigFactory();
+        connectionConfigFactory.setMaxLogins(256);
+        serverFactory.setConnectionConfig(connectionConfigFactory.createConnectionConfig());
+        BaseUser user = new BaseUser();
+        user.setName(USERNAME);
+        user.setPassword(PASSWORD);
+        user.setHomeDirectory(home.toString());
+        user.setAuthorities(Collections.singletonList(new WritePermission()));
+        UserManager userManager = new PropertiesUserManagerFactory().createUserManager();
+        userManager.save(user);
+        serverFactory.setUserManager(userManager);
+    }
+
+    /**
+     * 添加拦截命令的ftplet，如统计命令数或模拟服务器出错，必须在启动前调用
+     *
+     * @param name   名称
+     * @param ftplet ftplet
+     */
+    public void addFtplet(String name, Ftplet ftplet) {
+        serverFactory.getFtplets().put(name, ftplet);
+    }
+
+    public void start() throws FtpException {
+        server = serverFactory.createServer();
+        server.start();
+    }
+
+    public void stop() throws IOException {
+        server.stop();
+        try (Stream<Path> files = Files.walk(home)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+        if (null != keystore) {
+            Files.deleteIfExists(keystore);
+        }
+    }
+
+    public Path getHome() {
+        return home;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * 使用当前运行时的keytool生成自签名证书
+     */
+    private static Path generateKeystore() throws IOException {
+        Path keystore = Files.createTempFile("ftp-benchmark", ".jks");
+        Files.delete(keystore);
+        Process process = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "keytool").toString(),
+                "-genkeypair", "-alias", "ftp", "-keyalg", "RSA", "-keysize", "2048", "-validity", "1",
+                "-dname", "CN=localhost", "-storetype", "JKS", "-keystore", keystore.toString(),
+                "-storepass", PASSWORD, "-keypass", PASSWORD)
+                .redirectErrorStream(true)
+                .start();
+        try {
+            if (process.waitFor() != 0) {
+                throw new IOException("生成ftps证书失败，keytool退出码：" + process.exitValue());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("生成ftps证书被中断", e);
+        }
+        return keystore;
+    }
+
+    public static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.magic.embedded;
+
+import org.apache.sshd.common.config.keys.PublicKeyEntry;
+import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.sftp.server.SftpSubsystemFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 测试和基准测试使用的进程内sftp服务器，账号与{@link EmbeddedFtpServer}相同，根目录为临时目录，停止时删除
+ *
+ * @author magic_lz
+ * @version 1.0
+ * @classname EmbeddedSftpServer
+ * @date 2021/6/29 : 16:40
+ */
+public class EmbeddedSftpServer {
+
+    //sftp根目录
+    private final Path home;
+    //主机密钥所在的临时目录
+    private final Path keyDirectory;
+    //监听端口
+    private final int port;
+
+    private final SshServer server;
+
+    public EmbeddedSftpServer() throws IOException {
+        this.home = Files.createTempDirectory("sftp-benchmark");
+        this.keyDirectory = Files.createTempDirectory("sftp-benchmark-key");
+        this.port = EmbeddedFtpServer.freePort();
+        server = SshServer.setUpDefaultServer();
+        server.setHost("127.0.0.1");
+        server.setPort(port);
+        server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider(keyDirectory.resolve("host.ser")));
+        server.setPasswordAuthenticator((username, password, session) ->
+                EmbeddedFtpServer.USERNAME.equals(username) && EmbeddedFtpServer.PASSWORD.equals(password));
+        server.setSubsystemFactories(Collections.singletonList(new SftpSubsystemFactory()));
+        server.setFileSystemFactory(new VirtualFileSystemFactory(home));
+    }
+
+    public void start() throws IOException {
+        server.start();
+    }
+
+    public void stop() throws IOException {
+        server.stop(true);
+        for (Path directory : new Path[]{home, keyDirectory}) {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    /**
+     * 把主机公钥写入known_hosts文件，客户端按该文件校验服务器，启动后调用
+     *
+     * @return known_hosts文件
+     */
+    public Path writeKnownHosts() throws IOException, GeneralSecurityException {
+        Path knownHosts = keyDirectory.resolve("known_hosts");
+        List<String> lines = new ArrayList<>();
+        for (KeyPair keyPair : server.getKeyPairProvider().loadKeys(null)) {
+            lines.add("[127.0.0.1]:" + port + " " + PublicKeyEntry.toString(keyPair.getPublic()));
+        }
+        Files.write(knownHosts, lines);
+        return knownHosts;
+    }
+
+    public Path getHome() {
+        return home;
+    }
+
+    public int getPort() {
+        return port;
+    }
+}